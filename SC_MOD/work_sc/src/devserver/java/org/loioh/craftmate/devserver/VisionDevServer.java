@@ -0,0 +1,126 @@
+package org.loioh.craftmate.devserver;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Local stand-in for /craftmate/vision (dev only, not part of the mod jar).
+ * - Reassembles tiled keyframes/deltas and writes each frame as a PNG, so the delta path can be checked by eye
+ * - Replies like the Worker: tile_ack for frames it holds, need_keyframe when a delta's base is unknown
+ *
+ * Run with: gradlew runVisionDevServer [-Pport=8787] [-PoutDir=run/vision-dev]
+ * then point linkVisionAPI at http://127.0.0.1:8787/craftmate/vision
+ */
+public final class VisionDevServer {
+
+    private VisionDevServer() {}
+
+    private static final VisionTileAssembler ASSEMBLER = new VisionTileAssembler();
+    private static Path outDir;
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8787;
+        outDir = Paths.get(args.length > 1 ? args[1] : "run/vision-dev");
+        Files.createDirectories(outDir);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/craftmate/vision", VisionDevServer::handle);
+        server.start();
+        System.out.println("[VisionDevServer] listening on http://127.0.0.1:" + port + "/craftmate/vision, frames -> " + outDir.toAbsolutePath());
+    }
+
+    private static void handle(HttpExchange ex) throws IOException {
+        JsonObject reply = new JsonObject();
+        int status = 200;
+        try {
+            if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                status = 405;
+                reply.addProperty("ok", false);
+            } else {
+                JsonObject body;
+                try (InputStream in = ex.getRequestBody()) {
+                    JsonElement el = JsonParser.parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    body = el.getAsJsonObject();
+                }
+                reply = onVision(body);
+            }
+        } catch (Throwable t) {
+            status = 400;
+            reply = new JsonObject();
+            reply.addProperty("ok", false);
+            reply.addProperty("error", t.getClass().getSimpleName() + ": " + t.getMessage());
+        }
+
+        byte[] out = reply.toString().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    private static JsonObject onVision(JsonObject body) throws IOException {
+        JsonObject reply = new JsonObject();
+        reply.addProperty("ok", true);
+        Base64.Decoder b64 = Base64.getDecoder();
+
+        JsonObject tiles = body.has("tiles") ? body.getAsJsonObject("tiles") : null;
+        if (tiles == null) {
+            // Plain (non-tiled) upload: just store it.
+            String img = body.getAsJsonObject("image").get("image_b64").getAsString();
+            write("frame-" + System.currentTimeMillis(), ImageIO.read(new ByteArrayInputStream(b64.decode(img))));
+            return reply;
+        }
+
+        long frameId = tiles.get("frame_id").getAsLong();
+        BufferedImage frame;
+        if (tiles.get("keyframe").getAsBoolean()) {
+            String img = body.getAsJsonObject("image").get("image_b64").getAsString();
+            frame = ASSEMBLER.keyframe(frameId, b64.decode(img));
+        } else {
+            Map<int[], byte[]> parts = new LinkedHashMap<>();
+            for (JsonElement e : tiles.getAsJsonArray("items")) {
+                JsonObject it = e.getAsJsonObject();
+                int[] r = {it.get("x").getAsInt(), it.get("y").getAsInt(), it.get("w").getAsInt(), it.get("h").getAsInt()};
+                parts.put(r, b64.decode(it.get("image_b64").getAsString()));
+            }
+            frame = ASSEMBLER.delta(frameId, tiles.get("base_id").getAsLong(),
+                    tiles.get("w").getAsInt(), tiles.get("h").getAsInt(), parts);
+            if (frame == null) {
+                System.out.println("[VisionDevServer] delta " + frameId + ": unknown base, asking for a keyframe");
+                reply.addProperty("skipped", true);
+                reply.addProperty("need_keyframe", true);
+                return reply;
+            }
+            reply.addProperty("changed", parts.size());
+        }
+
+        write(frameId + (tiles.get("keyframe").getAsBoolean() ? "-key" : "-delta"), frame);
+        reply.addProperty("tile_ack", frameId);
+        return reply;
+    }
+
+    private static void write(String name, BufferedImage img) throws IOException {
+        if (img == null) throw new IOException("unreadable image");
+        ImageIO.write(img, "png", outDir.resolve(name + ".png").toFile());
+        System.out.println("[VisionDevServer] wrote " + name + ".png " + img.getWidth() + "x" + img.getHeight());
+    }
+}
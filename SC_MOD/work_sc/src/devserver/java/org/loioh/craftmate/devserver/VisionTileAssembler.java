@@ -0,0 +1,78 @@
+package org.loioh.craftmate.devserver;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server-side half of the tiled vision deltas (see org.loioh.craftmate.vision.VisionTiles).
+ * - Keeps the last few reassembled frames by frame_id
+ * - A delta is applied on a copy of its base frame; unknown base -> null (caller replies need_keyframe)
+ */
+final class VisionTileAssembler {
+
+    private static final int KEEP = 4;
+
+    private final Map<Long, BufferedImage> frames = new LinkedHashMap<>();
+
+    /** Full frame. */
+    synchronized BufferedImage keyframe(long frameId, byte[] jpeg) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(jpeg));
+        if (img == null) throw new IOException("keyframe is not a readable image");
+        put(frameId, toRgb(img));
+        return img;
+    }
+
+    /**
+     * @param tiles each entry {x, y, w, h} plus its JPEG bytes
+     * @return the reassembled frame, or null if the base frame is unknown or has a different size
+     */
+    synchronized BufferedImage delta(long frameId, long baseId, int w, int h, Map<int[], byte[]> tiles) throws IOException {
+        BufferedImage base = frames.get(baseId);
+        if (base == null || base.getWidth() != w || base.getHeight() != h) return null;
+
+        BufferedImage out = copy(base);
+        Graphics2D g = out.createGraphics();
+        try {
+            for (Map.Entry<int[], byte[]> e : tiles.entrySet()) {
+                int[] r = e.getKey();
+                BufferedImage t = ImageIO.read(new ByteArrayInputStream(e.getValue()));
+                if (t == null) throw new IOException("tile at " + r[0] + "," + r[1] + " is not a readable image");
+                g.drawImage(t, r[0], r[1], r[2], r[3], null);
+            }
+        } finally {
+            g.dispose();
+        }
+        put(frameId, out);
+        return out;
+    }
+
+    private void put(long frameId, BufferedImage img) {
+        frames.put(frameId, img);
+        while (frames.size() > KEEP) {
+            Iterator<Long> it = frames.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static BufferedImage toRgb(BufferedImage img) {
+        return img.getType() == BufferedImage.TYPE_INT_RGB ? img : copy(img);
+    }
+
+    private static BufferedImage copy(BufferedImage img) {
+        BufferedImage out = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.drawImage(img, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+}
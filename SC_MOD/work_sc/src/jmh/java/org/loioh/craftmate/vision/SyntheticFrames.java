@@ -0,0 +1,71 @@
+package org.loioh.craftmate.vision;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic stand-ins for captured frames (benchmarks only).
+ * - Sky gradient over blocky "terrain" with per-pixel noise, so JPEG sizes are in the range of real captures
+ *   instead of the tiny output of a flat or fully random image
+ */
+final class SyntheticFrames {
+
+    private SyntheticFrames() {}
+
+    /** "1920x1080" -> {1920, 1080}. */
+    static int[] size(String resolution) {
+        int x = resolution.indexOf('x');
+        return new int[] { Integer.parseInt(resolution.substring(0, x)), Integer.parseInt(resolution.substring(x + 1)) };
+    }
+
+    /** RGBA, top-left origin. */
+    static byte[] rgba(int w, int h) {
+        byte[] out = new byte[w * h * 4];
+        SplittableRandom rnd = new SplittableRandom(w * 31L + h);
+        int horizon = h * 2 / 5;
+        int block = Math.max(8, w / 64);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r, g, b;
+                if (y < horizon) {
+                    int t = y * 255 / Math.max(1, horizon);
+                    r = 90 + t / 4;
+                    g = 140 + t / 5;
+                    b = 235 - t / 8;
+                } else {
+                    int cell = ((x / block) * 7 + (y / block) * 13) % 5;
+                    r = 70 + cell * 18;
+                    g = 110 + cell * 14;
+                    b = 50 + cell * 9;
+                }
+                int n = rnd.nextInt(24) - 12;
+                int i = (y * w + x) * 4;
+                out[i] = (byte) clamp(r + n);
+                out[i + 1] = (byte) clamp(g + n);
+                out[i + 2] = (byte) clamp(b + n);
+                out[i + 3] = (byte) 0xFF;
+            }
+        }
+        return out;
+    }
+
+    /** Same frame as glReadPixels returns it: BGRA, bottom-left origin, in a direct buffer. */
+    static ByteBuffer glBgra(int w, int h) {
+        byte[] rgba = rgba(w, h);
+        ByteBuffer buf = ByteBuffer.allocateDirect(rgba.length).order(ByteOrder.nativeOrder());
+        int stride = w * 4;
+        for (int y = 0; y < h; y++) {
+            int src = (h - 1 - y) * stride;
+            for (int x = 0; x < stride; x += 4) {
+                buf.put(rgba[src + x + 2]).put(rgba[src + x + 1]).put(rgba[src + x]).put(rgba[src + x + 3]);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : Math.min(255, v);
+    }
+}
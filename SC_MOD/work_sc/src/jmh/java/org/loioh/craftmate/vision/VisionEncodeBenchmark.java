@@ -0,0 +1,83 @@
+package org.loioh.craftmate.vision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vision-worker work per frame, for each capture resolution x visionMaxDim.
+ * - encodeJpegFromRgba: area-averaged downscale + JPEG (encoder as configured: striped in-house by default)
+ * - base64 / sha256: of the JPEG that encode produces for this resolution and maxDim
+ * - debugSave: writing that JPEG to disk the way VisionDiskWriter does (temp directory)
+ * Quality is the visionJpegQuality default (75).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VisionEncodeBenchmark {
+
+    private static final int QUALITY = 75;
+
+    @Param({"1280x720", "1920x1080", "2560x1440", "3840x2160"})
+    public String resolution;
+
+    @Param({"512", "768", "1024"})
+    public int maxDim;
+
+    private int w;
+    private int h;
+    private byte[] rgba;
+    private byte[] jpeg;
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        int[] s = SyntheticFrames.size(resolution);
+        w = s[0];
+        h = s[1];
+        rgba = SyntheticFrames.rgba(w, h);
+        jpeg = VisionCapture.encodeJpegFromRgba(rgba, w, h, maxDim, QUALITY).jpegBytes;
+        dir = Files.createTempDirectory("craftmate-jmh");
+        file = dir.resolve("debug_last.jpg");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Object encodeJpegFromRgba() throws Exception {
+        return VisionCapture.encodeJpegFromRgba(rgba, w, h, maxDim, QUALITY);
+    }
+
+    @Benchmark
+    public String base64() {
+        return Base64.getEncoder().encodeToString(jpeg);
+    }
+
+    @Benchmark
+    public String sha256() throws Exception {
+        return VisionCapture.sha256Hex(jpeg);
+    }
+
+    @Benchmark
+    public Path debugSave() throws Exception {
+        VisionDiskWriter.writeFully(file, jpeg);
+        return file;
+    }
+}
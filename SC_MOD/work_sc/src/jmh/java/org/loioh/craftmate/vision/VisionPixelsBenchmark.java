@@ -0,0 +1,73 @@
+package org.loioh.craftmate.vision;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render-thread pixel work per captured frame (full framebuffer resolution).
+ * - extractRgba: NativeImage (native memory, LWJGL only, no GL context) -> pooled RGBA array, flipped
+ * - swizzleBgraFlipped: the glReadPixels fallback's BGRA -> RGBA conversion
+ * Frames are released back to the pool after each call, as the vision worker does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VisionPixelsBenchmark {
+
+    @Param({"1280x720", "1920x1080", "2560x1440", "3840x2160"})
+    public String resolution;
+
+    private int w;
+    private int h;
+    private NativeImage image;
+    private ByteBuffer bgra;
+    private byte[] rgba;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] s = SyntheticFrames.size(resolution);
+        w = s[0];
+        h = s[1];
+        image = new NativeImage(NativeImage.Format.RGBA, w, h, false);
+        byte[] src = SyntheticFrames.rgba(w, h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = (y * w + x) * 4;
+                // setPixelRGBA takes 0xAABBGGRR
+                image.setPixelRGBA(x, y, (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | 0xFF000000);
+            }
+        }
+        bgra = SyntheticFrames.glBgra(w, h);
+        rgba = new byte[w * h * 4];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (image != null) image.close();
+    }
+
+    @Benchmark
+    public byte[] extractRgba() {
+        byte[] out = VisionPixels.extractRgba(image, true);
+        VisionPixels.release(out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] swizzleBgraFlipped() {
+        VisionPixels.swizzleBgraFlipped(bgra, rgba, w, h);
+        return rgba;
+    }
+}
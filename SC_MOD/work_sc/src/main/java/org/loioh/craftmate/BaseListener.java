@@ -19,6 +19,9 @@ import org.lwjgl.glfw.GLFW;
 import org.loioh.craftmate.utils.Audio;
 import org.loioh.craftmate.entity.ClientDummyEntity;
 import org.loioh.craftmate.vision.VisionCapture;
+import org.loioh.craftmate.vision.VisionChatPrep;
+import org.loioh.craftmate.vision.VisionStats;
+import org.loioh.craftmate.vision.VisionStrategies;
 import com.google.gson.JsonObject;
 
 import java.util.UUID;
@@ -50,6 +53,11 @@ public class BaseListener {
     public void onTick(TickEvent.ClientTickEvent event) {
         if (event.phase != TickEvent.Phase.END) return;
 
+        // F10 (debug): vision stage timings to the log
+        if (ClientModEvents.VISION_STATS_KEY != null) {
+            while (ClientModEvents.VISION_STATS_KEY.consumeClick()) VisionStats.dump();
+        }
+
         Minecraft mc = Minecraft.getInstance();
 
         if (mc.player == null || mc.level == null) {
@@ -94,6 +102,18 @@ public class BaseListener {
 
         //CraftMate.log("Stats chat: "+getStats(uuid)+" ; "+event.getMessage());
 
+        // Frame prepared while typing already went out: post now, with the stats taken alongside that frame.
+        Object[] prepStats = VisionChatPrep.sentPrepared() ? VisionChatPrep.takeStats(uuid) : null;
+        if (prepStats != null) {
+            runTaskAsync(() -> {
+                Object[] answer = CraftMate.core.postMessage(prepStats, event.getMessage());
+                runTask(() -> {
+                    CraftMate.processAnswer(player, answer);
+                });
+            });
+            return;
+        }
+
         runTaskAsyncLater(() -> {
             Object[] answer = CraftMate.core.postMessage(getStats(uuid), event.getMessage());
             //CraftMate.log("Answer chat: "+answer);
@@ -108,16 +128,27 @@ public class BaseListener {
     public static class ClientModEvents {
 
         public static KeyMapping VISION_FORCE_KEY;
+        public static KeyMapping VISION_STATS_KEY;
 
         @SubscribeEvent
         public static void onRegisterKeys(RegisterKeyMappingsEvent e) {
             try {
-                if (!Config.getVisionEnableF9Key()) return;
-                VISION_FORCE_KEY = new KeyMapping("key.craftmate.vision_force",
-                        InputConstants.Type.KEYSYM,
-                        GLFW.GLFW_KEY_F9,
-                        "key.categories.craftmate");
-                e.register(VISION_FORCE_KEY);
+                if (Config.getVisionEnableF9Key()) {
+                    VISION_FORCE_KEY = new KeyMapping("key.craftmate.vision_force",
+                            InputConstants.Type.KEYSYM,
+                            GLFW.GLFW_KEY_F9,
+                            "key.categories.craftmate");
+                    e.register(VISION_FORCE_KEY);
+                }
+            } catch (Throwable ignored) {}
+            try {
+                if (Config.getVisionDebugEnabled()) {
+                    VISION_STATS_KEY = new KeyMapping("key.craftmate.vision_stats",
+                            InputConstants.Type.KEYSYM,
+                            GLFW.GLFW_KEY_F10,
+                            "key.categories.craftmate");
+                    e.register(VISION_STATS_KEY);
+                }
             } catch (Throwable ignored) {}
         }
 
@@ -125,6 +156,8 @@ public class BaseListener {
         public static void onClientSetup(FMLClientSetupEvent event){
             setClientMode(true);
             CraftMate.log("MINECRAFT USER_CLIENT NAME >> " + Minecraft.getInstance().getUser().getUuid());
+            // Resolve vision capture hooks once so captures never reflect on the hot path.
+            try { VisionStrategies.probe(); } catch (Throwable ignored) {}
         }
     }
 
@@ -43,6 +43,8 @@ public class Config {
     // v2 scanner tuning (quality > size)
     public static final ForgeConfigSpec.IntValue SCENE_MAX_ENTITIES;
     public static final ForgeConfigSpec.IntValue SCENE_MAX_POIS;
+    public static final ForgeConfigSpec.IntValue SCENE_DEEP_INTERVAL_TICKS; // deep snapshot (POIs) cadence
+    public static final ForgeConfigSpec.IntValue SCENE_POI_RADIUS_BLOCKS;   // deep snapshot POI scan radius
 
     // ---- Vision (optional async perception via screenshot) ----
     public static final ForgeConfigSpec.BooleanValue VISION_ENABLED;
@@ -50,6 +52,34 @@ public class Config {
     public static final ForgeConfigSpec.IntValue VISION_MIN_INTERVAL_TICKS; // cooldown between captures
     public static final ForgeConfigSpec.IntValue VISION_DANGER_MIN_INTERVAL_TICKS; // shorter cooldown when in danger
     public static final ForgeConfigSpec.ConfigValue<String> LINK_VISION_API;
+    public static final ForgeConfigSpec.BooleanValue VISION_GPU_DOWNSCALE; // blit to a small target before readback
+    public static final ForgeConfigSpec.IntValue VISION_JPEG_QUALITY; // JPEG quality in percent
+    public static final ForgeConfigSpec.BooleanValue VISION_JPEG_CHROMA_SUBSAMPLING; // true = 4:2:0, false = 4:4:4
+    public static final ForgeConfigSpec.IntValue VISION_DEDUPE_MAX_DISTANCE; // dHash Hamming distance; -1 = off
+    public static final ForgeConfigSpec.BooleanValue VISION_FOVEATED; // context image + crosshair/focus crop
+    public static final ForgeConfigSpec.IntValue VISION_FOVEA_DIM; // max side of the crop image
+    public static final ForgeConfigSpec.IntValue VISION_FOVEA_CONTEXT_DIM; // max side of the context image when foveated
+    public static final ForgeConfigSpec.BooleanValue VISION_TILED_DELTAS; // send only changed tiles between keyframes
+    public static final ForgeConfigSpec.IntValue VISION_TILE_SIZE;
+    public static final ForgeConfigSpec.IntValue VISION_KEYFRAME_EVERY;
+    public static final ForgeConfigSpec.IntValue VISION_CAPTURE_BUDGET_MS_PER_SEC; // render-thread capture time cap
+    public static final ForgeConfigSpec.IntValue VISION_CHAT_DEADLINE_MS; // max wait for a calm frame on chat captures
+    public static final ForgeConfigSpec.IntValue VISION_DANGER_BURST_FRAMES; // frames per danger burst (1 = single still)
+    public static final ForgeConfigSpec.IntValue VISION_BURST_SPACING_MS;
+    public static final ForgeConfigSpec.IntValue VISION_BURST_DIM;
+    public static final ForgeConfigSpec.IntValue VISION_BURST_MAX_BYTES;
+    public static final ForgeConfigSpec.IntValue VISION_RECENT_MAX_AGE_MS; // backend requests reuse a frame this fresh
+    public static final ForgeConfigSpec.BooleanValue VISION_ADAPTIVE; // adapt dim/quality to the measured uplink
+    public static final ForgeConfigSpec.IntValue VISION_ADAPTIVE_MIN_DIM; // lower bound for the adapted max dimension
+    public static final ForgeConfigSpec.IntValue VISION_ADAPTIVE_MIN_QUALITY; // lower bound for the adapted JPEG quality
+    public static final ForgeConfigSpec.IntValue VISION_TARGET_LATENCY_CHAT_MS; // chat/backend/danger latency target
+    public static final ForgeConfigSpec.IntValue VISION_TARGET_LATENCY_AMBIENT_MS; // ambient latency target (0 = best effort)
+    public static final ForgeConfigSpec.BooleanValue VISION_STREAM_UPLOAD; // upload while encoding (streamed body)
+    public static final ForgeConfigSpec.BooleanValue VISION_CHAT_PREPARE; // capture + encode while the chat screen is open
+    public static final ForgeConfigSpec.IntValue VISION_CHAT_PREPARE_MAX_AGE_MS; // a prepared chat frame is used if this fresh
+    public static final ForgeConfigSpec.BooleanValue VISION_PARALLEL_JPEG; // striped in-house JPEG encoder on several cores
+    public static final ForgeConfigSpec.BooleanValue VISION_DESCRIPTORS; // compact descriptor instead of a JPEG for some reasons
+    public static final ForgeConfigSpec.ConfigValue<String> VISION_DESCRIPTOR_REASONS; // comma-separated capture reasons
 
     // ---- Vision Debug ----
     public static final ForgeConfigSpec.BooleanValue VISION_DEBUG_ENABLED;
@@ -57,6 +87,7 @@ public class Config {
     public static final ForgeConfigSpec.BooleanValue VISION_DEBUG_TOAST;
     public static final ForgeConfigSpec.BooleanValue VISION_SAVE_LAST_ALWAYS;
     public static final ForgeConfigSpec.BooleanValue VISION_SAVE_CHAT_ALWAYS;
+    public static final ForgeConfigSpec.IntValue VISION_DEBUG_RING_SIZE;
     public static final ForgeConfigSpec.BooleanValue VISION_ENABLE_F9_KEY;
 
     // General debug log (existing flag, but configurable)
@@ -132,6 +163,14 @@ public class Config {
                 .comment("Max number of visible POI blocks included in deep snapshots.")
                 .defineInRange("sceneMaxPois", 24, 0, 120);
 
+        SCENE_DEEP_INTERVAL_TICKS = BUILDER
+                .comment("How many ticks between deep snapshots (adds visible POI blocks from the chunk POI index). 0 = never.")
+                .defineInRange("sceneDeepIntervalTicks", 80, 0, 1200);
+
+        SCENE_POI_RADIUS_BLOCKS = BUILDER
+                .comment("Radius (in blocks) searched for visible POI blocks in deep snapshots (vertical span is a quarter of it, at least 4).")
+                .defineInRange("scenePoiRadiusBlocks", 32, 4, 64);
+
         // ---- Vision (async screenshot -> /craftmate/vision) ----
         // Defaults are tuned for "budget" usage: only capture on meaningful changes,
         // and keep the image reasonably small. You can tweak these in config.
@@ -155,6 +194,118 @@ public class Config {
                 .comment("Vision endpoint (e.g., https://.../craftmate/vision).")
                 .define("linkVisionApi", "https://api.craftmate.workers.dev/craftmate/vision");
 
+        VISION_GPU_DOWNSCALE = BUILDER
+                .comment("Downscale on the GPU (linear blit into a small offscreen target) before readback, so only a visionMaxDim-sized frame is read back.")
+                .define("visionGpuDownscale", true);
+
+        VISION_JPEG_QUALITY = BUILDER
+                .comment("JPEG quality for vision frames in percent (lower = smaller uploads).")
+                .defineInRange("visionJpegQuality", 75, 30, 100);
+
+        VISION_JPEG_CHROMA_SUBSAMPLING = BUILDER
+                .comment("Subsample JPEG chroma 4:2:0 (smaller). Set false for 4:4:4 (sharper colour edges, larger).")
+                .define("visionJpegChromaSubsampling", true);
+
+        VISION_DEDUPE_MAX_DISTANCE = BUILDER
+                .comment("Skip non-chat captures whose perceptual hash is within this many bits (of 64) of a recently sent frame. -1 disables.")
+                .defineInRange("visionDedupeMaxDistance", 5, -1, 32);
+
+        VISION_FOVEATED = BUILDER
+                .comment("For chat captures, send a small full-frame context image plus a detailed crop around the crosshair / focused entity in one upload. Other captures keep visionMaxDim.")
+                .define("visionFoveated", true);
+
+        VISION_FOVEA_DIM = BUILDER
+                .comment("Max dimension of the foveated crop image.")
+                .defineInRange("visionFoveaDim", 384, 128, 1024);
+
+        VISION_FOVEA_CONTEXT_DIM = BUILDER
+                .comment("Max dimension of the full-frame context image when foveated (also capped by visionMaxDim).")
+                .defineInRange("visionFoveaContextDim", 320, 128, 2048);
+
+        VISION_TILED_DELTAS = BUILDER
+                .comment("Upload only the tiles that changed since the last acknowledged frame, with periodic full keyframes. Chat/backend captures are always keyframes.")
+                .define("visionTiledDeltas", false);
+
+        VISION_TILE_SIZE = BUILDER
+                .comment("Tile side in pixels for visionTiledDeltas (multiple of 16 keeps JPEG blocks aligned).")
+                .defineInRange("visionTileSize", 64, 16, 256);
+
+        VISION_KEYFRAME_EVERY = BUILDER
+                .comment("Send a full keyframe after this many delta frames.")
+                .defineInRange("visionKeyframeEvery", 10, 1, 120);
+
+        VISION_CAPTURE_BUDGET_MS_PER_SEC = BUILDER
+                .comment("Max render-thread time (ms) spent on vision capture per second. Chat captures are exempt.")
+                .defineInRange("visionCaptureBudgetMsPerSec", 12, 1, 200);
+
+        VISION_CHAT_DEADLINE_MS = BUILDER
+                .comment("Chat captures wait at most this long (ms) for a frame that is not already slow.")
+                .defineInRange("visionChatDeadlineMs", 150, 0, 2000);
+
+        VISION_DANGER_BURST_FRAMES = BUILDER
+                .comment("Danger captures send this many small frames in one request to show motion (1 = single frame).")
+                .defineInRange("visionDangerBurstFrames", 4, 1, 8);
+
+        VISION_BURST_SPACING_MS = BUILDER
+                .comment("Time between burst frames (ms).")
+                .defineInRange("visionBurstSpacingMs", 120, 50, 500);
+
+        VISION_BURST_DIM = BUILDER
+                .comment("Max dimension of each burst frame.")
+                .defineInRange("visionBurstDim", 256, 128, 512);
+
+        VISION_BURST_MAX_BYTES = BUILDER
+                .comment("Total JPEG bytes per burst (before base64); intermediate frames are dropped to fit.")
+                .defineInRange("visionBurstMaxBytes", 96 * 1024, 16 * 1024, 512 * 1024);
+
+        VISION_RECENT_MAX_AGE_MS = BUILDER
+                .comment("Backend vision requests are answered with the last uploaded frame if it is at most this old (ms); 0 = always capture.")
+                .defineInRange("visionRecentMaxAgeMs", 2000, 0, 30000);
+
+        VISION_ADAPTIVE = BUILDER
+                .comment("Adapt the context image size and JPEG quality to the measured upload speed (visionMaxDim / visionJpegQuality are the upper bounds).")
+                .define("visionAdaptive", true);
+
+        VISION_ADAPTIVE_MIN_DIM = BUILDER
+                .comment("Smallest max dimension the adaptive controller may pick.")
+                .defineInRange("visionAdaptiveMinDim", 256, 128, 1024);
+
+        VISION_ADAPTIVE_MIN_QUALITY = BUILDER
+                .comment("Lowest JPEG quality the adaptive controller may pick.")
+                .defineInRange("visionAdaptiveMinQuality", 50, 30, 100);
+
+        VISION_TARGET_LATENCY_CHAT_MS = BUILDER
+                .comment("Target capture-to-uploaded time (ms) for chat, backend and danger captures; server processing time is not counted.")
+                .defineInRange("visionTargetLatencyChatMs", 800, 100, 10000);
+
+        VISION_TARGET_LATENCY_AMBIENT_MS = BUILDER
+                .comment("Same for ambient captures; 0 = best effort (always the configured maximum).")
+                .defineInRange("visionTargetLatencyAmbientMs", 0, 0, 30000);
+
+        VISION_STREAM_UPLOAD = BUILDER
+                .comment("Stream full-frame uploads: the request starts before encoding and JPEG bytes are sent as they are produced (signature in a body trailer).")
+                .define("visionStreamUpload", true);
+
+        VISION_CHAT_PREPARE = BUILDER
+                .comment("While the chat screen is open, capture and encode a frame, snapshot player stats and warm the backend connection, so Enter sends at once.")
+                .define("visionChatPrepare", true);
+
+        VISION_CHAT_PREPARE_MAX_AGE_MS = BUILDER
+                .comment("A prepared chat frame is used only if it is at most this old (ms); it is refreshed at half this age while the chat is open.")
+                .defineInRange("visionChatPrepareMaxAgeMs", 1500, 200, 10000);
+
+        VISION_PARALLEL_JPEG = BUILDER
+                .comment("Encode frames with the built-in baseline JPEG encoder, coding stripes (separated by restart markers) on several cores. Off: ImageIO writer.")
+                .define("visionParallelJpeg", true);
+
+        VISION_DESCRIPTORS = BUILDER
+                .comment("Send a compact image descriptor (colour histogram, luma/edge grids, tiny thumbnail; a few hundred bytes) instead of a JPEG for low-priority ambient captures.")
+                .define("visionDescriptors", true);
+
+        VISION_DESCRIPTOR_REASONS = BUILDER
+                .comment("Ambient capture reasons that send a descriptor instead of a JPEG (comma-separated). Chat, backend and danger captures always send full frames.")
+                .define("visionDescriptorReasons", "idle_refresh,poi");
+
 
 VISION_DEBUG_ENABLED = BUILDER
         .comment("Enable extra vision debug logging + error popups (recommended while developing).")
@@ -173,13 +324,17 @@ VISION_DEBUG_TOAST = BUILDER
 	        .define("debugLogEnabled", true);
 
 VISION_SAVE_LAST_ALWAYS = BUILDER
-        .comment("Always save the last encoded vision JPEG to .minecraft/craftmate/debug_last.jpg")
+        .comment("Always save the last encoded vision JPEG to .minecraft/screenshots/craftmate/debug_last.jpg (background writer)")
         .define("visionSaveLastAlways", true);
 
 VISION_SAVE_CHAT_ALWAYS = BUILDER
-        .comment("Save a timestamped vision JPEG under .minecraft/screenshots/craftmate/ for reason=chat.")
+        .comment("Save reason=chat vision JPEGs under .minecraft/screenshots/craftmate/ (rotating vision_ring_NN.jpg).")
         .define("visionSaveChatAlways", true);
 
+VISION_DEBUG_RING_SIZE = BUILDER
+        .comment("Number of chat debug frames kept on disk before the oldest is overwritten.")
+        .defineInRange("visionDebugRingSize", 8, 1, 64);
+
 VISION_ENABLE_F9_KEY = BUILDER
         .comment("Enable F9 manual vision capture keybind (debug).")
         .define("visionEnableF9Key", true);
@@ -216,11 +371,41 @@ VISION_ENABLE_F9_KEY = BUILDER
                 case "sceneRadiusBlocks": return SCENE_RADIUS_BLOCKS.get();
                 case "sceneMaxEntities": return SCENE_MAX_ENTITIES.get();
                 case "sceneMaxPois": return SCENE_MAX_POIS.get();
+                case "sceneDeepIntervalTicks": return SCENE_DEEP_INTERVAL_TICKS.get();
+                case "scenePoiRadiusBlocks": return SCENE_POI_RADIUS_BLOCKS.get();
                 case "visionEnabled": return VISION_ENABLED.get();
                 case "visionMaxDim": return VISION_MAX_DIM.get();
                 case "visionMinIntervalTicks": return VISION_MIN_INTERVAL_TICKS.get();
                 case "visionDangerMinIntervalTicks": return VISION_DANGER_MIN_INTERVAL_TICKS.get();
                 case "linkVisionAPI": return LINK_VISION_API.get();
+                case "visionGpuDownscale": return VISION_GPU_DOWNSCALE.get();
+                case "visionJpegQuality": return VISION_JPEG_QUALITY.get();
+                case "visionJpegChromaSubsampling": return VISION_JPEG_CHROMA_SUBSAMPLING.get();
+                case "visionDedupeMaxDistance": return VISION_DEDUPE_MAX_DISTANCE.get();
+                case "visionFoveated": return VISION_FOVEATED.get();
+                case "visionFoveaDim": return VISION_FOVEA_DIM.get();
+                case "visionFoveaContextDim": return VISION_FOVEA_CONTEXT_DIM.get();
+                case "visionTiledDeltas": return VISION_TILED_DELTAS.get();
+                case "visionTileSize": return VISION_TILE_SIZE.get();
+                case "visionKeyframeEvery": return VISION_KEYFRAME_EVERY.get();
+                case "visionCaptureBudgetMsPerSec": return VISION_CAPTURE_BUDGET_MS_PER_SEC.get();
+                case "visionChatDeadlineMs": return VISION_CHAT_DEADLINE_MS.get();
+                case "visionDangerBurstFrames": return VISION_DANGER_BURST_FRAMES.get();
+                case "visionBurstSpacingMs": return VISION_BURST_SPACING_MS.get();
+                case "visionBurstDim": return VISION_BURST_DIM.get();
+                case "visionBurstMaxBytes": return VISION_BURST_MAX_BYTES.get();
+                case "visionRecentMaxAgeMs": return VISION_RECENT_MAX_AGE_MS.get();
+                case "visionAdaptive": return VISION_ADAPTIVE.get();
+                case "visionAdaptiveMinDim": return VISION_ADAPTIVE_MIN_DIM.get();
+                case "visionAdaptiveMinQuality": return VISION_ADAPTIVE_MIN_QUALITY.get();
+                case "visionTargetLatencyChatMs": return VISION_TARGET_LATENCY_CHAT_MS.get();
+                case "visionTargetLatencyAmbientMs": return VISION_TARGET_LATENCY_AMBIENT_MS.get();
+                case "visionStreamUpload": return VISION_STREAM_UPLOAD.get();
+                case "visionChatPrepare": return VISION_CHAT_PREPARE.get();
+                case "visionChatPrepareMaxAgeMs": return VISION_CHAT_PREPARE_MAX_AGE_MS.get();
+                case "visionParallelJpeg": return VISION_PARALLEL_JPEG.get();
+                case "visionDescriptors": return VISION_DESCRIPTORS.get();
+                case "visionDescriptorReasons": return VISION_DESCRIPTOR_REASONS.get();
                 default: return def;
             }
         } catch (Throwable t) {
@@ -231,6 +416,23 @@ VISION_ENABLE_F9_KEY = BUILDER
     public static Object getFromConfig(String key) {
         return getFromConfig(key, "");
     }
+    // --- Scene scanner ---
+    public static boolean getSceneScannerEnabled() {
+        try { return SCENE_SCANNER_ENABLED.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static int getSceneMaxPois() {
+        try { return SCENE_MAX_POIS.get(); } catch (Throwable t) { return 24; }
+    }
+
+    public static int getSceneDeepIntervalTicks() {
+        try { return SCENE_DEEP_INTERVAL_TICKS.get(); } catch (Throwable t) { return 80; }
+    }
+
+    public static int getScenePoiRadiusBlocks() {
+        try { return SCENE_POI_RADIUS_BLOCKS.get(); } catch (Throwable t) { return 32; }
+    }
+
     // --- Vision guards (hard-coded to avoid cost abuse) ---
     public static boolean getVisionEnabled() {
         try { return VISION_ENABLED.get(); } catch (Throwable t) { return true; }
@@ -240,6 +442,119 @@ VISION_ENABLE_F9_KEY = BUILDER
         try { return VISION_MAX_DIM.get(); } catch (Throwable t) { return 512; }
     }
 
+    public static boolean getVisionGpuDownscale() {
+        try { return VISION_GPU_DOWNSCALE.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static int getVisionJpegQuality() {
+        try { return VISION_JPEG_QUALITY.get(); } catch (Throwable t) { return 75; }
+    }
+
+    public static boolean getVisionJpegChromaSubsampling() {
+        try { return VISION_JPEG_CHROMA_SUBSAMPLING.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static int getVisionDedupeMaxDistance() {
+        try { return VISION_DEDUPE_MAX_DISTANCE.get(); } catch (Throwable t) { return 5; }
+    }
+
+    public static boolean getVisionFoveated() {
+        try { return VISION_FOVEATED.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static int getVisionFoveaDim() {
+        try { return VISION_FOVEA_DIM.get(); } catch (Throwable t) { return 384; }
+    }
+
+    public static int getVisionFoveaContextDim() {
+        try { return VISION_FOVEA_CONTEXT_DIM.get(); } catch (Throwable t) { return 320; }
+    }
+
+    public static boolean getVisionTiledDeltas() {
+        try { return VISION_TILED_DELTAS.get(); } catch (Throwable t) { return false; }
+    }
+
+    public static int getVisionTileSize() {
+        // Round down to a multiple of 16 so tiles line up with JPEG MCUs.
+        try { return Math.max(16, VISION_TILE_SIZE.get() / 16 * 16); } catch (Throwable t) { return 64; }
+    }
+
+    public static int getVisionKeyframeEvery() {
+        try { return VISION_KEYFRAME_EVERY.get(); } catch (Throwable t) { return 10; }
+    }
+
+    public static int getVisionCaptureBudgetMsPerSec() {
+        try { return VISION_CAPTURE_BUDGET_MS_PER_SEC.get(); } catch (Throwable t) { return 12; }
+    }
+
+    public static int getVisionChatDeadlineMs() {
+        try { return VISION_CHAT_DEADLINE_MS.get(); } catch (Throwable t) { return 150; }
+    }
+
+    public static int getVisionDangerBurstFrames() {
+        try { return VISION_DANGER_BURST_FRAMES.get(); } catch (Throwable t) { return 4; }
+    }
+
+    public static int getVisionBurstSpacingMs() {
+        try { return VISION_BURST_SPACING_MS.get(); } catch (Throwable t) { return 120; }
+    }
+
+    public static int getVisionBurstDim() {
+        try { return VISION_BURST_DIM.get(); } catch (Throwable t) { return 256; }
+    }
+
+    public static int getVisionBurstMaxBytes() {
+        try { return VISION_BURST_MAX_BYTES.get(); } catch (Throwable t) { return 96 * 1024; }
+    }
+
+    public static int getVisionRecentMaxAgeMs() {
+        try { return VISION_RECENT_MAX_AGE_MS.get(); } catch (Throwable t) { return 2000; }
+    }
+
+    public static boolean getVisionAdaptive() {
+        try { return VISION_ADAPTIVE.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static int getVisionAdaptiveMinDim() {
+        try { return VISION_ADAPTIVE_MIN_DIM.get(); } catch (Throwable t) { return 256; }
+    }
+
+    public static int getVisionAdaptiveMinQuality() {
+        try { return VISION_ADAPTIVE_MIN_QUALITY.get(); } catch (Throwable t) { return 50; }
+    }
+
+    public static int getVisionTargetLatencyChatMs() {
+        try { return VISION_TARGET_LATENCY_CHAT_MS.get(); } catch (Throwable t) { return 800; }
+    }
+
+    public static int getVisionTargetLatencyAmbientMs() {
+        try { return VISION_TARGET_LATENCY_AMBIENT_MS.get(); } catch (Throwable t) { return 0; }
+    }
+
+    public static boolean getVisionStreamUpload() {
+        try { return VISION_STREAM_UPLOAD.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static boolean getVisionChatPrepare() {
+        try { return VISION_CHAT_PREPARE.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static int getVisionChatPrepareMaxAgeMs() {
+        try { return VISION_CHAT_PREPARE_MAX_AGE_MS.get(); } catch (Throwable t) { return 1500; }
+    }
+
+    public static boolean getVisionParallelJpeg() {
+        try { return VISION_PARALLEL_JPEG.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static boolean getVisionDescriptors() {
+        try { return VISION_DESCRIPTORS.get(); } catch (Throwable t) { return true; }
+    }
+
+    public static String getVisionDescriptorReasons() {
+        try { return VISION_DESCRIPTOR_REASONS.get(); } catch (Throwable t) { return "idle_refresh,poi"; }
+    }
+
 
 
 // --- Vision debug (dev tooling) ---
@@ -263,6 +578,10 @@ public static boolean getVisionSaveChatAlways() {
     try { return VISION_SAVE_CHAT_ALWAYS.get(); } catch (Throwable t) { return false; }
 }
 
+public static int getVisionDebugRingSize() {
+    try { return VISION_DEBUG_RING_SIZE.get(); } catch (Throwable t) { return 8; }
+}
+
 public static boolean getVisionEnableF9Key() {
     try { return VISION_ENABLE_F9_KEY.get(); } catch (Throwable t) { return false; }
 }
@@ -24,7 +24,9 @@ import net.minecraftforge.eventbus.api.SubscribeEvent;
 import org.loioh.craftmate.core.SimpleCounter;
 import org.loioh.craftmate.entity.ClientDummyEntity;
 import org.loioh.craftmate.scanner.ActivityTracker;
+import org.loioh.craftmate.utils.RegistryIds;
 import org.loioh.craftmate.vision.VisionCapture;
+import org.loioh.craftmate.vision.VisionStrategies;
 
 import static org.loioh.craftmate.utils.Events.preProcessEvent;
 
@@ -168,7 +170,7 @@ public class EventsListListener {
             BlockState state = mc.level.getBlockState(pos);
             Block block = state.getBlock();
 
-            String id = block.builtInRegistryHolder().key().location().toString();
+            String id = RegistryIds.block(block);
 
             preProcessEvent("onBlockInteract",id);
 
@@ -230,23 +232,11 @@ public class EventsListListener {
             Minecraft mc = Minecraft.getInstance();
             if (mc.player == null) return;
 
-            // Try to read the current chat text from ChatScreen's input box (reflect to avoid version lock).
-            String msg = "";
-            try {
-                java.lang.reflect.Field f = event.getScreen().getClass().getDeclaredField("input");
-                f.setAccessible(true);
-                Object input = f.get(event.getScreen());
-                if (input instanceof net.minecraft.client.gui.components.EditBox) {
-                    msg = ((net.minecraft.client.gui.components.EditBox) input).getValue();
-                }
-            } catch (Throwable ignored) {
-                // Best-effort only
-            }
+            // Current chat text from ChatScreen's input box (handle resolved once at client setup).
+            String msg = VisionStrategies.chatInputText((net.minecraft.client.gui.screens.ChatScreen) event.getScreen());
 
-            // VisionCapture.forceCapture(UUID playerId, JsonObject extra, String reason, String source)
-            JsonObject extra = new JsonObject();
-            if (msg != null && !msg.isEmpty()) extra.addProperty("message", msg);
-            VisionCapture.forceCapture(mc.player.getUUID(), extra, "chat", "player");
+            // Same message as ClientChatEvent, so forceCapture recognises the second hook of this send.
+            VisionCapture.forceCapture(mc.player.getUUID(), new JsonObject(), "chat", msg);
         } catch (Throwable t) {
             CraftMate.LOGGER.error("[VISION] chat screen hook error", t);
         }
@@ -376,7 +366,7 @@ public class EventsListListener {
             for (Entity e : mc.level.getEntities(player, player.getBoundingBox().inflate(RANGE))) {
                 if (e instanceof Mob mob) {
                     double dist = mob.distanceTo(player);
-                    String id = mob.getType().builtInRegistryHolder().key().location().toString();
+                    String id = RegistryIds.entity(mob.getType());
 
                     preProcessEvent("onNearMobDetected", id + ";" + dist);
                     //break;
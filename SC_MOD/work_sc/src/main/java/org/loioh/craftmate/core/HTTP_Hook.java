@@ -7,6 +7,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.loioh.craftmate.Config;
 import org.loioh.craftmate.CraftMate;
 import org.loioh.craftmate.utils.SecuritySigner;
 import org.loioh.craftmate.vision.VisionCapture;
@@ -24,6 +25,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import static org.loioh.craftmate.CraftMate.getFromConfig;
 
@@ -350,6 +353,7 @@ try {
 
         boolean want = false;
         String reqReason = "gpt_request";
+        long maxAgeMs = Config.getVisionRecentMaxAgeMs();
 
         try {
             JsonElement vr = resp.get("vision_request");
@@ -361,6 +365,10 @@ try {
                 if (o.has("reason") && !o.get("reason").isJsonNull()) {
                     reqReason = o.get("reason").getAsString();
                 }
+                // Freshness window the backend accepts for an already-captured frame.
+                if (o.has("max_age_ms") && !o.get("max_age_ms").isJsonNull()) {
+                    maxAgeMs = o.get("max_age_ms").getAsLong();
+                }
             }
         } catch (Throwable ignored) {}
 
@@ -383,6 +391,12 @@ try {
         if (message != null && !message.isBlank()) hint.addProperty("message", message);
 
         CraftMate.vLog("[Chat->Vision] backend requested vision; reqReason=" + reqReason);
+        try {
+            // A recent enough frame answers right away (no frame wait / encode).
+            if (org.loioh.craftmate.vision.VisionCapture.answerFromRecent(playerId, hint, maxAgeMs)) return;
+        } catch (Throwable t) {
+            CraftMate.LOGGER.warn("[Chat->Vision] answerFromRecent failed: {}", String.valueOf(t));
+        }
         try {
             org.loioh.craftmate.vision.VisionCapture.forceCapture(playerId, hint, "tactical", message);
         } catch (Throwable t) {
@@ -418,43 +432,135 @@ try {
      * Best-effort: errors are swallowed to avoid impacting gameplay.
      */
     public static void postVision(UUID playerId, JsonObject hint, String imageB64, String mime, int w, int h, String frameHash) {
-        if (imageB64 == null || imageB64.isEmpty()) {
+        postVision(playerId, hint, imageB64, mime, w, h, frameHash, null);
+    }
+
+    /** @param fovea optional crop metadata ({kind,rect,frame_w,frame_h,composite}); the crop itself is part of the image. */
+    public static void postVision(UUID playerId, JsonObject hint, String imageB64, String mime, int w, int h, String frameHash, JsonObject fovea) {
+        postVision(playerId, hint, imageB64, mime, w, h, frameHash, fovea, null);
+    }
+
+    /**
+     * @param tiles optional tiled-delta header (see VisionTiles); for a delta frame imageB64 may be null
+     *              and the changed tiles travel in tiles.items.
+     */
+    public static void postVision(UUID playerId, JsonObject hint, String imageB64, String mime, int w, int h, String frameHash, JsonObject fovea, JsonObject tiles) {
+        postVision(playerId, hint, imageB64, mime, w, h, frameHash, fovea, tiles, null);
+    }
+
+    /**
+     * @param burst optional danger clip ({count,spacing_ms,image_t_ms,frames:[{t_ms,w,h,image_b64}]}); imageB64 is the
+     *              newest frame, burst.frames the earlier ones, oldest first.
+     */
+    public static void postVision(UUID playerId, JsonObject hint, String imageB64, String mime, int w, int h, String frameHash, JsonObject fovea, JsonObject tiles, JsonObject burst) {
+        boolean delta = tiles != null && tiles.has("items");
+        if ((imageB64 == null || imageB64.isEmpty()) && !delta) {
             System.out.println("[CraftMate] postVision: missing imageB64; abort");
             return;
         }
 
         try {
+            long t0 = System.nanoTime();
             JsonObject json = new JsonObject();
             json.addProperty("player_id", String.valueOf(playerId));
             json.addProperty("ts", System.currentTimeMillis() / 1000L);
             if (frameHash != null && !frameHash.isBlank()) json.addProperty("frame_hash", frameHash);
             if (hint != null) json.add("hint", hint);
 
-            JsonObject img = new JsonObject();
-            img.addProperty("mime", mime != null ? mime : "image/jpeg");
-            img.addProperty("w", w);
-            img.addProperty("h", h);
-            img.addProperty("image_b64", imageB64 != null ? imageB64 : "");
-            json.add("image", img);
+            if (!delta) {
+                JsonObject img = new JsonObject();
+                img.addProperty("mime", mime != null ? mime : "image/jpeg");
+                img.addProperty("w", w);
+                img.addProperty("h", h);
+                img.addProperty("image_b64", imageB64 != null ? imageB64 : "");
+                json.add("image", img);
+            }
+            if (fovea != null) json.add("fovea", fovea);
+            if (tiles != null) json.add("tiles", tiles);
+            if (burst != null) json.add("burst", burst);
+
+            String body = gson.toJson(json);
+            org.loioh.craftmate.vision.VisionStats.record(org.loioh.craftmate.vision.VisionStats.Stage.JSON, t0,
+                    imageB64 != null ? imageB64.length() : 0L, body.length());
+            sendVision(body, frameHash, null);
+        } catch (Throwable e) {
+            CraftMate.LOGGER.warn("[Vision] postVision error: {}", String.valueOf(e));
+        }
+    }
 
-            String bodyStr = gson.toJson(json);
+    /**
+     * Ambient update without pixels: a compact descriptor (see VisionDescriptors) instead of image/image_b64.
+     * The backend keeps it as scene context; no model run.
+     */
+    public static void postVisionDescriptor(UUID playerId, JsonObject hint, JsonObject descriptor) {
+        if (descriptor == null) return;
+        try {
+            JsonObject json = new JsonObject();
+            json.addProperty("player_id", String.valueOf(playerId));
+            json.addProperty("ts", System.currentTimeMillis() / 1000L);
+            if (hint != null) json.add("hint", hint);
+            json.add("descriptor", descriptor);
 
-            String endpoint = String.valueOf(getFromConfig("linkVisionAPI", ""));
-            if (endpoint == null || endpoint.isBlank()) {
-                // derive from scene endpoint
-                String sceneEp = String.valueOf(getFromConfig("linkSceneAPI", ""));
-                if (sceneEp != null && !sceneEp.isBlank()) {
-                    endpoint = sceneEp.replace("/craftmate/scene", "/craftmate/vision").replace("/scene", "/vision");
-                }
-            }
-            if (endpoint == null || endpoint.isBlank()) {
-                CraftMate.LOGGER.warn("[Vision] vision endpoint empty (linkVisionAPI + linkSceneAPI). Skipping.");
-                return;
-            }
+            sendVision(gson.toJson(json), null, null);
+        } catch (Throwable e) {
+            CraftMate.LOGGER.warn("[Vision] postVisionDescriptor error: {}", String.valueOf(e));
+        }
+    }
 
-            URI uri = URI.create(endpoint);
+    /**
+     * Point the backend at a frame it already analysed (frame_ref = that upload's frame_hash) instead of re-uploading it.
+     * @param onNeedFrame run (HTTP thread) if the server no longer has it and wants the pixels
+     */
+    public static void postVisionRef(UUID playerId, JsonObject hint, String frameHash, Runnable onNeedFrame) {
+        if (frameHash == null || frameHash.isBlank()) return;
+        try {
+            JsonObject json = new JsonObject();
+            json.addProperty("player_id", String.valueOf(playerId));
+            json.addProperty("ts", System.currentTimeMillis() / 1000L);
+            json.addProperty("frame_ref", frameHash);
+            if (hint != null) json.add("hint", hint);
+
+            sendVision(gson.toJson(json), frameHash, onNeedFrame);
+        } catch (Throwable e) {
+            CraftMate.LOGGER.warn("[Vision] postVisionRef error: {}", String.valueOf(e));
+        }
+    }
+
+    /**
+     * Streaming vision upload: the request starts now and the body is written while the frame is being encoded
+     * (image() for the JPEG, then finish(fovea, frameHash)); see VisionUploadStream.
+     * Returns null if it could not be started (no endpoint); the caller then posts the usual way.
+     */
+    public static VisionUploadStream openVisionStream(UUID playerId, JsonObject hint, JsonObject tiles, String mime, int w, int h) {
+        try {
+            URI uri = visionEndpoint();
+            if (uri == null) return null;
+
+            String clientId = String.valueOf(getFromConfig("clientId", "craftmate"));
+            String tsStr = Long.toString(System.currentTimeMillis() / 1000L);
+            String canonicalPrefix = tsStr + "\n" + clientId + "\nPOST\n" + uri.getPath() + "\n";
+            VisionUploadStream stream = new VisionUploadStream(canonicalPrefix, SecuritySigner.EMBEDDED_BETA_HMAC_SECRET);
+
+            // Envelope up to the open image object; image() adds image_b64 and the JPEG follows as it is encoded.
+            stream.header(String.valueOf(playerId), System.currentTimeMillis() / 1000L, hint, tiles,
+                    mime != null ? mime : "image/jpeg", w, h);
+
+            HttpRequest req = visionRequest(uri, tsStr, clientId, VisionUploadStream.SIG_TRAILER)
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(stream::source))
+                    .build();
+            dispatchVision(req, uri, stream::frameHash, stream::bodyBytes, null, stream::cancel);
+            return stream;
+        } catch (Throwable e) {
+            CraftMate.LOGGER.warn("[Vision] openVisionStream error: {}", String.valueOf(e));
+            return null;
+        }
+    }
+
+    private static void sendVision(String bodyStr, String frameHash, Runnable onNeedFrame) {
+        try {
+            URI uri = visionEndpoint();
+            if (uri == null) return;
 
-            String bearer = String.valueOf(getFromConfig("apiToken", ""));
             String clientId = String.valueOf(getFromConfig("clientId", "craftmate"));
             String hmacSecret = SecuritySigner.EMBEDDED_BETA_HMAC_SECRET;
             boolean enableHmac = true;
@@ -463,58 +569,148 @@ try {
             String tsStr = Long.toString(ts);
             String path = uri.getPath();
 
+            long t0 = System.nanoTime();
+            byte[] bodyBytes = bodyStr.getBytes(StandardCharsets.UTF_8);
             String sig = "";
             if (enableHmac && hmacSecret != null && !hmacSecret.isBlank()) {
-                String bodyHash = SecuritySigner.sha256Hex(bodyStr.getBytes(StandardCharsets.UTF_8));
+                String bodyHash = SecuritySigner.sha256Hex(bodyBytes);
                 String canonical = tsStr + "\n" + clientId + "\nPOST\n" + path + "\n" + bodyHash;
                 sig = SecuritySigner.hmacSha256Hex(hmacSecret, canonical);
             }
+            org.loioh.craftmate.vision.VisionStats.record(org.loioh.craftmate.vision.VisionStats.Stage.SIGN, t0, bodyStr.length(), bodyBytes.length);
 
-            HttpRequest.Builder b = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .header("Content-Type", "application/json");
+            HttpRequest req = visionRequest(uri, tsStr, clientId, sig)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(bodyBytes))
+                    .build();
+            dispatchVision(req, uri, () -> frameHash, () -> bodyBytes.length, onNeedFrame, null);
+        } catch (Throwable e) {
+            CraftMate.LOGGER.warn("[Vision] sendVision error: {}", String.valueOf(e));
+        }
+    }
 
-            if (bearer != null && !bearer.isBlank()) {
-                if (bearer.toLowerCase().startsWith("bearer ")) b.header("Authorization", bearer);
-                else b.header("Authorization", "Bearer " + bearer);
+    private static volatile long lastWarmUpMs = 0L;
+    private static final long WARM_UP_EVERY_MS = 20_000L;
+
+    /**
+     * Open (or keep alive) the connections to the chat and vision hosts ahead of a request, so DNS/TCP/TLS are not paid
+     * on the critical path. A plain GET of the host root; the reply is discarded. At most once per WARM_UP_EVERY_MS.
+     */
+    public static void warmUp() {
+        long now = System.currentTimeMillis();
+        if (client == null || now - lastWarmUpMs < WARM_UP_EVERY_MS) return;
+        lastWarmUpMs = now;
+
+        List<String> origins = new ArrayList<>();
+        try {
+            URI chat = URI.create(String.valueOf(getFromConfig("linkAPI", "")));
+            if (chat.getScheme() != null && chat.getHost() != null) origins.add(chat.getScheme() + "://" + chat.getAuthority() + "/");
+        } catch (Throwable ignored) {}
+        try {
+            URI vision = visionEndpoint();
+            if (vision != null && vision.getScheme() != null) {
+                String o = vision.getScheme() + "://" + vision.getAuthority() + "/";
+                if (!origins.contains(o)) origins.add(o);
             }
+        } catch (Throwable ignored) {}
 
-            if (enableHmac && sig != null && !sig.isBlank()) {
-                b.header("X-CM-Id", clientId);
-                b.header("X-CM-Ts", tsStr);
-                b.header("X-CM-Sig", sig);
+        for (String o : origins) {
+            try {
+                HttpRequest req = HttpRequest.newBuilder(URI.create(o)).GET().build();
+                client.sendAsync(req, HttpResponse.BodyHandlers.discarding())
+                        .exceptionally(e -> {
+                            CraftMate.vLog("[Vision] warm-up failed: " + sanitizeDebugSnippet(String.valueOf(e)));
+                            return null;
+                        });
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    /** linkVisionAPI, or derived from linkSceneAPI; null if neither is set. */
+    private static URI visionEndpoint() {
+        String endpoint = String.valueOf(getFromConfig("linkVisionAPI", ""));
+        if (endpoint == null || endpoint.isBlank()) {
+            // derive from scene endpoint
+            String sceneEp = String.valueOf(getFromConfig("linkSceneAPI", ""));
+            if (sceneEp != null && !sceneEp.isBlank()) {
+                endpoint = sceneEp.replace("/craftmate/scene", "/craftmate/vision").replace("/scene", "/vision");
             }
+        }
+        if (endpoint == null || endpoint.isBlank()) {
+            CraftMate.LOGGER.warn("[Vision] vision endpoint empty (linkVisionAPI + linkSceneAPI). Skipping.");
+            return null;
+        }
+        return URI.create(endpoint);
+    }
 
-            // fire-and-forget (but still async-safe)
-            HttpRequest req = b.POST(HttpRequest.BodyPublishers.ofString(bodyStr)).build();
-            client.sendAsync(req, HttpResponse.BodyHandlers.ofString())
-                    .thenAccept(res -> {
-                        int sc = res.statusCode();
-                        String body = res.body();
-
-                        // Update telemetry for HUD/logging (sanitized)
-                        lastVisionStatus = sc;
-                        lastVisionBody = (body == null ? "" : body);
-                        lastVisionError = "";
-                        lastVisionAtMs = System.currentTimeMillis();
-
-                        try { org.loioh.craftmate.vision.VisionDebug.setLastHttp("status=" + sc); } catch (Throwable ignored) {}
-                        if (sc / 100 == 2) { try { org.loioh.craftmate.vision.VisionDebug.markOk(); } catch (Throwable ignored) {} }
-
-                        String line = "[Vision] status=" + sc + " body=" + sanitizeDebugSnippet(body);
-                        // During dev, also echo to CraftMate.log (respects Config.debugLog)
-                        CraftMate.vLog(line);
-
-                        // Phase 3+: if backend returns a one-line spoken_line, surface it immediately.
-                        if (sc / 100 == 2 && body != null && !body.isBlank()) {
-                            try {
-                                JsonElement el = JsonParser.parseString(body);
-                                if (el != null && el.isJsonObject()) {
-                                    JsonObject obj = el.getAsJsonObject();
-                                    if (obj.has("spoken_line") && !obj.get("spoken_line").isJsonNull()) {
-                                        String spoken = obj.get("spoken_line").getAsString();
-                                        if (spoken != null && !spoken.isBlank()) {
-                                            final String spokenFinal = spoken;
+    private static HttpRequest.Builder visionRequest(URI uri, String tsStr, String clientId, String sig) {
+        String bearer = String.valueOf(getFromConfig("apiToken", ""));
+
+        HttpRequest.Builder b = HttpRequest.newBuilder()
+                .uri(uri)
+                .header("Content-Type", "application/json");
+
+        if (bearer != null && !bearer.isBlank()) {
+            if (bearer.toLowerCase().startsWith("bearer ")) b.header("Authorization", bearer);
+            else b.header("Authorization", "Bearer " + bearer);
+        }
+
+        if (sig != null && !sig.isBlank()) {
+            b.header("X-CM-Id", clientId);
+            b.header("X-CM-Ts", tsStr);
+            b.header("X-CM-Sig", sig);
+        }
+        return b;
+    }
+
+    /**
+     * Send a vision request and handle the reply. frameHash / bodyBytes are read when the reply arrives (a streamed
+     * body only knows them once it is complete); onFail runs if the request fails.
+     */
+    private static void dispatchVision(HttpRequest req, URI uri, Supplier<String> frameHashOf, LongSupplier bodyBytesOf,
+                                       Runnable onNeedFrame, Runnable onFail) {
+        // fire-and-forget (but still async-safe)
+        final long sentAtMs = System.currentTimeMillis();
+        final long sentAtNanos = System.nanoTime();
+        client.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                .thenAccept(res -> {
+                    int sc = res.statusCode();
+                    String body = res.body();
+                    String frameHash = frameHashOf.get();
+                    try { org.loioh.craftmate.vision.VisionStats.record(org.loioh.craftmate.vision.VisionStats.Stage.HTTP, sentAtNanos, bodyBytesOf.getAsLong(), body == null ? 0L : body.length()); } catch (Throwable ignored) {}
+
+                    // Upload speed / latency sample for the adaptive size + quality controller
+                    if (sc / 100 == 2) {
+                        try { org.loioh.craftmate.vision.VisionAdaptiveController.onReply(frameHash, (int) bodyBytesOf.getAsLong(), sentAtMs, System.currentTimeMillis()); } catch (Throwable ignored) {}
+                    }
+
+                    // Update telemetry for HUD/logging (sanitized)
+                    lastVisionStatus = sc;
+                    lastVisionBody = (body == null ? "" : body);
+                    lastVisionError = "";
+                    lastVisionAtMs = System.currentTimeMillis();
+
+                    try { org.loioh.craftmate.vision.VisionDebug.setLastHttp("status=" + sc); } catch (Throwable ignored) {}
+                    if (sc / 100 == 2) { try { org.loioh.craftmate.vision.VisionDebug.markOk(); } catch (Throwable ignored) {} }
+
+                    String line = "[Vision] status=" + sc + " body=" + sanitizeDebugSnippet(body);
+                    // During dev, also echo to CraftMate.log (respects Config.debugLog)
+                    CraftMate.vLog(line);
+
+                    // Phase 3+: if backend returns a one-line spoken_line, surface it immediately.
+                    if (sc / 100 == 2 && body != null && !body.isBlank()) {
+                        try {
+                            JsonElement el = JsonParser.parseString(body);
+                            if (el != null && el.isJsonObject()) {
+                                JsonObject obj = el.getAsJsonObject();
+                                try { org.loioh.craftmate.vision.VisionTiles.onServerReply(obj); } catch (Throwable ignored) {}
+                                try { org.loioh.craftmate.vision.VisionFrameRing.onServerReply(frameHash, obj); } catch (Throwable ignored) {}
+                                if (onNeedFrame != null && obj.has("need_frame") && obj.get("need_frame").getAsBoolean()) {
+                                    try { onNeedFrame.run(); } catch (Throwable ignored) {}
+                                }
+                                if (obj.has("spoken_line") && !obj.get("spoken_line").isJsonNull()) {
+                                    String spoken = obj.get("spoken_line").getAsString();
+                                    if (spoken != null && !spoken.isBlank()) {
+                                        final String spokenFinal = spoken;
 	                                            // Post to the client thread safely (no dependency on custom schedulers)
 	                                            try {
 	                                                Minecraft.getInstance().execute(() -> {
@@ -525,33 +721,32 @@ try {
 	                                                    } catch (Throwable ignored) {}
 	                                                });
 	                                            } catch (Throwable ignored) {}
-                                        }
                                     }
                                 }
-                            } catch (Throwable ignored) {}
-                        }
-
-                        if (sc / 100 != 2) {
-                            CraftMate.LOGGER.warn("{} (uri={})", line, uri);
-                        } else {
-                            CraftMate.LOGGER.debug("{} (uri={})", line, uri);
-                        }
-
-                    })
-                    .exceptionally(e -> {
-                        lastVisionStatus = 0;
-                        lastVisionBody = "";
-                        lastVisionError = String.valueOf(e);
-                        lastVisionAtMs = System.currentTimeMillis();
-
-                        String line = "[Vision] exception=" + sanitizeDebugSnippet(String.valueOf(e));
-                        CraftMate.vLog(line);
-                        CraftMate.LOGGER.warn(line);
-                        return null;
-                    });
-        } catch (Throwable e) {
-            CraftMate.LOGGER.warn("[Vision] postVision error: {}", String.valueOf(e));
-        }
+                            }
+                        } catch (Throwable ignored) {}
+                    }
+
+                    if (sc / 100 != 2) {
+                        CraftMate.LOGGER.warn("{} (uri={})", line, uri);
+                    } else {
+                        CraftMate.LOGGER.debug("{} (uri={})", line, uri);
+                    }
+
+                })
+                .exceptionally(e -> {
+                    lastVisionStatus = 0;
+                    lastVisionBody = "";
+                    lastVisionError = String.valueOf(e);
+                    lastVisionAtMs = System.currentTimeMillis();
+
+                    if (onFail != null) { try { onFail.run(); } catch (Throwable ignored) {} }
+
+                    String line = "[Vision] exception=" + sanitizeDebugSnippet(String.valueOf(e));
+                    CraftMate.vLog(line);
+                    CraftMate.LOGGER.warn(line);
+                    return null;
+                });
     }
 
 }
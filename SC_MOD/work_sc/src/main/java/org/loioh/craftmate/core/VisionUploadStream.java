@@ -0,0 +1,243 @@
+package org.loioh.craftmate.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.loioh.craftmate.utils.SecuritySigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Body of a vision upload that is written while the frame is still being encoded (see HTTP_Hook.openVisionStream).
+ * - Bounded chunk pipe between the vision worker (writer) and the HTTP client (reader): bytes reach the socket as
+ *   the encoder produces them, and the worker blocks only if the upload is more than PIPE_CHUNKS chunks behind
+ * - SHA-256 of the body is updated as bytes are written; the HMAC can't be a header when the body isn't known up
+ *   front, so it goes in a trailing "_sig" member (X-CM-Sig: trailer) and covers everything before it
+ * - header() writes the envelope up to the open image object, image() is the base64 sink for image.image_b64
+ * - source() hands out the one reader; a second call (HTTP client retry) fails the request instead of
+ *   sending a second body out of the same pipe
+ * - abort() (encode failed) or cancel() (request failed) unblock both sides; the request then fails
+ */
+public final class VisionUploadStream {
+
+    static final String SIG_TRAILER = "trailer";
+
+    private static final int CHUNK = 8 * 1024;
+    private static final int PIPE_CHUNKS = 32;
+    // Either side giving up after this long without progress fails the upload instead of hanging the worker.
+    private static final long STALL_MS = 10_000L;
+    private static final byte[] EOF = new byte[0];
+    private static final byte[] ABORT = new byte[0];
+    private static final Gson GSON = new Gson();
+
+    private final BlockingQueue<byte[]> pipe = new ArrayBlockingQueue<>(PIPE_CHUNKS);
+    private final MessageDigest digest;
+    private final String canonicalPrefix; // ts\nclientId\nPOST\npath\n
+    private final String secret;
+
+    // Vision worker only
+    private final Sink sink = new Sink();
+    private byte[] chunk = new byte[CHUNK];
+    private int fill = 0;
+    private boolean inImage = false;
+
+    private final AtomicBoolean sourceTaken = new AtomicBoolean(false);
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+    private volatile long bodyBytes = 0L;
+    private volatile String frameHash = null;
+
+    VisionUploadStream(String canonicalPrefix, String secret) throws Exception {
+        this.digest = MessageDigest.getInstance("SHA-256");
+        this.canonicalPrefix = canonicalPrefix;
+        this.secret = secret;
+    }
+
+    /** Reader side, handed to the HTTP client as the request body; single-shot (the pipe can only be read once). */
+    InputStream source() {
+        if (!sourceTaken.compareAndSet(false, true)) throw new IllegalStateException("vision upload body already consumed");
+        return new Source();
+    }
+
+    /**
+     * Envelope up to the open image object: {"player_id":..,"ts":..,"hint":..,"tiles":..,"image":{"mime":..,"w":..,"h":..
+     * Written by hand so the body layout does not depend on how Gson prints the object.
+     */
+    void header(String playerId, long ts, JsonObject hint, JsonObject tiles, String mime, int w, int h) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"player_id\":").append(GSON.toJson(playerId));
+        sb.append(",\"ts\":").append(ts);
+        if (hint != null) sb.append(",\"hint\":").append(GSON.toJson(hint));
+        if (tiles != null) sb.append(",\"tiles\":").append(GSON.toJson(tiles));
+        sb.append(",\"image\":{\"mime\":").append(GSON.toJson(mime));
+        sb.append(",\"w\":").append(w);
+        sb.append(",\"h\":").append(h);
+        writeRaw(sb.toString());
+    }
+
+    void writeRaw(String s) throws IOException {
+        sink.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Open image.image_b64: the returned stream base64-encodes into the body; close it when the JPEG is done. */
+    public OutputStream image() throws IOException {
+        if (inImage) throw new IOException("image already open");
+        inImage = true;
+        writeRaw(",\"image_b64\":\"");
+        return Base64.getEncoder().wrap(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                sink.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                sink.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                // Base64 padding is written by the wrapper before it closes us; the body stays open.
+            }
+        });
+    }
+
+    /** Close the image, append fovea + frame_hash and the signature trailer, and end the body. */
+    public void finish(JsonObject fovea, String frameHash) throws IOException {
+        StringBuilder tail = new StringBuilder();
+        tail.append(inImage ? "\"}" : "}"); // image_b64 string (if any), then the image object
+        if (fovea != null) tail.append(",\"fovea\":").append(GSON.toJson(fovea));
+        if (frameHash != null && !frameHash.isBlank()) tail.append(",\"frame_hash\":").append(GSON.toJson(frameHash));
+        writeRaw(tail.toString());
+        this.frameHash = frameHash;
+
+        // Everything written so far is signed; the trailer itself is not part of the hash.
+        String bodyHash = SecuritySigner.toHex(digest.digest());
+        String sig = "";
+        if (secret != null && !secret.isBlank()) {
+            try {
+                sig = SecuritySigner.hmacSha256Hex(secret, canonicalPrefix + bodyHash);
+            } catch (Exception e) {
+                throw new IOException("sign failed", e);
+            }
+        }
+        writeRaw(",\"_sig\":{\"body_sha256\":\"" + bodyHash + "\",\"sig\":\"" + sig + "\"}}");
+        flushChunk();
+        put(EOF);
+        finished = true;
+    }
+
+    /** Writer gave up (encode failed): the request fails instead of sending a truncated body. */
+    public void abort() {
+        if (finished) return;
+        cancelled = true;
+        pipe.clear();
+        pipe.offer(ABORT);
+    }
+
+    /** Request failed or was cancelled: unblock a writer that is waiting on a full pipe. */
+    void cancel() {
+        cancelled = true;
+        pipe.clear();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /** Bytes written so far (the whole body once finished). */
+    long bodyBytes() {
+        return bodyBytes;
+    }
+
+    /** frame_hash given to {@link #finish}, or null before that. */
+    String frameHash() {
+        return frameHash;
+    }
+
+    private void flushChunk() throws IOException {
+        if (fill == 0) return;
+        byte[] c = chunk;
+        if (fill < c.length) c = java.util.Arrays.copyOf(c, fill);
+        else chunk = new byte[CHUNK];
+        fill = 0;
+        put(c);
+    }
+
+    private void put(byte[] c) throws IOException {
+        if (cancelled) throw new IOException("vision upload cancelled");
+        try {
+            if (!pipe.offer(c, STALL_MS, TimeUnit.MILLISECONDS)) throw new IOException("vision upload stalled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+
+    private final class Sink extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            chunk[fill++] = (byte) b;
+            digest.update((byte) b);
+            bodyBytes++;
+            if (fill == chunk.length) flushChunk();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            digest.update(b, off, len);
+            bodyBytes += len;
+            while (len > 0) {
+                int n = Math.min(len, chunk.length - fill);
+                System.arraycopy(b, off, chunk, fill, n);
+                fill += n;
+                off += n;
+                len -= n;
+                if (fill == chunk.length) flushChunk();
+            }
+        }
+    }
+
+    private final class Source extends InputStream {
+        private byte[] cur = null;
+        private int pos = 0;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (cur == null || pos == cur.length) {
+                if (cur == EOF) return -1;
+                byte[] next;
+                try {
+                    next = pipe.poll(STALL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted", e);
+                }
+                if (next == null) throw new IOException("vision upload stalled");
+                if (next == ABORT) throw new IOException("vision upload aborted");
+                cur = next;
+                pos = 0;
+            }
+            int n = Math.min(len, cur.length - pos);
+            System.arraycopy(cur, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
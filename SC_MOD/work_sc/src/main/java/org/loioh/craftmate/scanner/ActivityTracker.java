@@ -1,13 +1,16 @@
 package org.loioh.craftmate.scanner;
 
 import com.google.gson.JsonObject;
-import net.minecraft.core.registries.BuiltInRegistries;
-import net.minecraft.resources.ResourceLocation;
 import net.minecraft.util.Mth;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.Mob;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.BlockHitResult;
+import net.minecraft.world.phys.EntityHitResult;
+import net.minecraft.world.phys.HitResult;
 import net.minecraft.world.phys.Vec3;
+import org.loioh.craftmate.utils.RegistryIds;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -33,7 +36,7 @@ public final class ActivityTracker {
         float lastPitch = 0f;
         long lastTickMs = 0L;
 
-        String lastFocusKey = "";
+        int lastFocus = 0;
         int focusStreakTicks = 0;
 
         // Rolling counters (timestamps in ms)
@@ -59,7 +62,7 @@ public final class ActivityTracker {
     }
 
     /** Called every client tick (safe to call often). */
-    public static void onTick(Player player, String focusKey) {
+    public static void onTick(Player player, int focus) {
         if (player == null) return;
         UUID id = player.getUUID();
         State s = st(id);
@@ -75,12 +78,11 @@ public final class ActivityTracker {
         }
 
         // focus streak
-        if (focusKey == null) focusKey = "";
-        if (focusKey.equals(s.lastFocusKey) && !focusKey.isBlank()) {
+        if (focus == s.lastFocus && focus != 0) {
             s.focusStreakTicks++;
         } else {
             s.focusStreakTicks = 0;
-            s.lastFocusKey = focusKey;
+            s.lastFocus = focus;
         }
 
         // look delta (degrees)
@@ -215,10 +217,10 @@ public final class ActivityTracker {
 
         // held items (for speech)
         try {
-            ResourceLocation main = BuiltInRegistries.ITEM.getKey(player.getMainHandItem().getItem());
-            if (main != null) a.addProperty("held_mainhand", main.toString());
-            ResourceLocation off = BuiltInRegistries.ITEM.getKey(player.getOffhandItem().getItem());
-            if (off != null) a.addProperty("held_offhand", off.toString());
+            String main = RegistryIds.item(player.getMainHandItem().getItem());
+            if (main != null) a.addProperty("held_mainhand", main);
+            String off = RegistryIds.item(player.getOffhandItem().getItem());
+            if (off != null) a.addProperty("held_offhand", off);
         } catch (Throwable ignored) {}
 
         return a;
@@ -270,28 +272,29 @@ public final class ActivityTracker {
         return "";
     }
 
-    public static String focusKeyFromFocusJson(JsonObject focus) {
-        if (focus == null) return "";
+    /** What the crosshair is on, for the focus streak: 0 = nothing, entity type index + 1, or -(block index + 1). */
+    public static int focusOf(HitResult hr, Level level) {
         try {
-            String type = focus.has("type") ? focus.get("type").getAsString() : "";
-            String id = focus.has("id") ? focus.get("id").getAsString() : "";
-            if (type.isBlank() && id.isBlank()) return "";
-            return type + ":" + id;
-        } catch (Throwable t) {
-            return "";
-        }
+            if (hr instanceof EntityHitResult ehr && hr.getType() == HitResult.Type.ENTITY) {
+                return RegistryIds.entityIndex(ehr.getEntity().getType()) + 1;
+            }
+            if (hr instanceof BlockHitResult bhr && hr.getType() == HitResult.Type.BLOCK && level != null) {
+                return -(RegistryIds.blockIndex(level.getBlockState(bhr.getBlockPos()).getBlock()) + 1);
+            }
+        } catch (Throwable ignored) {}
+        return 0;
     }
 
     public static JsonObject entityHint(Entity e) {
         JsonObject jo = new JsonObject();
         if (e == null) return jo;
         try {
-            ResourceLocation id = BuiltInRegistries.ENTITY_TYPE.getKey(e.getType());
-            if (id != null) jo.addProperty("id", id.toString());
+            String id = RegistryIds.entity(e.getType());
+            if (id != null) jo.addProperty("id", id);
             jo.addProperty("name", e.getName().getString());
             if (e instanceof Mob mob) {
-                ResourceLocation held = BuiltInRegistries.ITEM.getKey(mob.getMainHandItem().getItem());
-                if (held != null) jo.addProperty("held_item", held.toString());
+                String held = RegistryIds.item(mob.getMainHandItem().getItem());
+                if (held != null) jo.addProperty("held_item", held);
             }
         } catch (Throwable ignored) {}
         return jo;
@@ -0,0 +1,355 @@
+package org.loioh.craftmate.scanner;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.monster.Monster;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.EntityLeaveLevelEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Incremental view of the client level's entities for SceneScanner's nearby list.
+ * - Membership follows EntityJoinLevelEvent / EntityLeaveLevelEvent (client level only); a level change rebuilds
+ *   it once from entitiesForRendering()
+ * - Entities live in a 2D spatial hash of 16-block columns; each client tick only entities whose column
+ *   changed are re-bucketed, so a query touches the columns around the player instead of the whole level
+ * - Query keeps the K nearest perceivable entities in a bounded max-heap keyed by distance (same selection as the
+ *   full scan); candidates that cannot beat the heap never get a raycast
+ * - Line of sight is cached per entity for LOS_TTL_TICKS; at most LOS_BUDGET raycasts run per tick, the rest
+ *   use the last known result and are refreshed round-robin on the following ticks
+ * Client thread only.
+ */
+@Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class EntityTracker {
+
+    private EntityTracker() {}
+
+    private static final int CELL_SHIFT = 4; // 16-block columns, same width as a chunk section
+    private static final long LOS_TTL_TICKS = 8L;
+    private static final int LOS_BUDGET = 6;
+    private static final double AWARENESS_DIST = 6.5;
+    private static final double COS_HALF_FOV = Math.cos(Math.toRadians(60.0)); // ~120deg total
+
+    private static final class Tracked {
+        final Entity entity;
+        long cell;
+        int slot;          // index in its cell list
+        boolean los;
+        long losTick = Long.MIN_VALUE;
+        boolean queued;
+
+        Tracked(Entity entity) {
+            this.entity = entity;
+        }
+    }
+
+    /** One selected entity, nearest first. */
+    static final class Hit {
+        final Entity entity;
+        final double distance;
+        final boolean hostile;
+
+        Hit(Entity entity, double distance, boolean hostile) {
+            this.entity = entity;
+            this.distance = distance;
+            this.hostile = hostile;
+        }
+    }
+
+    private static final IdentityHashMap<Entity, Tracked> BY_ENTITY = new IdentityHashMap<>();
+    private static final HashMap<Long, ArrayList<Tracked>> CELLS = new HashMap<>();
+    private static final ArrayDeque<Tracked> LOS_QUEUE = new ArrayDeque<>();
+
+    private static Level trackedLevel = null;
+    private static long budgetTick = Long.MIN_VALUE;
+    private static int budgetLeft = 0;
+
+    // Bounded heap, reused between queries (max-heap on distance: root is the farthest kept entity)
+    private static Tracked[] heapVal = new Tracked[32];
+    private static double[] heapDist = new double[32];
+    private static boolean[] heapHostile = new boolean[32];
+    private static int heapSize = 0;
+
+    @SubscribeEvent
+    public static void onJoin(EntityJoinLevelEvent e) {
+        try {
+            Level level = e.getLevel();
+            if (level == null || !level.isClientSide() || level != trackedLevel) return;
+            add(e.getEntity());
+        } catch (Throwable ignored) {}
+    }
+
+    @SubscribeEvent
+    public static void onLeave(EntityLeaveLevelEvent e) {
+        try {
+            Level level = e.getLevel();
+            if (level == null || !level.isClientSide() || level != trackedLevel) return;
+            remove(e.getEntity());
+        } catch (Throwable ignored) {}
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent e) {
+        if (e.phase != TickEvent.Phase.END) return;
+        try {
+            Minecraft mc = Minecraft.getInstance();
+            if (mc == null || mc.level == null || mc.player == null) {
+                if (trackedLevel != null) clear();
+                return;
+            }
+            syncLevel(mc.level);
+            rebucket();
+            drainLosQueue(mc.player, mc.level.getGameTime());
+        } catch (Throwable ignored) {}
+    }
+
+    /**
+     * Up to {@code limit} entities the player can plausibly perceive within {@code radius} blocks of the player's box
+     * (in the FOV cone with line of sight, or hostile inside the awareness zone), nearest first.
+     */
+    static ArrayList<Hit> query(Player player, double radius, int limit) {
+        ArrayList<Hit> out = new ArrayList<>();
+        Level level = player.level();
+        if (level == null || limit <= 0) return out;
+        if (level instanceof ClientLevel cl) {
+            syncLevel(cl);
+        } else {
+            return out;
+        }
+
+        long tick = level.getGameTime();
+        Vec3 center = player.position();
+        Vec3 look = player.getLookAngle();
+        double cx = center.x, cy = center.y, cz = center.z;
+        ensureHeap(limit);
+        heapSize = 0;
+
+        int minX = floorCell(cx - radius), maxX = floorCell(cx + radius);
+        int minZ = floorCell(cz - radius), maxZ = floorCell(cz + radius);
+        for (int gx = minX; gx <= maxX; gx++) {
+            for (int gz = minZ; gz <= maxZ; gz++) {
+                ArrayList<Tracked> bucket = CELLS.get(key(gx, gz));
+                if (bucket == null) continue;
+                for (int i = 0, n = bucket.size(); i < n; i++) {
+                    Tracked t = bucket.get(i);
+                    Entity en = t.entity;
+                    if (en == player || !en.isAlive()) continue;
+
+                    // same box the level query used (player box inflated by radius)
+                    double dx = en.getX() - cx, dy = en.getY() - cy, dz = en.getZ() - cz;
+                    if (Math.abs(dx) > radius || Math.abs(dz) > radius || dy > radius + player.getBbHeight() || dy < -radius) continue;
+                    double d2 = dx * dx + dy * dy + dz * dz;
+                    if (d2 < 1e-8) continue;
+                    double dist = Math.sqrt(d2);
+                    boolean hostile = en instanceof Monster;
+
+                    // awareness zone: hostile very close even if not in LoS
+                    boolean awareness = hostile && dist <= AWARENESS_DIST;
+                    boolean inFov = (look.x * dx + look.y * dy + look.z * dz) / dist >= COS_HALF_FOV;
+                    if (!awareness && !inFov) continue;
+
+                    if (heapSize == limit && dist >= heapDist[0]) continue; // cannot make the cut: skip the raycast
+                    if (!awareness && !lineOfSight(player, t, tick)) continue;
+                    offer(t, dist, hostile, limit);
+                }
+            }
+        }
+
+        // Drain worst-first, then report nearest first (same order the full scan used)
+        for (int i = heapSize; i > 0; i--) {
+            out.add(new Hit(heapVal[0].entity, heapDist[0], heapHostile[0]));
+            pop();
+        }
+        out.sort((a, b) -> Double.compare(a.distance, b.distance));
+        return out;
+    }
+
+    private static boolean lineOfSight(Player player, Tracked t, long tick) {
+        if (t.losTick != Long.MIN_VALUE && tick - t.losTick <= LOS_TTL_TICKS) return t.los;
+        if (takeBudget(tick)) {
+            raycast(player, t, tick);
+            return t.los;
+        }
+        // Over budget: last known answer now, fresh one on a later tick
+        if (!t.queued) {
+            t.queued = true;
+            LOS_QUEUE.addLast(t);
+        }
+        return t.los;
+    }
+
+    private static void raycast(Player player, Tracked t, long tick) {
+        boolean los = false;
+        try {
+            los = player.hasLineOfSight(t.entity);
+        } catch (Throwable ignored) {}
+        t.los = los;
+        t.losTick = tick;
+    }
+
+    private static boolean takeBudget(long tick) {
+        if (tick != budgetTick) {
+            budgetTick = tick;
+            budgetLeft = LOS_BUDGET;
+        }
+        if (budgetLeft <= 0) return false;
+        budgetLeft--;
+        return true;
+    }
+
+    private static void drainLosQueue(Player player, long tick) {
+        while (!LOS_QUEUE.isEmpty()) {
+            Tracked t = LOS_QUEUE.peekFirst();
+            if (BY_ENTITY.get(t.entity) != t) { // left the level while queued
+                LOS_QUEUE.pollFirst();
+                continue;
+            }
+            if (!takeBudget(tick)) return;
+            LOS_QUEUE.pollFirst();
+            t.queued = false;
+            raycast(player, t, tick);
+        }
+    }
+
+    // ---- membership / spatial hash ----
+
+    private static void syncLevel(ClientLevel level) {
+        if (level == trackedLevel) return;
+        clear();
+        trackedLevel = level;
+        try {
+            for (Entity en : level.entitiesForRendering()) add(en);
+        } catch (Throwable ignored) {}
+    }
+
+    private static void clear() {
+        BY_ENTITY.clear();
+        CELLS.clear();
+        LOS_QUEUE.clear();
+        trackedLevel = null;
+        heapSize = 0;
+        Arrays.fill(heapVal, null);
+    }
+
+    private static void add(Entity en) {
+        if (en == null || BY_ENTITY.containsKey(en)) return;
+        Tracked t = new Tracked(en);
+        BY_ENTITY.put(en, t);
+        t.cell = key(floorCell(en.getX()), floorCell(en.getZ()));
+        insert(t);
+    }
+
+    private static void remove(Entity en) {
+        if (en == null) return;
+        Tracked t = BY_ENTITY.remove(en);
+        if (t != null) detach(t);
+    }
+
+    /** Move entities whose column changed since the last tick; the rest cost one comparison each. */
+    private static void rebucket() {
+        for (Tracked t : BY_ENTITY.values()) {
+            long k = key(floorCell(t.entity.getX()), floorCell(t.entity.getZ()));
+            if (k == t.cell) continue;
+            detach(t);
+            t.cell = k;
+            insert(t);
+        }
+    }
+
+    private static void insert(Tracked t) {
+        ArrayList<Tracked> bucket = CELLS.computeIfAbsent(t.cell, c -> new ArrayList<>(8));
+        t.slot = bucket.size();
+        bucket.add(t);
+    }
+
+    private static void detach(Tracked t) {
+        ArrayList<Tracked> bucket = CELLS.get(t.cell);
+        if (bucket == null || t.slot >= bucket.size() || bucket.get(t.slot) != t) return;
+        Tracked last = bucket.remove(bucket.size() - 1);
+        if (last != t) {
+            bucket.set(t.slot, last);
+            last.slot = t.slot;
+        }
+        if (bucket.isEmpty()) CELLS.remove(t.cell);
+    }
+
+    private static int floorCell(double v) {
+        return ((int) Math.floor(v)) >> CELL_SHIFT;
+    }
+
+    private static long key(int gx, int gz) {
+        return ((long) gx << 32) | (gz & 0xFFFFFFFFL);
+    }
+
+    // ---- bounded heap ----
+
+    private static void ensureHeap(int limit) {
+        if (heapDist.length >= limit) return;
+        int n = Math.max(limit, heapDist.length * 2);
+        heapVal = new Tracked[n];
+        heapDist = new double[n];
+        heapHostile = new boolean[n];
+    }
+
+    private static void offer(Tracked t, double dist, boolean hostile, int limit) {
+        if (heapSize == limit) {
+            // replace the worst (root) and sift down
+            set(0, t, dist, hostile);
+            siftDown(0);
+            return;
+        }
+        int i = heapSize++;
+        set(i, t, dist, hostile);
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heapDist[p] >= heapDist[i]) break;
+            swap(i, p);
+            i = p;
+        }
+    }
+
+    private static void pop() {
+        int last = --heapSize;
+        if (last > 0) {
+            set(0, heapVal[last], heapDist[last], heapHostile[last]);
+            siftDown(0);
+        }
+        heapVal[last] = null;
+    }
+
+    private static void siftDown(int i) {
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, m = i;
+            if (l < heapSize && heapDist[l] > heapDist[m]) m = l;
+            if (r < heapSize && heapDist[r] > heapDist[m]) m = r;
+            if (m == i) return;
+            swap(i, m);
+            i = m;
+        }
+    }
+
+    private static void set(int i, Tracked t, double dist, boolean hostile) {
+        heapVal[i] = t;
+        heapDist[i] = dist;
+        heapHostile[i] = hostile;
+    }
+
+    private static void swap(int a, int b) {
+        Tracked t = heapVal[a]; heapVal[a] = heapVal[b]; heapVal[b] = t;
+        double d = heapDist[a]; heapDist[a] = heapDist[b]; heapDist[b] = d;
+        boolean h = heapHostile[a]; heapHostile[a] = heapHostile[b]; heapHostile[b] = h;
+    }
+}
@@ -0,0 +1,511 @@
+package org.loioh.craftmate.scanner;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.block.AbstractFurnaceBlock;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.common.Tags;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.loioh.craftmate.Config;
+import org.loioh.craftmate.utils.RegistryIds;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Predicate;
+
+/**
+ * Per-chunk index of "interesting" blocks (POIs) in the client level, for deep scene snapshots.
+ * - Chunks are queued on ChunkEvent.Load and indexed section by section, INDEX_SECTIONS_PER_TICK per client tick;
+ *   ChunkEvent.Unload drops them
+ * - The POI blocks are resolved from the block registry and tags (PoiBlocks: forge ore / chest / barrel tags, vanilla
+ *   workstations, furnaces by type), again whenever tags reload; a section whose palette cannot hold any of them
+ *   (LevelChunkSection.maybeHas) is recorded as empty without looking at its blocks
+ * - Lava and magma are kept as danger cues, but only exposed cells and at most DANGER_PER_SECTION per section
+ * - Sections that may hold a POI are copied (PalettedContainer.copy, read-only afterwards) and scanned on the
+ *   "CraftMate-PoiScan-" pool; tick-driven results are applied on the next client tick, query-driven ones are
+ *   waited for
+ * - Load-time indexing and refreshes only run while deep snapshots are on (deepSnapshotsEnabled); otherwise nothing
+ *   queries the index and it stays idle
+ * - Forge has no client-side block update event, so the sections around the player are re-indexed round-robin,
+ *   the whole deep scan box once per sceneDeepIntervalTicks (spread over the ticks, at most REFRESH_MAX_PER_TICK);
+ *   a query re-checks each hit's current block, so removals never leak
+ * - A query only touches sections in range; sections that are in range but not indexed yet are indexed on the spot
+ * Index state is client thread only; workers only see their section copy.
+ */
+@Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class PoiIndex {
+
+    private PoiIndex() {}
+
+    private static final int INDEX_SECTIONS_PER_TICK = 16;
+    private static final int REFRESH_MAX_PER_TICK = 6;
+    private static final int DANGER_PER_SECTION = 8;
+
+    private static final int PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int MAX_IN_FLIGHT = PARALLELISM * 8;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("CraftMate-PoiScan-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }, null, false);
+
+    /**
+     * POI blocks -> block id, built from the registry and its tags (read-only once built, any thread). Rebuilt by
+     * syncLevel when the level changes or tags are reloaded, since tag contents come from the server / datapacks.
+     */
+    private static final class PoiBlocks {
+        // Tagged groups, so modded ores / chests / barrels count too; beds, shulker boxes, anvils by tag (every colour)
+        private static final List<TagKey<Block>> TAGS = List.of(
+                Tags.Blocks.ORES, Tags.Blocks.CHESTS, Tags.Blocks.BARRELS,
+                BlockTags.BEDS, BlockTags.SHULKER_BOXES, BlockTags.ANVIL, BlockTags.CAMPFIRES, BlockTags.PORTALS);
+
+        final IdentityHashMap<Block, String> ids = new IdentityHashMap<>();
+        // Environmental danger cues: indexed like POIs but capped separately (a lava lake must not crowd out the rest)
+        final IdentityHashMap<Block, Boolean> danger = new IdentityHashMap<>();
+        final Predicate<BlockState> mayBePoi = st -> st != null && ids.containsKey(st.getBlock());
+
+        static PoiBlocks build() {
+            PoiBlocks t = new PoiBlocks();
+            Set<Block> exact = Set.of(
+                    Blocks.SPAWNER, Blocks.ENDER_CHEST, Blocks.END_PORTAL_FRAME,
+                    // Vanilla workstations (modded furnaces by type below)
+                    Blocks.CRAFTING_TABLE, Blocks.ENCHANTING_TABLE, Blocks.BREWING_STAND, Blocks.SMITHING_TABLE,
+                    Blocks.LECTERN, Blocks.LOOM, Blocks.CARTOGRAPHY_TABLE, Blocks.GRINDSTONE,
+                    // Valuables outside the ore tag
+                    Blocks.ANCIENT_DEBRIS, Blocks.BUDDING_AMETHYST, Blocks.AMETHYST_CLUSTER,
+                    Blocks.DIAMOND_BLOCK, Blocks.EMERALD_BLOCK);
+            for (Block b : BuiltInRegistries.BLOCK) {
+                boolean isDanger = b == Blocks.LAVA || b == Blocks.MAGMA_BLOCK;
+                if (!isDanger && !exact.contains(b) && !(b instanceof AbstractFurnaceBlock) && !tagged(b)) continue;
+                String id = RegistryIds.block(b);
+                if (id == null) continue;
+                t.ids.put(b, id);
+                if (isDanger) t.danger.put(b, Boolean.TRUE);
+            }
+            return t;
+        }
+
+        private static boolean tagged(Block b) {
+            BlockState st = b.defaultBlockState();
+            for (TagKey<Block> tag : TAGS) {
+                if (st.is(tag)) return true;
+            }
+            return false;
+        }
+    }
+
+    /** One indexed POI in range. */
+    static final class Poi {
+        final BlockPos pos;
+        final String id;
+        final double distance;
+        final boolean danger; // lava / magma: callers cap these separately
+
+        Poi(BlockPos pos, String id, double distance, boolean danger) {
+            this.pos = pos;
+            this.id = id;
+            this.distance = distance;
+            this.danger = danger;
+        }
+    }
+
+    /** POIs of one 16x16x16 section: local positions (x | z << 4 | y << 8) and block ids. */
+    private static final class SectionPois {
+        static final SectionPois EMPTY = new SectionPois(new short[0], new String[0], 0);
+
+        final short[] local;
+        final String[] ids;
+        final int size;
+
+        SectionPois(short[] local, String[] ids, int size) {
+            this.local = local;
+            this.ids = ids;
+            this.size = size;
+        }
+    }
+
+    private static final class ChunkPois {
+        final int cx, cz;
+        final int minSection;
+        final SectionPois[] sections; // null = not indexed yet
+        int nextSection = 0;          // load-time indexing cursor
+
+        ChunkPois(int cx, int cz, int minSection, int count) {
+            this.cx = cx;
+            this.cz = cz;
+            this.minSection = minSection;
+            this.sections = new SectionPois[count];
+        }
+    }
+
+    /** A section copy handed to a worker; {@code result} is read back on the client thread. */
+    private static final class Scan implements Callable<Scan> {
+        final ChunkPois chunk;
+        final int idx;
+        final PalettedContainer<BlockState> states;
+        final PoiBlocks table;
+        SectionPois result;
+
+        Scan(ChunkPois chunk, int idx, PalettedContainer<BlockState> states, PoiBlocks table) {
+            this.chunk = chunk;
+            this.idx = idx;
+            this.states = states;
+            this.table = table;
+        }
+
+        @Override
+        public Scan call() {
+            result = scanStates(states, table);
+            return this;
+        }
+    }
+
+    private static final HashMap<Long, ChunkPois> CHUNKS = new HashMap<>();
+    private static final ArrayDeque<Long> PENDING = new ArrayDeque<>();
+    private static final ConcurrentLinkedQueue<Scan> DONE = new ConcurrentLinkedQueue<>();
+
+    private static Level trackedLevel = null;
+    private static PoiBlocks blocks = null;
+    private static volatile boolean tagsChanged = false;
+    private static int refreshCursor = 0;
+    private static double refreshCredit = 0.0;
+    private static int inFlight = 0;
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load e) {
+        try {
+            if (!(e.getLevel() instanceof ClientLevel level)) return;
+            syncLevel(level);
+            ChunkPos cp = e.getChunk().getPos();
+            long key = ChunkPos.asLong(cp.x, cp.z);
+            CHUNKS.remove(key); // reloaded chunk: index again from scratch
+            if (deepSnapshotsEnabled()) PENDING.addLast(key); // otherwise indexed on demand if a query ever comes
+        } catch (Throwable ignored) {}
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload e) {
+        try {
+            if (!(e.getLevel() instanceof ClientLevel level) || level != trackedLevel) return;
+            ChunkPos cp = e.getChunk().getPos();
+            CHUNKS.remove(ChunkPos.asLong(cp.x, cp.z));
+        } catch (Throwable ignored) {}
+    }
+
+    /** Tag contents changed (joined a server, /reload): the POI table is rebuilt on the client thread. */
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent e) {
+        tagsChanged = true;
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent e) {
+        if (e.phase != TickEvent.Phase.END) return;
+        try {
+            Minecraft mc = Minecraft.getInstance();
+            if (mc == null || mc.level == null || mc.player == null) {
+                if (trackedLevel != null) clear();
+                return;
+            }
+            syncLevel(mc.level);
+            applyDone();
+            if (!deepSnapshotsEnabled()) {
+                PENDING.clear();
+                return;
+            }
+            indexPending(mc.level, INDEX_SECTIONS_PER_TICK);
+            refreshAround(mc.level, mc.player.blockPosition(), Config.getSceneDeepIntervalTicks());
+        } catch (Throwable ignored) {}
+    }
+
+    /**
+     * Indexed POIs within {@code range} blocks (block-position distance) and {@code ySpan} blocks vertically of
+     * {@code base}, nearest first. Each hit is checked against the current block before it is returned.
+     */
+    static ArrayList<Poi> nearby(Level level, BlockPos base, int range, int ySpan) {
+        ArrayList<Poi> out = new ArrayList<>();
+        if (!(level instanceof ClientLevel cl)) return out;
+        syncLevel(cl);
+
+        int bx = base.getX(), by = base.getY(), bz = base.getZ();
+        long r2 = (long) range * range;
+        int minCx = SectionPos.blockToSectionCoord(bx - range), maxCx = SectionPos.blockToSectionCoord(bx + range);
+        int minCz = SectionPos.blockToSectionCoord(bz - range), maxCz = SectionPos.blockToSectionCoord(bz + range);
+        int minSy = SectionPos.blockToSectionCoord(by - ySpan), maxSy = SectionPos.blockToSectionCoord(by + ySpan);
+        indexNow(cl, minCx, maxCx, minCz, maxCz, minSy, maxSy);
+
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                ChunkPois c = chunk(cl, cx, cz);
+                if (c == null) continue;
+                for (int sy = minSy; sy <= maxSy; sy++) {
+                    int idx = sy - c.minSection;
+                    SectionPois s = idx >= 0 && idx < c.sections.length ? c.sections[idx] : null;
+                    if (s == null) continue;
+                    int ox = cx << 4, oy = sy << 4, oz = cz << 4;
+                    for (int i = 0; i < s.size; i++) {
+                        int l = s.local[i];
+                        int x = ox + (l & 15), z = oz + ((l >> 4) & 15), y = oy + ((l >> 8) & 15);
+                        int dx = x - bx, dy = y - by, dz = z - bz;
+                        if (dy < -ySpan || dy > ySpan || Math.abs(dx) > range || Math.abs(dz) > range) continue;
+                        long d2 = (long) dx * dx + (long) dy * dy + (long) dz * dz;
+                        if (d2 > r2) continue;
+                        BlockPos p = new BlockPos(x, y, z);
+                        // stale entry (block changed since its section was indexed)
+                        BlockState cur = cl.getBlockState(p);
+                        if (s.ids[i] != poiId(cur)) continue; // canonical strings (RegistryIds)
+                        out.add(new Poi(p, s.ids[i], Math.sqrt(d2), blocks.danger.containsKey(cur.getBlock())));
+                    }
+                }
+            }
+        }
+        out.sort((a, b) -> Double.compare(a.distance, b.distance));
+        return out;
+    }
+
+    // ---- indexing ----
+
+    private static void syncLevel(ClientLevel level) {
+        if (level == trackedLevel && !tagsChanged) return;
+        tagsChanged = false;
+        if (level == trackedLevel) {
+            // Same level, new tags: re-index every known chunk against the new table (in-flight scans are dropped)
+            for (Long key : CHUNKS.keySet()) PENDING.addLast(key);
+            CHUNKS.clear();
+        } else {
+            clear();
+            trackedLevel = level;
+        }
+        blocks = PoiBlocks.build();
+    }
+
+    private static void clear() {
+        CHUNKS.clear();
+        PENDING.clear();
+        trackedLevel = null;
+        refreshCursor = 0;
+        refreshCredit = 0.0;
+    }
+
+    /** Index entry for a loaded chunk (created on first use); null if the chunk is not loaded. */
+    private static ChunkPois chunk(ClientLevel level, int cx, int cz) {
+        long key = ChunkPos.asLong(cx, cz);
+        ChunkPois c = CHUNKS.get(key);
+        if (c != null) return c;
+        LevelChunk lc = level.getChunkSource().getChunk(cx, cz, false);
+        if (lc == null) return null;
+        c = new ChunkPois(cx, cz, lc.getMinSection(), lc.getSections().length);
+        CHUNKS.put(key, c);
+        return c;
+    }
+
+    /**
+     * Start indexing one section: palette-only answers are stored right away and null is returned; otherwise
+     * a Scan over a copy of the section's states is returned for the caller to run.
+     */
+    private static Scan prepare(ClientLevel level, ChunkPois c, int idx) {
+        LevelChunk lc = level.getChunkSource().getChunk(c.cx, c.cz, false);
+        LevelChunkSection[] secs = lc != null ? lc.getSections() : null;
+        LevelChunkSection sec = secs != null && idx < secs.length ? secs[idx] : null;
+        if (sec == null || sec.hasOnlyAir() || !sec.maybeHas(blocks.mayBePoi)) {
+            c.sections[idx] = SectionPois.EMPTY;
+            return null;
+        }
+        return new Scan(c, idx, sec.getStates().copy(), blocks);
+    }
+
+    /**
+     * Worker side: every position of a section copy against the POI block table. Danger blocks only count where
+     * they are exposed upward, at most DANGER_PER_SECTION of them.
+     */
+    private static SectionPois scanStates(PalettedContainer<BlockState> states, PoiBlocks table) {
+        short[] local = null;
+        String[] ids = null;
+        int n = 0;
+        int dangerLeft = DANGER_PER_SECTION;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    BlockState st = states.get(x, y, z);
+                    if (st == null) continue;
+                    Block b = st.getBlock();
+                    String id = table.ids.get(b);
+                    if (id == null) continue;
+                    if (table.danger.containsKey(b)) {
+                        if (dangerLeft <= 0) continue;
+                        if (y < 15) {
+                            BlockState above = states.get(x, y + 1, z);
+                            if (above != null && above.getBlock() == b) continue; // buried under more of the same
+                        }
+                        dangerLeft--;
+                    }
+                    if (local == null) {
+                        local = new short[16];
+                        ids = new String[16];
+                    } else if (n == local.length) {
+                        local = Arrays.copyOf(local, n * 2);
+                        ids = Arrays.copyOf(ids, n * 2);
+                    }
+                    local[n] = (short) (x | z << 4 | y << 8);
+                    ids[n] = id;
+                    n++;
+                }
+            }
+        }
+        return n == 0 ? SectionPois.EMPTY : new SectionPois(local, ids, n);
+    }
+
+    /** Background scan; the result is applied by applyDone on a later tick. */
+    private static void submit(ClientLevel level, ChunkPois c, int idx) {
+        Scan scan = prepare(level, c, idx);
+        if (scan == null) return;
+        inFlight++;
+        POOL.execute(() -> {
+            try {
+                scan.call();
+            } catch (Throwable ignored) {
+                scan.result = SectionPois.EMPTY;
+            }
+            DONE.add(scan);
+        });
+    }
+
+    private static void applyDone() {
+        Scan scan;
+        while ((scan = DONE.poll()) != null) {
+            inFlight = Math.max(0, inFlight - 1);
+            ChunkPois c = scan.chunk;
+            if (CHUNKS.get(ChunkPos.asLong(c.cx, c.cz)) == c) c.sections[scan.idx] = scan.result;
+        }
+    }
+
+    /** Query side: index every missing section in the box now, scans spread over the pool and waited for. */
+    private static void indexNow(ClientLevel level, int minCx, int maxCx, int minCz, int maxCz, int minSy, int maxSy) {
+        ArrayList<Scan> scans = null;
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                ChunkPois c = chunk(level, cx, cz);
+                if (c == null) continue;
+                for (int sy = minSy; sy <= maxSy; sy++) {
+                    int idx = sy - c.minSection;
+                    if (idx < 0 || idx >= c.sections.length || c.sections[idx] != null) continue;
+                    Scan scan = prepare(level, c, idx);
+                    if (scan == null) continue;
+                    if (scans == null) scans = new ArrayList<>();
+                    scans.add(scan);
+                }
+            }
+        }
+        if (scans == null) return;
+        if (scans.size() > 1 && PARALLELISM >= 2) {
+            try {
+                POOL.invokeAll(scans);
+            } catch (Throwable ignored) {}
+        }
+        for (Scan scan : scans) {
+            if (scan.result == null) scan.call(); // single section, no spare cores, or a failed task
+            scan.chunk.sections[scan.idx] = scan.result;
+        }
+    }
+
+    /** Load-time indexing: up to {@code budget} sections from the queued chunks, oldest first. */
+    private static void indexPending(ClientLevel level, int budget) {
+        while (budget > 0 && inFlight < MAX_IN_FLIGHT && !PENDING.isEmpty()) {
+            long key = PENDING.peekFirst();
+            ChunkPois c = chunk(level, ChunkPos.getX(key), ChunkPos.getZ(key));
+            if (c == null) { // unloaded while queued
+                PENDING.pollFirst();
+                continue;
+            }
+            while (budget > 0 && inFlight < MAX_IN_FLIGHT && c.nextSection < c.sections.length) {
+                int idx = c.nextSection++;
+                if (c.sections[idx] == null) {
+                    submit(level, c, idx);
+                    budget--;
+                }
+            }
+            if (c.nextSection >= c.sections.length) PENDING.pollFirst();
+        }
+    }
+
+    /** Whether SceneLoop will ever take a deep snapshot (the only reader of this index). */
+    static boolean deepSnapshotsEnabled() {
+        return Config.getSceneScannerEnabled() && Config.getSceneDeepIntervalTicks() > 0 && Config.getSceneMaxPois() > 0;
+    }
+
+    /**
+     * Round-robin re-index of the sections around the player (deep scan box), so placed POIs show up without a
+     * block event: the whole box once per {@code intervalTicks}, a fraction of it each tick.
+     */
+    private static void refreshAround(ClientLevel level, BlockPos center, int intervalTicks) {
+        int range = scanRange(Config.getScenePoiRadiusBlocks());
+        int rc = (range >> 4) + 1;
+        int rs = (scanYSpan(range) >> 4) + 1;
+        int side = rc * 2 + 1;
+        int height = rs * 2 + 1;
+        int total = side * side * height;
+        refreshCredit = Math.min(REFRESH_MAX_PER_TICK, refreshCredit + (double) total / Math.max(1, intervalTicks));
+        int budget = (int) refreshCredit;
+        refreshCredit -= budget;
+        int pcx = SectionPos.blockToSectionCoord(center.getX());
+        int pcz = SectionPos.blockToSectionCoord(center.getZ());
+        int psy = SectionPos.blockToSectionCoord(center.getY());
+        for (int i = 0; i < budget && inFlight < MAX_IN_FLIGHT; i++) {
+            int k = refreshCursor % total;
+            refreshCursor = (k + 1) % total;
+            int dx = k % side - rc;
+            int dz = (k / side) % side - rc;
+            int dy = k / (side * side) - rs;
+            ChunkPois c = chunk(level, pcx + dx, pcz + dz);
+            if (c == null) continue;
+            int idx = psy + dy - c.minSection;
+            if (idx >= 0 && idx < c.sections.length) submit(level, c, idx);
+        }
+    }
+
+    /** Deep scan radius actually used for a configured value. */
+    static int scanRange(int configured) {
+        return Math.max(4, Math.min(configured, 64));
+    }
+
+    /** Vertical half-span of the deep scan box for a radius. */
+    static int scanYSpan(int range) {
+        return Math.max(4, range / 4);
+    }
+
+    // ---- POI rules ----
+
+    private static String poiId(BlockState state) {
+        if (state == null || blocks == null) return "";
+        String id = blocks.ids.get(state.getBlock());
+        return id != null ? id : "";
+    }
+}
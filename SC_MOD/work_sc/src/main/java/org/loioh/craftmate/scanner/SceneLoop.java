@@ -3,10 +3,12 @@ package org.loioh.craftmate.scanner;
 import com.google.gson.JsonObject;
 import net.minecraft.client.Minecraft;
 import net.minecraft.world.entity.player.Player;
+import org.loioh.craftmate.Config;
 import org.loioh.craftmate.CraftMate;
 import org.loioh.craftmate.core.HTTP_Hook;
 import org.loioh.craftmate.utils.Schedule;
 import org.loioh.craftmate.vision.VisionCapture;
+import org.loioh.craftmate.vision.VisionNoveltyProbe;
 import org.loioh.craftmate.vision.VisionTrigger;
 
 import java.util.Map;
@@ -28,6 +30,7 @@ public final class SceneLoop {
     private static final Map<UUID, VisionTrigger.State> VISION_STATE = new ConcurrentHashMap<>();
     private static final Map<UUID, Long> LAST_SCENE_POST_MS = new ConcurrentHashMap<>();
     private static final Map<UUID, Boolean> SCENE_INFLIGHT = new ConcurrentHashMap<>();
+    private static final Map<UUID, Long> LAST_DEEP_MS = new ConcurrentHashMap<>();
 
     // Hard guards (NOT user-configurable) to avoid cost abuse
     private static final int DEFAULT_VISION_MIN_INTERVAL_TICKS = 20 * 30;      // >= 30s
@@ -41,19 +44,30 @@ public final class SceneLoop {
         Player p = mc.player;
         if (p == null || mc.level == null) return;
 
-        // Build a lightweight snapshot (deep=false for speed)
-        JsonObject scene = SceneScanner.buildSceneSnapshotV2(p, radiusBlocks, false, 30, 20);
+        long nowMs = System.currentTimeMillis();
+        long minPostMs = Math.max(500L, intervalTicks * 50L);
+        long lastMs = LAST_SCENE_POST_MS.getOrDefault(playerId, 0L);
+        boolean inflight = SCENE_INFLIGHT.getOrDefault(playerId, false);
+        boolean willPost = !inflight && (nowMs - lastMs) >= minPostMs;
+
+        // Deep snapshot (visible POIs, from PoiIndex) every sceneDeepIntervalTicks, only when it will be posted
+        int deepTicks = Config.getSceneDeepIntervalTicks();
+        boolean deep = willPost && deepTicks > 0 && Config.getSceneMaxPois() > 0
+                && (nowMs - LAST_DEEP_MS.getOrDefault(playerId, 0L)) >= deepTicks * 50L;
+        if (deep) LAST_DEEP_MS.put(playerId, nowMs);
+
+        // Build the snapshot (lightweight unless deep)
+        JsonObject scene = SceneScanner.buildSceneSnapshotV2(p, radiusBlocks, deep, 30, Config.getSceneMaxPois());
         // Provide a monotonic tick for vision triggering (VisionTrigger uses this).
         scene.addProperty("tick", p.tickCount);
+        // Screen change since the last capture (VisionTrigger novelty input; omitted until known).
+        double novelty = VisionNoveltyProbe.novelty();
+        if (novelty >= 0.0) scene.addProperty("visualNovelty", Math.round(novelty * 1000.0) / 1000.0);
 
         // --- (A) Post scene snapshot to backend (/craftmate/scene)
         // This enables the backend to speak based on what it "sees".
         // Non-blocking + guarded against overlap.
-        long nowMs = System.currentTimeMillis();
-        long minPostMs = Math.max(500L, intervalTicks * 50L);
-        long lastMs = LAST_SCENE_POST_MS.getOrDefault(playerId, 0L);
-        boolean inflight = SCENE_INFLIGHT.getOrDefault(playerId, false);
-        if (!inflight && (nowMs - lastMs) >= minPostMs) {
+        if (willPost) {
             SCENE_INFLIGHT.put(playerId, true);
             LAST_SCENE_POST_MS.put(playerId, nowMs);
             Schedule.runTaskAsync(() -> {
@@ -76,7 +90,7 @@ public final class SceneLoop {
         int dangerMin = DEFAULT_VISION_DANGER_MIN_INTERVAL_TICKS;
 
         VisionTrigger.State st = VISION_STATE.computeIfAbsent(playerId, k -> new VisionTrigger.State());
-        VisionTrigger.Decision dec = VisionTrigger.shouldCapture(st, scene, minInterval, dangerMin);
+        VisionTrigger.Decision dec = VisionTrigger.shouldCapture(st, scene, minInterval, dangerMin, Config.getVisionDangerBurstFrames());
 
         if (!dec.shouldCapture) return;
 
@@ -90,6 +104,10 @@ public final class SceneLoop {
         hint.add("scene", scene);
 
         // Schedule capture (render thread will pick it up)
-        VisionCapture.requestCapture(playerId, hint);
+        if (dec.burstFrames > 1) {
+            VisionCapture.requestBurst(playerId, hint, dec.burstFrames, Config.getVisionBurstSpacingMs());
+        } else {
+            VisionCapture.requestCapture(playerId, hint);
+        }
     }
 }
@@ -4,7 +4,6 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
-import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.util.Mth;
 import net.minecraft.world.entity.Entity;
@@ -16,10 +15,8 @@ import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.EntityHitResult;
 import net.minecraft.world.phys.HitResult;
 import net.minecraft.world.phys.Vec3;
-
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import org.loioh.craftmate.Config;
+import org.loioh.craftmate.utils.RegistryIds;
 
 /**
  * Builds a lightweight "scene snapshot" for realtime 1:1 responses.
@@ -122,7 +119,7 @@ root.add("player_state", ps);
         root.add("activity", ActivityTracker.buildActivityJson(player));
 
         // Update tracker once per snapshot tick (cheap)
-        ActivityTracker.onTick(player, ActivityTracker.focusKeyFromFocusJson(focus));
+        ActivityTracker.onTick(player, ActivityTracker.focusOf(mc != null ? mc.hitResult : null, level));
 
         // -------------------------
         // Nearby perceivable entities
@@ -136,7 +133,7 @@ root.add("player_state", ps);
 
         // POI blocks (deep only)
         if (deep) {
-            nearby.add("pois", scanPoisVisible(player, Math.min(radiusBlocks, 18), Math.max(5, Math.min(maxPois, 80))));
+            nearby.add("pois", scanPoisVisible(player, Config.getScenePoiRadiusBlocks(), Math.max(5, Math.min(maxPois, 80))));
         }
         root.add("nearby", nearby);
 
@@ -160,6 +157,17 @@ root.add("player_state", ps);
         return root;
     }
 
+    /** Entity under the crosshair (the same target buildFocus reports as type=entity), or null. */
+    public static Entity focusedEntity(Minecraft mc) {
+        try {
+            HitResult hr = mc == null ? null : mc.hitResult;
+            if (hr != null && hr.getType() == HitResult.Type.ENTITY && hr instanceof EntityHitResult ehr) {
+                return ehr.getEntity();
+            }
+        } catch (Throwable ignored) {}
+        return null;
+    }
+
     private static JsonObject buildFocus(Minecraft mc, Player player) {
         try {
             HitResult hr = mc.hitResult;
@@ -170,17 +178,17 @@ root.add("player_state", ps);
 
             if (hr.getType() == HitResult.Type.ENTITY && hr instanceof EntityHitResult ehr) {
                 Entity e = ehr.getEntity();
-                ResourceLocation id = BuiltInRegistries.ENTITY_TYPE.getKey(e.getType());
+                String id = RegistryIds.entity(e.getType());
                 focus.addProperty("type", "entity");
-                focus.addProperty("id", id != null ? id.toString() : "unknown");
+                focus.addProperty("id", id != null ? id : "unknown");
                 focus.addProperty("name", safeName(e));
                 focus.addProperty("is_hostile", (e instanceof Monster));
 
                 // held item (if mob/player)
                 try {
                     if (e instanceof Mob mob) {
-                        ResourceLocation held = BuiltInRegistries.ITEM.getKey(mob.getMainHandItem().getItem());
-                        if (held != null) focus.addProperty("held_item", held.toString());
+                        String held = RegistryIds.item(mob.getMainHandItem().getItem());
+                        if (held != null) focus.addProperty("held_item", held);
                     }
                 } catch (Throwable ignored) {}
 
@@ -189,9 +197,9 @@ root.add("player_state", ps);
 
             if (hr.getType() == HitResult.Type.BLOCK && hr instanceof BlockHitResult bhr) {
                 BlockPos p = bhr.getBlockPos();
-                ResourceLocation bid = BuiltInRegistries.BLOCK.getKey(player.level().getBlockState(p).getBlock());
+                String bid = RegistryIds.block(player.level().getBlockState(p).getBlock());
                 focus.addProperty("type", "block");
-                focus.addProperty("id", bid != null ? bid.toString() : "unknown");
+                focus.addProperty("id", bid != null ? bid : "unknown");
                 focus.addProperty("x", p.getX());
                 focus.addProperty("y", p.getY());
                 focus.addProperty("z", p.getZ());
@@ -205,49 +213,18 @@ root.add("player_state", ps);
 
     private static JsonArray buildNearbyEntities(Player player, int radiusBlocks, int limit) {
         JsonArray out = new JsonArray();
-        Level level = player.level();
 
-        // Collect entities in radius
+        // Candidates come from EntityTracker (spatial hash, top-K, cached line of sight)
         double r = Math.max(6, Math.min(radiusBlocks, 64));
-        Vec3 center = player.position();
-
-        List<Entity> all = new ArrayList<>(level.getEntities(player, player.getBoundingBox().inflate(r)));
-        // Sort by distance
-        all.sort(Comparator.comparingDouble(e -> e.distanceToSqr(player)));
-
-        // FOV cone filter
-        Vec3 look = player.getLookAngle();
-        double cosHalfFov = Math.cos(Math.toRadians(60.0)); // ~120deg total
-
         int lim = Math.max(5, Math.min(limit, 120));
-        for (Entity e : all) {
-            if (e == null || e == player) continue;
-            if (!e.isAlive()) continue;
-
-            double dist = Math.sqrt(e.distanceToSqr(player));
-            boolean hostile = e instanceof Monster;
-
-            // awareness zone: hostile very close even if not in LoS
-            boolean awareness = hostile && dist <= 6.5;
-
-            // in front cone
-            Vec3 dir = e.position().subtract(center);
-            double len = dir.length();
-            if (len < 0.0001) continue;
-            Vec3 nd = dir.scale(1.0 / len);
-            boolean inFov = look.dot(nd) >= cosHalfFov;
-
-            boolean los = false;
-            try {
-                los = player.hasLineOfSight(e);
-            } catch (Throwable ignored) {}
-
-            // Only include if perceivable
-            if (!(awareness || (inFov && los))) continue;
+        for (EntityTracker.Hit hit : EntityTracker.query(player, r, lim)) {
+            Entity e = hit.entity;
+            double dist = hit.distance;
+            boolean hostile = hit.hostile;
 
             JsonObject jo = new JsonObject();
-            ResourceLocation id = BuiltInRegistries.ENTITY_TYPE.getKey(e.getType());
-            jo.addProperty("id", id != null ? id.toString() : "unknown");
+            String id = RegistryIds.entity(e.getType());
+            jo.addProperty("id", id != null ? id : "unknown");
             jo.addProperty("name", safeName(e));
             jo.addProperty("distance", round1(dist));
             jo.addProperty("is_hostile", hostile);
@@ -255,13 +232,12 @@ root.add("player_state", ps);
             // Include a hint if holding an item (helps with modded entities too)
             try {
                 if (e instanceof Mob mob) {
-                    ResourceLocation held = BuiltInRegistries.ITEM.getKey(mob.getMainHandItem().getItem());
-                    if (held != null) jo.addProperty("held_item", held.toString());
+                    String held = RegistryIds.item(mob.getMainHandItem().getItem());
+                    if (held != null) jo.addProperty("held_item", held);
                 }
             } catch (Throwable ignored) {}
 
             out.add(jo);
-            if (out.size() >= lim) break;
         }
 
         return out;
@@ -303,81 +279,53 @@ root.add("player_state", ps);
         return biomeStr;
     }
 
-    /** Deep-only: scan for interesting blocks within a small range, but only if visible via ray check. */
+    /** Deep-only: interesting blocks within a small range (from PoiIndex), but only if visible via ray check. */
     private static JsonArray scanPoisVisible(Player player, int range, int maxPois) {
         JsonArray out = new JsonArray();
         Level level = player.level();
         Vec3 eye = player.getEyePosition();
-        int r = Math.max(4, Math.min(range, 18));
-        int ySpan = 4;
-
-        BlockPos base = player.blockPosition();
-        int found = 0;
-
-        // iterate a modest volume; filter aggressively by "interesting" ids
-        for (int dy = -ySpan; dy <= ySpan; dy++) {
-            for (int dx = -r; dx <= r; dx++) {
-                for (int dz = -r; dz <= r; dz++) {
-                    if (found >= maxPois) return out;
-                    BlockPos p = base.offset(dx, dy, dz);
-                    double dist = Math.sqrt(p.distSqr(base));
-                    if (dist > r) continue;
-                    try {
-                        var state = level.getBlockState(p);
-                        if (state.isAir()) continue;
-                        ResourceLocation bid = BuiltInRegistries.BLOCK.getKey(state.getBlock());
-                        String id = bid != null ? bid.toString() : "";
-                        if (!isInterestingBlockId(id)) continue;
-
-                        // visibility ray: only include if ray hits this block
-                        Vec3 center = Vec3.atCenterOf(p);
-                        // Forge/MC mappings: ClipContext is under net.minecraft.world.level (not world.phys)
-                        HitResult hr = level.clip(new net.minecraft.world.level.ClipContext(
-                                eye, center,
-                                net.minecraft.world.level.ClipContext.Block.COLLIDER,
-                                net.minecraft.world.level.ClipContext.Fluid.NONE,
-                                player
-                        ));
-                        if (hr.getType() != HitResult.Type.BLOCK) continue;
-                        if (hr instanceof BlockHitResult bhr) {
-                            if (!bhr.getBlockPos().equals(p)) continue;
-                        } else {
-                            continue;
-                        }
-
-                        JsonObject jo = new JsonObject();
-                        jo.addProperty("id", id);
-                        jo.addProperty("distance", round1(dist));
-                        jo.addProperty("x", p.getX());
-                        jo.addProperty("y", p.getY());
-                        jo.addProperty("z", p.getZ());
-                        out.add(jo);
-                        found++;
-                    } catch (Throwable ignored) {}
+        int r = PoiIndex.scanRange(range);
+        int ySpan = PoiIndex.scanYSpan(r);
+        int rays = maxPois * 4; // most candidates at larger radii are buried ores: bound the raycasts too
+        int dangerLeft = Math.max(1, maxPois / 4); // lava / magma cues: capped so they never crowd out real POIs
+
+        // nearest first: the ray budget goes to the closest candidates
+        for (PoiIndex.Poi poi : PoiIndex.nearby(level, player.blockPosition(), r, ySpan)) {
+            if (out.size() >= maxPois) break;
+            if (poi.danger && dangerLeft <= 0) continue;
+            if (rays-- <= 0) break;
+            BlockPos p = poi.pos;
+            try {
+                // visibility ray: only include if ray hits this block
+                Vec3 center = Vec3.atCenterOf(p);
+                // Forge/MC mappings: ClipContext is under net.minecraft.world.level (not world.phys)
+                HitResult hr = level.clip(new net.minecraft.world.level.ClipContext(
+                        eye, center,
+                        net.minecraft.world.level.ClipContext.Block.COLLIDER,
+                        // lava has no collider: danger cues must be hit through the fluid shape
+                        poi.danger ? net.minecraft.world.level.ClipContext.Fluid.ANY : net.minecraft.world.level.ClipContext.Fluid.NONE,
+                        player
+                ));
+                if (hr.getType() != HitResult.Type.BLOCK) continue;
+                if (hr instanceof BlockHitResult bhr) {
+                    if (!bhr.getBlockPos().equals(p)) continue;
+                } else {
+                    continue;
                 }
-            }
+
+                JsonObject jo = new JsonObject();
+                jo.addProperty("id", poi.id);
+                jo.addProperty("distance", round1(poi.distance));
+                jo.addProperty("x", p.getX());
+                jo.addProperty("y", p.getY());
+                jo.addProperty("z", p.getZ());
+                if (poi.danger) dangerLeft--;
+                out.add(jo);
+            } catch (Throwable ignored) {}
         }
         return out;
     }
 
-    private static boolean isInterestingBlockId(String id) {
-        if (id == null || id.isBlank()) return false;
-        // Strong POIs
-        if (id.contains("chest") || id.contains("barrel") || id.contains("shulker_box")) return true;
-        if (id.contains("spawner")) return true;
-        if (id.contains("crafting_table") || id.contains("furnace") || id.contains("blast_furnace") || id.contains("smoker")) return true;
-        if (id.contains("enchanting_table") || id.contains("anvil") || id.contains("brewing_stand") || id.contains("smithing_table")) return true;
-        if (id.contains("lectern") || id.contains("loom") || id.contains("cartography_table") || id.contains("grindstone")) return true;
-        if (id.contains("bed")) return true;
-        if (id.contains("portal") || id.contains("end_portal") || id.contains("nether_portal")) return true;
-        // Ores / valuables
-        if (id.contains("_ore")) return true;
-        if (id.contains("ancient_debris") || id.contains("amethyst") || id.contains("diamond") || id.contains("emerald")) return true;
-        // Environmental danger cues
-        if (id.contains("lava") || id.contains("campfire") || id.contains("magma")) return true;
-        return false;
-    }
-
     private static String safeName(Entity e) {
         try {
             String n = e.getName().getString();
@@ -0,0 +1,83 @@
+package org.loioh.craftmate.utils;
+
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.block.Block;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Canonical registry ids ("minecraft:zombie") for entity types, blocks and items.
+ * - Each registry object is looked up once (getKey + toString) and then served from a table keyed by the object
+ *   itself, so repeated snapshots allocate no id strings and equal ids are the same String instance
+ * - Each object also gets a small int index per kind, in first-seen order (stable for the session only, never sent)
+ * - Any thread
+ */
+public final class RegistryIds {
+
+    private RegistryIds() {}
+
+    private static final class Table<T> {
+        final Registry<T> registry;
+        final ConcurrentHashMap<T, String> names = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<T, Integer> indices = new ConcurrentHashMap<>();
+        final AtomicInteger next = new AtomicInteger();
+
+        Table(Registry<T> registry) {
+            this.registry = registry;
+        }
+
+        String name(T t) {
+            if (t == null) return null;
+            String s = names.get(t);
+            if (s != null) return s;
+            ResourceLocation rl = registry.getKey(t);
+            if (rl == null) return null; // not registered (yet): not cached
+            s = rl.toString();
+            String prev = names.putIfAbsent(t, s);
+            return prev != null ? prev : s;
+        }
+
+        int index(T t) {
+            if (t == null) return -1;
+            Integer i = indices.get(t);
+            if (i != null) return i;
+            return indices.computeIfAbsent(t, k -> next.getAndIncrement());
+        }
+    }
+
+    private static final Table<EntityType<?>> ENTITY_TYPES = new Table<>(BuiltInRegistries.ENTITY_TYPE);
+    private static final Table<Block> BLOCKS = new Table<>(BuiltInRegistries.BLOCK);
+    private static final Table<Item> ITEMS = new Table<>(BuiltInRegistries.ITEM);
+
+    /** Canonical id of an entity type; null if it has none. */
+    public static String entity(EntityType<?> type) {
+        return ENTITY_TYPES.name(type);
+    }
+
+    /** Canonical id of a block; null if it has none. */
+    public static String block(Block block) {
+        return BLOCKS.name(block);
+    }
+
+    /** Canonical id of an item; null if it has none. */
+    public static String item(Item item) {
+        return ITEMS.name(item);
+    }
+
+    public static int entityIndex(EntityType<?> type) {
+        return ENTITY_TYPES.index(type);
+    }
+
+    public static int blockIndex(Block block) {
+        return BLOCKS.index(block);
+    }
+
+    public static int itemIndex(Item item) {
+        return ITEMS.index(item);
+    }
+}
@@ -0,0 +1,256 @@
+package org.loioh.craftmate.vision;
+
+import org.loioh.craftmate.Config;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Picks the context image size and JPEG quality per capture from the measured uplink.
+ * - Every vision reply is a sample (request body bytes, send-to-reply ms). Server time only ever adds to a reply,
+ *   so the fastest small and the fastest large reply trace the link: slope = ms per byte, intercept = server floor
+ * - Frame size is predicted from the last uploads (bytes per pixel, normalised for JPEG quality)
+ * - Settings come from a ladder between visionMaxDim/visionJpegQuality and the adaptive minimums; per lane class
+ *   the best rung whose capture-to-uploaded time (encode + upload, not server time) fits the target is used
+ * - Chat, backend and danger share visionTargetLatencyChatMs; ambient uses visionTargetLatencyAmbientMs
+ *   (0 = best effort: always the configured maximum)
+ * - Steps down as soon as the target is missed, back up only with clear headroom
+ */
+public final class VisionAdaptiveController {
+
+    private VisionAdaptiveController() {}
+
+    /** Encoder settings for one capture. */
+    static final class Setting {
+        final int maxDim;
+        final int quality;
+
+        Setting(int maxDim, int quality) {
+            this.maxDim = maxDim;
+            this.quality = quality;
+        }
+    }
+
+    private static final int SAMPLES = 32;
+    private static final int MAX_RUNGS = 24;
+    private static final double DIM_STEP = 0.85;
+    private static final int QUALITY_STEP = 4;
+    // Step down when the prediction is over this share of the target, up only when under the second one.
+    private static final double DOWN_AT = 0.9;
+    private static final double UP_AT = 0.75;
+    // Link speed bounds, bytes per ms (5 kB/s .. 50 MB/s).
+    private static final double MIN_BYTES_PER_MS = 5.0;
+    private static final double MAX_BYTES_PER_MS = 50_000.0;
+    private static final double EWMA = 0.2;
+
+    /** An encoded frame waiting for its reply. */
+    private static final class Pending {
+        final boolean urgent;
+        final long capturedMs;
+        final int pixels;
+        final int quality;
+        final int jpegBytes;
+
+        Pending(boolean urgent, long capturedMs, int pixels, int quality, int jpegBytes) {
+            this.urgent = urgent;
+            this.capturedMs = capturedMs;
+            this.pixels = pixels;
+            this.quality = quality;
+            this.jpegBytes = jpegBytes;
+        }
+    }
+
+    private static final Map<String, Pending> PENDING = new LinkedHashMap<>();
+    private static final int PENDING_MAX = 16;
+
+    private static final long[] SAMPLE_BYTES = new long[SAMPLES];
+    private static final long[] SAMPLE_MS = new long[SAMPLES];
+    private static int sampleCount = 0;
+    private static int sampleNext = 0;
+
+    // Model state (guarded by the class lock)
+    private static double bytesPerMs = 0.0; // 0 = unknown
+    private static double serverMs = 0.0;
+    private static double normBytesPerPixel = 0.0; // JPEG bytes / (pixels * qualityFactor)
+    private static double aspect = 9.0 / 16.0; // short side / long side
+    private static double extraBytes = 0.0; // body bytes beyond the context image (fovea, tiles, JSON)
+    private static double localMs = 0.0; // capture -> request handed to the HTTP client
+    private static double e2eUrgentMs = -1.0;
+    private static double e2eAmbientMs = -1.0;
+
+    private static volatile int rungUrgent = 0;
+    private static volatile int rungAmbient = 0;
+
+    static boolean isUrgent(VisionQueue.Lane lane) {
+        return lane != VisionQueue.Lane.AMBIENT;
+    }
+
+    /** Settings for a capture in {@code lane} (any thread). */
+    static Setting settingFor(VisionQueue.Lane lane) {
+        int maxDim = clampDim(Config.getVisionMaxDim());
+        int maxQ = Config.getVisionJpegQuality();
+        if (!Config.getVisionAdaptive()) return new Setting(maxDim, maxQ);
+        return rung(isUrgent(lane) ? rungUrgent : rungAmbient, maxDim, maxQ);
+    }
+
+    /** Vision worker: a frame with {@code frameHash} is about to be posted. */
+    static synchronized void noteEncoded(String frameHash, VisionQueue.Lane lane, long capturedMs, int w, int h, int quality, int jpegBytes) {
+        if (frameHash == null || w <= 0 || h <= 0 || jpegBytes <= 0) return;
+        PENDING.put(frameHash, new Pending(isUrgent(lane), capturedMs, w * h, quality, jpegBytes));
+        while (PENDING.size() > PENDING_MAX) {
+            Iterator<String> it = PENDING.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        double a = (double) Math.min(w, h) / (double) Math.max(w, h);
+        aspect += EWMA * (a - aspect);
+    }
+
+    /**
+     * HTTP thread: reply for a vision post ({@code bodyBytes} request bytes, handed to the client at {@code sentAtMs}).
+     * Every reply feeds the link model; replies for frames seen in {@link #noteEncoded} also feed the frame-size model.
+     */
+    public static synchronized void onReply(String frameHash, int bodyBytes, long sentAtMs, long replyAtMs) {
+        long rtt = replyAtMs - sentAtMs;
+        if (bodyBytes <= 0 || rtt <= 0L) return;
+
+        SAMPLE_BYTES[sampleNext] = bodyBytes;
+        SAMPLE_MS[sampleNext] = rtt;
+        sampleNext = (sampleNext + 1) % SAMPLES;
+        if (sampleCount < SAMPLES) sampleCount++;
+        fitLink();
+
+        Pending p = frameHash != null ? PENDING.remove(frameHash) : null;
+        if (p != null) {
+            double nb = p.jpegBytes / (p.pixels * qualityFactor(p.quality));
+            normBytesPerPixel = normBytesPerPixel <= 0.0 ? nb : normBytesPerPixel + EWMA * (nb - normBytesPerPixel);
+            double extra = Math.max(0.0, bodyBytes - wireBytes(p.jpegBytes));
+            extraBytes += EWMA * (extra - extraBytes);
+            double local = Math.max(0L, sentAtMs - p.capturedMs);
+            localMs = localMs <= 0.0 ? local : localMs + EWMA * (local - localMs);
+            double e2e = replyAtMs - p.capturedMs;
+            if (p.urgent) e2eUrgentMs = e2eUrgentMs < 0.0 ? e2e : e2eUrgentMs + EWMA * (e2e - e2eUrgentMs);
+            else e2eAmbientMs = e2eAmbientMs < 0.0 ? e2e : e2eAmbientMs + EWMA * (e2e - e2eAmbientMs);
+        }
+
+        int maxDim = clampDim(Config.getVisionMaxDim());
+        int maxQ = Config.getVisionJpegQuality();
+        rungUrgent = choose(rungUrgent, Config.getVisionTargetLatencyChatMs(), maxDim, maxQ);
+        rungAmbient = choose(rungAmbient, Config.getVisionTargetLatencyAmbientMs(), maxDim, maxQ);
+    }
+
+    /** Short status line for the debug overlay. */
+    static synchronized String describe() {
+        if (!Config.getVisionAdaptive()) return "adaptive off";
+        Setting u = settingFor(VisionQueue.Lane.CHAT);
+        Setting a = settingFor(VisionQueue.Lane.AMBIENT);
+        return String.format("adaptive chat=%dpx q%d e2e=%s | ambient=%dpx q%d e2e=%s | link=%s srv=%.0fms local=%.0fms",
+                u.maxDim, u.quality, ms(e2eUrgentMs), a.maxDim, a.quality, ms(e2eAmbientMs),
+                bytesPerMs > 0.0 ? String.format("%.0fkB/s", bytesPerMs) : "?", serverMs, localMs);
+    }
+
+    /** Rung for a target: drop to the first one that fits, climb only to one with clear headroom. */
+    private static int choose(int current, int targetMs, int maxDim, int maxQ) {
+        if (targetMs <= 0 || bytesPerMs <= 0.0 || normBytesPerPixel <= 0.0) return 0;
+        int last = rungCount(maxDim, maxQ) - 1;
+        int fits = last;
+        int roomy = last;
+        for (int i = last; i >= 0; i--) {
+            double t = predictMs(rung(i, maxDim, maxQ));
+            if (t <= targetMs * DOWN_AT) fits = i;
+            if (t <= targetMs * UP_AT) roomy = i;
+        }
+        current = Math.min(current, last);
+        if (fits > current) return fits;
+        if (roomy < current) return roomy;
+        return current;
+    }
+
+    /** Capture -> uploaded for a setting: local work plus transfer of the predicted body. */
+    private static double predictMs(Setting s) {
+        double pixels = (double) s.maxDim * s.maxDim * aspect;
+        double jpeg = normBytesPerPixel * pixels * qualityFactor(s.quality);
+        return localMs + (wireBytes(jpeg) + extraBytes) / bytesPerMs;
+    }
+
+    /**
+     * Lower envelope of the samples: the fastest reply among the smaller and among the larger half of the bodies.
+     * Without enough size spread the whole fastest reply is charged to the link (pessimistic, so the controller steps
+     * down, which creates the spread).
+     */
+    private static void fitLink() {
+        int n = sampleCount;
+        if (n < 3) return;
+        Integer[] idx = new Integer[n];
+        for (int i = 0; i < n; i++) idx[i] = i;
+        Arrays.sort(idx, (x, y) -> Long.compare(SAMPLE_BYTES[x], SAMPLE_BYTES[y]));
+
+        int small = fastest(idx, 0, n / 2);
+        int large = fastest(idx, n / 2, n);
+        long bs = SAMPLE_BYTES[small], bl = SAMPLE_BYTES[large];
+        long ts = SAMPLE_MS[small], tl = SAMPLE_MS[large];
+
+        double slope; // ms per byte
+        if (bl >= bs * 3 / 2 + 1_000L) {
+            slope = tl > ts ? (double) (tl - ts) / (double) (bl - bs) : 1.0 / MAX_BYTES_PER_MS;
+        } else {
+            int f = ts <= tl ? small : large;
+            slope = (double) SAMPLE_MS[f] / (double) Math.max(1L, SAMPLE_BYTES[f]);
+        }
+        bytesPerMs = Math.max(MIN_BYTES_PER_MS, Math.min(MAX_BYTES_PER_MS, 1.0 / slope));
+        serverMs = Math.max(0.0, ts - bs / bytesPerMs);
+    }
+
+    private static int fastest(Integer[] idx, int from, int to) {
+        int best = idx[from];
+        for (int i = from + 1; i < to; i++) {
+            if (SAMPLE_MS[idx[i]] < SAMPLE_MS[best]) best = idx[i];
+        }
+        return best;
+    }
+
+    /** Rung {@code i}: dimension shrinks by DIM_STEP and quality by QUALITY_STEP per rung, each down to its minimum. */
+    private static Setting rung(int i, int maxDim, int maxQ) {
+        int minDim = Math.min(maxDim, Config.getVisionAdaptiveMinDim());
+        int minQ = Math.min(maxQ, Config.getVisionAdaptiveMinQuality());
+        int dim = maxDim;
+        if (i > 0) dim = Math.max(minDim, ((int) Math.round(maxDim * Math.pow(DIM_STEP, i))) & ~15);
+        int q = Math.max(minQ, maxQ - QUALITY_STEP * i);
+        return new Setting(dim, q);
+    }
+
+    private static int rungCount(int maxDim, int maxQ) {
+        int minDim = Math.min(maxDim, Config.getVisionAdaptiveMinDim());
+        int minQ = Math.min(maxQ, Config.getVisionAdaptiveMinQuality());
+        for (int i = 0; i < MAX_RUNGS; i++) {
+            Setting s = rung(i, maxDim, maxQ);
+            if (s.maxDim == minDim && s.quality == minQ) return i + 1;
+        }
+        return MAX_RUNGS;
+    }
+
+    /**
+     * Relative JPEG size for a quality: the IJG quantiser scale is 5000/q below 50 and 200-2q above; size goes roughly
+     * with 1/sqrt(scale) over the usable range (q50 ~0.7x, q95 ~2.2x of q75).
+     */
+    private static double qualityFactor(int q) {
+        q = Math.max(1, Math.min(100, q));
+        double scale = q < 50 ? 5000.0 / q : Math.max(1.0, 200.0 - 2.0 * q);
+        return 10.0 / Math.sqrt(scale);
+    }
+
+    /** Base64 size of {@code bytes} binary bytes. */
+    private static double wireBytes(double bytes) {
+        return bytes * 4.0 / 3.0;
+    }
+
+    private static int clampDim(int d) {
+        return Math.max(128, Math.min(1024, d));
+    }
+
+    private static String ms(double v) {
+        return v < 0.0 ? "?" : String.format("%.0fms", v);
+    }
+}
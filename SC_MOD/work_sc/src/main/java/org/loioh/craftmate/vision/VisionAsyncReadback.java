@@ -0,0 +1,143 @@
+package org.loioh.craftmate.vision;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Asynchronous framebuffer readback through pixel-pack buffers (render thread only).
+ * - start() queues glReadPixels into a PBO plus a fence and returns immediately (no pipeline stall)
+ * - poll() hands back the oldest readback once its fence has signalled, copied into a pooled RGBA array
+ * - A small ring of PBOs lets several frames be in flight; start() refuses when all slots are busy
+ */
+final class VisionAsyncReadback {
+
+    /** One finished readback: top-left origin RGBA (pooled, release via VisionPixels) and when it was issued. */
+    static final class Frame {
+        final VisionCapture.FrameData data;
+        final long capturedMs;
+
+        Frame(VisionCapture.FrameData data, long capturedMs) {
+            this.data = data;
+            this.capturedMs = capturedMs;
+        }
+    }
+
+    private final int[] pbo;
+    private final int[] capacity;
+    private final long[] fence;
+    private final int[] width;
+    private final int[] height;
+    private final long[] issuedMs;
+
+    // Ring indices: slots [head, head + pending) are in flight, oldest first.
+    private int head = 0;
+    private int pending = 0;
+
+    VisionAsyncReadback(int slots) {
+        pbo = new int[slots];
+        capacity = new int[slots];
+        fence = new long[slots];
+        width = new int[slots];
+        height = new int[slots];
+        issuedMs = new long[slots];
+    }
+
+    /** Read the currently bound READ framebuffer (0,0,w,h) into the next free PBO. */
+    boolean start(int w, int h) {
+        RenderSystem.assertOnRenderThreadOrInit();
+        if (pending >= pbo.length) return false;
+
+        int slot = (head + pending) % pbo.length;
+        int bytes = w * h * 4;
+        if (pbo[slot] == 0) pbo[slot] = GL15.glGenBuffers();
+
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbo[slot]);
+        try {
+            if (capacity[slot] < bytes) {
+                GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, bytes, GL15.GL_STREAM_READ);
+                capacity[slot] = bytes;
+            }
+            GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+            GL11.glReadPixels(0, 0, w, h, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, 0L);
+        } finally {
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        }
+
+        fence[slot] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        width[slot] = w;
+        height[slot] = h;
+        issuedMs[slot] = System.currentTimeMillis();
+        pending++;
+        return true;
+    }
+
+    /** Oldest finished readback, or null if none is ready yet (never blocks). */
+    Frame poll() {
+        RenderSystem.assertOnRenderThreadOrInit();
+        if (pending == 0) return null;
+
+        int slot = head;
+        int st = GL32.glClientWaitSync(fence[slot], GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 0L);
+        if (st != GL32.GL_ALREADY_SIGNALED && st != GL32.GL_CONDITION_SATISFIED) {
+            if (st != GL32.GL_WAIT_FAILED) return null;
+            // Lost fence: drop the slot rather than waiting on it forever.
+            retire(slot);
+            return null;
+        }
+
+        int w = width[slot];
+        int h = height[slot];
+        int bytes = w * h * 4;
+        byte[] rgba = null;
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbo[slot]);
+        try {
+            ByteBuffer mapped = GL30.glMapBufferRange(GL21.GL_PIXEL_PACK_BUFFER, 0L, bytes, GL30.GL_MAP_READ_BIT);
+            if (mapped != null) {
+                rgba = VisionPixels.acquire(bytes);
+                // GL origin is bottom-left; flip rows while copying out.
+                VisionPixels.copyRowsFlipped(mapped, rgba, w, h);
+                GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+            }
+        } finally {
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        }
+
+        long at = issuedMs[slot];
+        retire(slot);
+        return rgba != null ? new Frame(new VisionCapture.FrameData(rgba, w, h), at) : null;
+    }
+
+    int pending() {
+        return pending;
+    }
+
+    /** Forget every readback still in flight; the PBOs are kept for reuse (render thread). */
+    void discardPending() {
+        while (pending > 0) retire(head);
+    }
+
+    /** Free the GL objects (render thread). */
+    void close() {
+        discardPending();
+        for (int i = 0; i < pbo.length; i++) {
+            if (pbo[i] != 0) {
+                try { GL15.glDeleteBuffers(pbo[i]); } catch (Throwable ignored) {}
+                pbo[i] = 0;
+                capacity[i] = 0;
+            }
+        }
+    }
+
+    private void retire(int slot) {
+        try { if (fence[slot] != 0L) GL32.glDeleteSync(fence[slot]); } catch (Throwable ignored) {}
+        fence[slot] = 0L;
+        head = (head + 1) % pbo.length;
+        pending--;
+    }
+}
@@ -0,0 +1,245 @@
+package org.loioh.craftmate.vision;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.mojang.blaze3d.pipeline.RenderTarget;
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.loioh.craftmate.Config;
+import org.loioh.craftmate.CraftMate;
+import org.loioh.craftmate.core.HTTP_Hook;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Danger bursts: a short clip of small frames instead of one still, so the backend sees which way a mob is moving.
+ * - Frames are GPU-downscaled to visionBurstDim and read back through PBOs (one VisionAsyncReadback shared by
+ *   all bursts), spaced visionBurstSpacingMs apart, polled at RenderTickEvent END
+ * - Each frame is JPEG-encoded on the vision worker as soon as it arrives, while later ones are still in flight,
+ *   at the lane's adaptive quality (same as a single capture)
+ * - One upload: the newest frame is the regular image, earlier ones go in burst.frames (oldest first)
+ * - JPEG bytes are capped by visionBurstMaxBytes; intermediate frames are dropped first, the newest is kept
+ * - One burst at a time; it holds the capture slot until the upload has been handed to the HTTP client
+ */
+@Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class VisionBurst {
+
+    private VisionBurst() {}
+
+    private static final int READBACK_SLOTS = 3;
+    // Readbacks still outstanding this long after the last frame was due are given up on.
+    private static final long GRACE_MS = 1_000L;
+
+    private static final class Shot {
+        final long capturedMs;
+        final int w;
+        final int h;
+        final byte[] jpeg;
+
+        Shot(long capturedMs, int w, int h, byte[] jpeg) {
+            this.capturedMs = capturedMs;
+            this.w = w;
+            this.h = h;
+            this.jpeg = jpeg;
+        }
+    }
+
+    private static final class Session {
+        final VisionCapture.Request req;
+        final long spacingMs;
+        final int dim;
+        final int quality;
+        final long startMs = System.currentTimeMillis();
+        int frames;
+        int issued = 0;
+        long nextAtMs = 0L;
+
+        // Vision worker thread only
+        final List<Shot> shots = new ArrayList<>();
+
+        Session(VisionCapture.Request req) {
+            this.req = req;
+            this.frames = req.burstFrames;
+            this.spacingMs = req.burstSpacingMs;
+            this.dim = Config.getVisionBurstDim();
+            this.quality = VisionAdaptiveController.settingFor(req.lane).quality;
+        }
+    }
+
+    // Render thread only
+    private static Session active = null;
+    private static VisionAsyncReadback readback = null;
+
+    // Vision worker thread only: frame image reused while the burst size stays the same
+    private static BufferedImage frameImage = null;
+
+    /** Render thread: take over {@code req} as a burst. False if a burst cannot start (caller does a single capture). */
+    static boolean start(VisionCapture.Request req, RenderTarget fb) {
+        if (active != null || req.burstFrames < 2) return false;
+        if (!Config.getVisionGpuDownscale() || !VisionDownscaler.isAvailable()) return false;
+
+        Session s = new Session(req);
+        if (readback == null) readback = new VisionAsyncReadback(READBACK_SLOTS);
+        readback.discardPending();
+        if (!VisionDownscaler.readDownscaledAsync(fb, s.dim, readback)) return false;
+        s.issued = 1;
+        s.nextAtMs = s.startMs + s.spacingMs;
+        active = s;
+        try { CraftMate.vLog("Vision burst start frames=" + s.frames + " spacing=" + s.spacingMs + "ms dim=" + s.dim); } catch (Throwable ignored) {}
+        return true;
+    }
+
+    static boolean isActive() {
+        return active != null;
+    }
+
+    @SubscribeEvent
+    public static void onRenderTick(TickEvent.RenderTickEvent e) {
+        if (e.phase != TickEvent.Phase.END) return;
+        Session s = active;
+        if (s == null) return;
+
+        long t0 = System.nanoTime();
+        try {
+            step(s);
+        } catch (Throwable t) {
+            VisionDebug.fatal("burst step", t);
+            finish(s);
+        } finally {
+            VisionFrameGovernor.noteCaptureWork(System.nanoTime() - t0);
+        }
+    }
+
+    private static void step(Session s) {
+        for (VisionAsyncReadback.Frame f; (f = readback.poll()) != null; ) {
+            encode(s, f);
+        }
+
+        long now = System.currentTimeMillis();
+        boolean timedOut = now - s.startMs > (long) s.frames * s.spacingMs + GRACE_MS;
+        if (!timedOut && s.issued < s.frames && now >= s.nextAtMs && readback.pending() < READBACK_SLOTS) {
+            Minecraft mc = Minecraft.getInstance();
+            RenderTarget fb = mc != null && mc.player != null ? mc.getMainRenderTarget() : null;
+            if (fb != null && VisionDownscaler.readDownscaledAsync(fb, s.dim, readback)) {
+                s.issued++;
+                s.nextAtMs = now + s.spacingMs;
+            } else {
+                // GPU path went away mid-burst: send what we have.
+                s.frames = s.issued;
+            }
+        }
+
+        if (timedOut || (s.issued >= s.frames && readback.pending() == 0)) finish(s);
+    }
+
+    /** Vision worker: encode one frame while the next ones are still being captured. */
+    private static void encode(Session s, VisionAsyncReadback.Frame f) {
+        VisionCapture.submitWork(() -> {
+            try {
+                VisionCapture.FrameData d = f.data;
+                // Already at burst size: pack straight into the encoder's RGB image, no resample
+                BufferedImage img = frameImage;
+                if (img == null || img.getWidth() != d.w || img.getHeight() != d.h) {
+                    img = frameImage = new BufferedImage(d.w, d.h, BufferedImage.TYPE_INT_RGB);
+                }
+                VisionPixels.packRgb(d.rgba, ((DataBufferInt) img.getRaster().getDataBuffer()).getData(), d.w * d.h);
+                byte[] jpeg = VisionJpegEncoder.encode(img, s.quality, Config.getVisionJpegChromaSubsampling());
+                s.shots.add(new Shot(f.capturedMs, d.w, d.h, jpeg));
+            } catch (Throwable t) {
+                CraftMate.vFatal("burst encode failed", t);
+            } finally {
+                VisionPixels.release(f.data.rgba);
+            }
+        });
+    }
+
+    private static void finish(Session s) {
+        if (active == s) active = null;
+        try { readback.discardPending(); } catch (Throwable ignored) {}
+
+        // Queued behind the per-frame encodes on the single worker thread.
+        VisionCapture.submitWork(() -> {
+            try {
+                upload(s);
+            } catch (Throwable t) {
+                CraftMate.vFatal("burst upload failed", t);
+            } finally {
+                VisionCapture.releaseCaptureSlot();
+            }
+        });
+    }
+
+    private static void upload(Session s) throws Exception {
+        List<Shot> shots = fitBudget(s.shots, Config.getVisionBurstMaxBytes());
+        if (shots.isEmpty()) {
+            CraftMate.vLog("Vision burst produced no frames within budget (captured=" + s.shots.size() + "); skip");
+            return;
+        }
+
+        Base64.Encoder b64 = Base64.getEncoder();
+        Shot newest = shots.get(shots.size() - 1);
+        long t0 = shots.get(0).capturedMs;
+
+        JsonArray frames = new JsonArray();
+        int bytes = newest.jpeg.length;
+        for (int i = 0; i < shots.size() - 1; i++) {
+            Shot sh = shots.get(i);
+            JsonObject f = new JsonObject();
+            f.addProperty("t_ms", sh.capturedMs - t0);
+            f.addProperty("w", sh.w);
+            f.addProperty("h", sh.h);
+            f.addProperty("image_b64", b64.encodeToString(sh.jpeg));
+            frames.add(f);
+            bytes += sh.jpeg.length;
+        }
+
+        JsonObject burst = new JsonObject();
+        burst.addProperty("count", shots.size());
+        burst.addProperty("spacing_ms", s.spacingMs);
+        burst.addProperty("image_t_ms", newest.capturedMs - t0);
+        burst.add("frames", frames);
+
+        try {
+            VisionDebug.setStage("http");
+            CraftMate.vLog("Vision burst frames=" + shots.size() + "/" + s.shots.size() + " bytes=" + bytes + " span=" + (newest.capturedMs - t0) + "ms");
+        } catch (Throwable ignored) {}
+
+        HTTP_Hook.postVision(s.req.playerId, s.req.hint, b64.encodeToString(newest.jpeg), "image/jpeg", newest.w, newest.h,
+                VisionCapture.sha256Hex(newest.jpeg), null, null, burst);
+    }
+
+    /**
+     * Keep the newest frame; drop the intermediate frame whose neighbours are closest in time until the JPEG total fits
+     * (keeps the clip evenly spread), then the oldest. Empty if the newest frame alone is over budget.
+     */
+    private static List<Shot> fitBudget(List<Shot> in, int maxBytes) {
+        List<Shot> out = new ArrayList<>(in);
+        out.sort((a, b) -> Long.compare(a.capturedMs, b.capturedMs));
+        long total = 0L;
+        for (Shot s : out) total += s.jpeg.length;
+
+        while (total > maxBytes && out.size() > 2) {
+            int drop = 1;
+            long best = Long.MAX_VALUE;
+            for (int i = 1; i < out.size() - 1; i++) {
+                long gap = out.get(i + 1).capturedMs - out.get(i - 1).capturedMs;
+                if (gap < best) {
+                    best = gap;
+                    drop = i;
+                }
+            }
+            total -= out.remove(drop).jpeg.length;
+        }
+        while (total > maxBytes && !out.isEmpty()) {
+            total -= out.remove(0).jpeg.length;
+        }
+        return out;
+    }
+}
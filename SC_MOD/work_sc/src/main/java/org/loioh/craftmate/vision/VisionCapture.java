@@ -4,7 +4,6 @@ import com.google.gson.JsonObject;
 import com.mojang.blaze3d.platform.NativeImage;
 import com.mojang.blaze3d.systems.RenderSystem;
 import net.minecraft.client.Minecraft;
-import net.minecraft.client.Screenshot;
 import com.mojang.blaze3d.pipeline.RenderTarget;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL12;
@@ -16,27 +15,39 @@ import net.minecraftforge.fml.common.Mod;
 import org.loioh.craftmate.Config;
 import org.loioh.craftmate.CraftMate;
 import org.loioh.craftmate.core.HTTP_Hook;
+import org.loioh.craftmate.core.VisionUploadStream;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.util.Base64;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Vision screenshot pipeline (client-side):
  * - Triggered from tick (SceneLoop) via requestCapture(...)
  * - Actual framebuffer read happens ONLY on RenderGuiOverlayEvent.Post (after HUD)
+ * - Frame is downscaled on the GPU first (VisionDownscaler) so only a small image is read back
+ * - Pixels are copied/swizzled in bulk into pooled buffers (VisionPixels)
+ * - Capture hooks are resolved once at client setup and ranked by what works (VisionStrategies)
+ * - Frames are area-averaged down to visionMaxDim before encoding (VisionResampler)
+ * - JPEG encoding reuses a per-thread writer and output buffer (VisionJpegEncoder)
+ * - Near-duplicate frames (perceptual hash) are dropped before encoding, except for chat (VisionPerceptualHash)
+ * - Pending requests wait in priority lanes: chat > backend > danger > speculative chat prep > ambient (VisionQueue)
+ * - Captures run only on frames with headroom, under a per-second render-thread budget (VisionFrameGovernor)
+ * - Danger captures can be a short burst of small frames read back asynchronously, one upload (VisionBurst)
+ * - Foveated mode (chat captures): small context image + detailed crop at the crosshair / focused entity, joined
+ *   into one JPEG for the single-image model (VisionFovea.composite); other reasons keep the full visionMaxDim frame
+ * - Optional tiled deltas: only tiles changed since the last acknowledged frame are uploaded, with periodic keyframes (VisionTiles)
+ * - Debug JPEGs are written by a bounded background writer that drops frames when behind (VisionDiskWriter)
+ * - A 16x9 luma probe tracks how much the view changed since the last capture, as a trigger input (VisionNoveltyProbe)
+ * - Recent uploads are kept encoded so backend requests can reuse a fresh frame or reference it by hash (VisionFrameRing)
+ * - Context size and JPEG quality follow the measured uplink, per lane latency target (VisionAdaptiveController)
+ * - Full frames are uploaded while they are encoded: the JPEG goes to a streamed request body (VisionUploadStream)
+ * - While the chat screen is open a frame is captured + encoded ahead of Enter and sent with the message (VisionChatPrep)
  * - Encode + upload happens on a worker thread to avoid blocking render thread.
  */
 @Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
@@ -44,24 +55,24 @@ public final class VisionCapture {
 
     private VisionCapture() {}
 
-    // Single thread for encoding JPGs so we don't lag the game with heavy IO/Compression
+    // Single thread for encoding JPGs so we don't lag the game with heavy IO/Compression.
+    // IN_FLIGHT keeps at most one task here; shedding happens in QUEUE, never by silently discarding work.
     private static final ExecutorService VISION_EXEC = new java.util.concurrent.ThreadPoolExecutor(
         1, 1,
         0L, java.util.concurrent.TimeUnit.MILLISECONDS,
-        new java.util.concurrent.ArrayBlockingQueue<>(1),
+        new java.util.concurrent.LinkedBlockingQueue<>(),
         r -> {
             Thread t = new Thread(r, "CraftMate-VisionWorker");
             t.setDaemon(true);
             return t;
-        },
-        new java.util.concurrent.ThreadPoolExecutor.DiscardOldestPolicy()
+        }
     );
 
-    private static final AtomicReference<Request> PENDING = new AtomicReference<>(null);
+    private static final VisionQueue QUEUE = new VisionQueue();
     private static final AtomicBoolean IN_FLIGHT = new AtomicBoolean(false);
 
     /** Raw pixel frame captured from GPU readback (RGBA, top-left origin). */
-    private static final class FrameData {
+    static final class FrameData {
         final byte[] rgba;
         final int w;
         final int h;
@@ -83,6 +94,11 @@ public final class VisionCapture {
         }
     }
 
+    /** Render tick END after the governor deferred a request (covers frames without an overlay pass). */
+    static void retryDeferred() {
+        if (!QUEUE.isEmpty()) tryConsumePending("governor");
+    }
+
     private static void tryConsumePending(String source) {
         // Reuse the same code path as the GUI overlay event handler.
         try {
@@ -93,25 +109,36 @@ public final class VisionCapture {
         }
     }
 
-    private static final class Request {
+    static final class Request {
         final UUID playerId;
         final JsonObject hint;
         final int maxDim;
         final long createdMs;
+        final String reason;
+        final VisionQueue.Lane lane;
 
         int attempts = 0;
         // Prevent immediate retry loops within the same frame when capture fails.
         long notBeforeMs = 0L;
+        // Danger bursts (VisionBurst): frame count (< 2 = single still) and spacing.
+        int burstFrames = 0;
+        long burstSpacingMs = 0L;
+        // Speculative chat frame (VisionChatPrep): encoded and handed back instead of uploaded; -1 = normal capture.
+        int prepSession = -1;
 
-        Request(UUID playerId, JsonObject hint, int maxDim) {
+        Request(UUID playerId, JsonObject hint, int maxDim, boolean forced) {
             this.playerId = playerId;
             this.hint = hint;
             this.maxDim = maxDim;
             this.createdMs = System.currentTimeMillis();
+            String r = "";
+            try { if (hint != null && hint.has("reason")) r = hint.get("reason").getAsString(); } catch (Throwable ignored) {}
+            this.reason = r;
+            this.lane = VisionQueue.laneFor(r, forced);
         }
     }
 
-    /** Called from tick thread: schedule ONE capture; if one is pending/in-flight, ignore. */
+    /** Called from tick thread: queue a scene capture (danger/ambient lanes; coalesced per reason). */
     public static boolean requestCapture(UUID playerId, JsonObject hint) {
         if (!Config.getVisionEnabled()) return false;
         try {
@@ -119,36 +146,102 @@ public final class VisionCapture {
             if (hint != null && hint.has("reason")) r = hint.get("reason").getAsString();
             CraftMate.vLog("requestCapture reason=" + r);
         } catch (Throwable ignored) {}
-        
-        // Auto capture respects IN_FLIGHT to avoid spam
-        if (IN_FLIGHT.get()) return false;
 
         int maxDim = Config.getVisionMaxDim();
         if (maxDim < 128) maxDim = 128;
         if (maxDim > 1024) maxDim = 1024;
 
-        Request req = new Request(playerId, hint, maxDim);
-        boolean ok = PENDING.compareAndSet(null, req);
+        // Lane depth + coalescing bound the backlog; ambient requests are the first to be shed.
+        Request req = new Request(playerId, hint, maxDim, false);
+        boolean ok = QUEUE.offer(req);
+        if (ok) {
+            scheduleRenderConsume();
+        }
+        return ok;
+    }
+
+    /**
+     * Called from tick thread: queue a burst of {@code frames} small frames {@code spacingMs} apart, sent as one request.
+     * Falls back to a single capture when the GPU/PBO path is unavailable.
+     */
+    public static boolean requestBurst(UUID playerId, JsonObject hint, int frames, int spacingMs) {
+        if (!Config.getVisionEnabled()) return false;
+        Request req = new Request(playerId, hint, Math.max(128, Math.min(1024, Config.getVisionMaxDim())), false);
+        req.burstFrames = frames;
+        req.burstSpacingMs = spacingMs;
+        try { CraftMate.vLog("requestBurst reason=" + req.reason + " frames=" + frames + " spacing=" + spacingMs + "ms"); } catch (Throwable ignored) {}
+        boolean ok = QUEUE.offer(req);
+        if (ok) {
+            scheduleRenderConsume();
+        }
+        return ok;
+    }
+
+    /** Client thread: speculative capture for an open chat screen; the encoded frame goes to VisionChatPrep, not the backend. */
+    static boolean requestChatPrep(UUID playerId, int session) {
+        if (!Config.getVisionEnabled()) return false;
+        JsonObject hint = new JsonObject();
+        hint.addProperty("reason", "chat_prep");
+        // Speculative: SPECULATIVE lane, behind danger captures and real backend requests.
+        Request req = new Request(playerId, hint, Math.max(128, Math.min(1024, Config.getVisionMaxDim())), false);
+        req.prepSession = session;
+        boolean ok = QUEUE.offer(req);
         if (ok) {
             scheduleRenderConsume();
         }
         return ok;
     }
 
+    /**
+     * Backend vision request: answer from the recent-frame ring when a frame is at most {@code maxAgeMs} old.
+     * A frame the server already analysed is sent as a frame_ref (pixels re-sent if the server asks); otherwise
+     * the cached JPEG is uploaded as-is. Returns false if nothing is fresh enough (caller forces a capture).
+     */
+    public static boolean answerFromRecent(UUID playerId, JsonObject hint, long maxAgeMs) {
+        if (!Config.getVisionEnabled()) return false;
+        VisionFrameRing.Entry e = VisionFrameRing.freshest(maxAgeMs);
+        if (e == null) return false;
+
+        if (hint == null) hint = new JsonObject();
+        final JsonObject fHint = hint;
+        try { fHint.addProperty("cached_age_ms", System.currentTimeMillis() - e.capturedMs); } catch (Throwable ignored) {}
+        try { CraftMate.vLog("Vision request served from ring (" + (e.serverHas ? "frame_ref" : "re-upload") + " sha=" + e.hash.substring(0, 8) + ")"); } catch (Throwable ignored) {}
+
+        Runnable upload = () -> HTTP_Hook.postVision(playerId, fHint, Base64.getEncoder().encodeToString(e.jpeg), "image/jpeg", e.w, e.h, e.hash, e.fovea);
+        if (e.serverHas) {
+            HTTP_Hook.postVisionRef(playerId, fHint, e.hash, upload);
+        } else {
+            upload.run();
+        }
+        return true;
+    }
+
+    /** Run on the vision worker thread (single thread: tasks run in submission order). */
+    static void submitWork(Runnable task) {
+        VISION_EXEC.submit(task);
+    }
+
+    /** Release the capture slot held by a multi-frame capture (VisionBurst) and serve what queued up meanwhile. */
+    static void releaseCaptureSlot() {
+        IN_FLIGHT.set(false);
+        if (!QUEUE.isEmpty()) scheduleRenderConsume();
+    }
+
     /** Render hook: run only after a late GUI overlay post (after HUD). */
     
     // -------------------------
     // Force-capture API (used for chat-triggered vision)
-    //  - Bypasses normal pending-guard (overwrites PENDING) to guarantee a screenshot for player intent
+    //  - Goes into the chat/backend lanes, which are served before scene captures and never shed for them
     // -------------------------
     private static volatile long lastEnqueuedVisionMs = 0L;
     private static volatile long glReadPixelsDisabledUntilMs = 0L;
     private static volatile long lastOverlayConsumeNanos = 0L;
     private static final long GL_READPIXELS_DISABLE_MS = 60_000L;
-    private static volatile String lastSavedVisionPath = "";
 
     private static volatile String lastEnqueuedVisionReason = "";
     private static volatile String lastEnqueuedVisionMessage = "";
+    // One Enter fires both chat hooks (ClientChatEvent + the chat screen key hook) within the same frame.
+    private static final long CHAT_SEND_DEDUPE_MS = 250L;
 
     public static long getLastEnqueuedVisionMs() { return lastEnqueuedVisionMs; }
     public static String getLastEnqueuedVisionReason() { return lastEnqueuedVisionReason; }
@@ -161,12 +254,21 @@ public final class VisionCapture {
         return s;
     }
 
+    /** Second hook of the chat send that was just queued: same message (or one side has none) within the dedupe window. */
+    private static boolean isSameChatSend(String chatMessage) {
+        if (!"chat".equalsIgnoreCase(lastEnqueuedVisionReason)) return false;
+        if (System.currentTimeMillis() - lastEnqueuedVisionMs > CHAT_SEND_DEDUPE_MS) return false;
+        String msg = capMsg(chatMessage);
+        String last = lastEnqueuedVisionMessage;
+        return msg.isEmpty() || last == null || last.isEmpty() || msg.equals(last);
+    }
+
     public static boolean isInFlight() {
         try { return IN_FLIGHT.get(); } catch (Throwable t) { return false; }
     }
 
     public static boolean hasPending() {
-            try { return PENDING.get() != null; } catch (Throwable t) { return false; }
+            try { return !QUEUE.isEmpty(); } catch (Throwable t) { return false; }
     }
 
 
@@ -174,6 +276,12 @@ public final class VisionCapture {
     public static boolean forceCapture(UUID playerId, JsonObject hint, String reason, String chatMessage) {
         if (!Config.getVisionEnabled()) return false;
         try { CraftMate.vLog("forceCapture reason=" + (reason == null ? "" : reason)); } catch (Throwable ignored) {}
+
+        // Separate chat sends each get their own capture; only the duplicate hook of one send is dropped here.
+        if ((reason == null || "chat".equalsIgnoreCase(reason)) && isSameChatSend(chatMessage)) {
+            CraftMate.vLog("forceCapture: same chat send already queued");
+            return true;
+        }
         
         // [FIXED] Commented out IN_FLIGHT check to allow queue jumping for Chat
         // if (IN_FLIGHT.get()) return false;
@@ -190,8 +298,16 @@ public final class VisionCapture {
             if (chatMessage != null && !chatMessage.isBlank()) hint.addProperty("message", capMsg(chatMessage));
         } catch (Throwable ignored) {}
 
-        // Overwrite any pending auto/scene capture to guarantee the chat screenshot.
-        PENDING.set(new Request(playerId, hint, maxDim));
+        // Chat with a frame prepared while the player was typing: send that one now instead of capturing.
+        if ((reason == null || "chat".equalsIgnoreCase(reason)) && VisionChatPrep.sendPrepared(playerId, hint)) {
+            lastEnqueuedVisionMs = System.currentTimeMillis();
+            lastEnqueuedVisionReason = "chat";
+            lastEnqueuedVisionMessage = capMsg(chatMessage);
+            return true;
+        }
+
+        // Chat/backend lanes are served first; queued scene captures stay behind them instead of being overwritten.
+        QUEUE.offer(new Request(playerId, hint, maxDim, true));
 
         lastEnqueuedVisionMs = System.currentTimeMillis();
         try { org.loioh.craftmate.vision.VisionDebug.markFired(); org.loioh.craftmate.vision.VisionDebug.setStage("queued"); } catch (Throwable ignored) {}
@@ -212,26 +328,26 @@ public final class VisionCapture {
                 Minecraft mcDbg = Minecraft.getInstance();
                 if (mcDbg != null && mcDbg.font != null && e.getGuiGraphics() != null) {
                     String line1 = HTTP_Hook.getLastVisionDebugLine();
-                    String line2 = "Vision state: pending=" + (PENDING.get() != null) + " inFlight=" + IN_FLIGHT.get();
-                    String line3 = "Last JPG: " + (lastSavedVisionPath == null ? "" : (lastSavedVisionPath.length() > 80 ? lastSavedVisionPath.substring(lastSavedVisionPath.length()-80) : lastSavedVisionPath));
+                    String line2 = "Vision state: " + QUEUE.describe() + " inFlight=" + IN_FLIGHT.get() + " | " + VisionFrameGovernor.describe();
+                    String lastPath = VisionDiskWriter.lastPath();
+                    String line3 = "Last JPG: " + (lastPath.length() > 80 ? lastPath.substring(lastPath.length()-80) : lastPath)
+                            + (VisionDiskWriter.dropped() > 0 ? " (disk dropped " + VisionDiskWriter.dropped() + ")" : "");
                     long nowMs = System.currentTimeMillis();
-                    String line4 = (nowMs < glReadPixelsDisabledUntilMs) ? ("glReadPixels DISABLED " + ((glReadPixelsDisabledUntilMs-nowMs)/1000) + "s") : "glReadPixels ok";
+                    String line4 = ((nowMs < glReadPixelsDisabledUntilMs) ? ("glReadPixels DISABLED " + ((glReadPixelsDisabledUntilMs-nowMs)/1000) + "s") : "glReadPixels ok")
+                            + " | " + VisionStrategies.describe();
+                    String line5 = VisionAdaptiveController.describe();
                     e.getGuiGraphics().drawString(mcDbg.font, line1, 6, 6, 0xFFFFFF, true);
                     e.getGuiGraphics().drawString(mcDbg.font, line2, 6, 16, 0xFFFFFF, true);
                     e.getGuiGraphics().drawString(mcDbg.font, line3, 6, 26, 0xFFFFFF, true);
                     e.getGuiGraphics().drawString(mcDbg.font, line4, 6, 36, 0xFFFFFF, true);
+                    e.getGuiGraphics().drawString(mcDbg.font, line5, 6, 46, 0xFFFFFF, true);
                 }
             }
         } catch (Throwable ignored) {}
 
         if (!Config.getVisionEnabled()) return;
 
-        // Guard: RenderGuiOverlayEvent.Post can fire many times per frame; consume at most once every few ms.
-        long nowNanos = System.nanoTime();
-        if (nowNanos - lastOverlayConsumeNanos < 5_000_000L) return;
-        lastOverlayConsumeNanos = nowNanos;
-
-        Request req = PENDING.get();
+        Request req = QUEUE.peek();
         if (req == null) return;
 
         // Avoid same-frame retry loops when capture fails
@@ -241,18 +357,30 @@ public final class VisionCapture {
         }
 
         // 🔒 If this is a chat-triggered capture, wait a tiny bit (80ms) so we don't fight GUI/GL state *within the same frame*.
-        String _reason = "";
-        try { if (req.hint != null && req.hint.has("reason")) _reason = req.hint.get("reason").getAsString(); } catch (Throwable ignored) {}
+        String _reason = req.reason;
         long _ageMs = System.currentTimeMillis() - req.createdMs;
         final String reason = _reason;
         
         // Short delay for stability, but still feels instant to user.
         if ("chat".equalsIgnoreCase(_reason) && _ageMs < 80L) {
-            return; // leave PENDING intact; next frame will consume it
+            return; // leave it queued; next frame will consume it
         }
 
+        // Frame budget: wait for a frame with headroom (chat only up to its deadline) and respect the per-second cap.
+        if (IN_FLIGHT.get() || !VisionFrameGovernor.admit(req)) return;
+
+        // Guard: RenderGuiOverlayEvent.Post can fire many times per frame; start at most one capture every few ms.
+        // After the governor, so a deferred request's retry is not swallowed by an earlier no-op post.
+        long nowNanos = System.nanoTime();
+        if (nowNanos - lastOverlayConsumeNanos < 5_000_000L) return;
+        lastOverlayConsumeNanos = nowNanos;
+
         if (!IN_FLIGHT.compareAndSet(false, true)) return;
-        PENDING.set(null);
+        if (!QUEUE.take(req)) {
+            // Replaced by a coalesced/newer request in the meantime; pick it up next frame.
+            IN_FLIGHT.set(false);
+            return;
+        }
 
         try {
             VisionDebug.setStage("render");
@@ -260,6 +388,7 @@ public final class VisionCapture {
         } catch (Throwable ignored) {}
 
         boolean submitted = false;
+        final long workStartNanos = System.nanoTime();
 
         NativeImage img = null;
         RenderTarget fb = null;
@@ -267,6 +396,9 @@ public final class VisionCapture {
         try {
             RenderSystem.assertOnRenderThreadOrInit();
 
+            // Speculative chat frame whose chat screen has been closed meanwhile.
+            if (req.prepSession >= 0 && !VisionChatPrep.isOpen(req.prepSession)) return;
+
             Minecraft mc = Minecraft.getInstance();
             if (mc == null || mc.player == null) return;
 
@@ -277,115 +409,238 @@ public final class VisionCapture {
             int h = fb.height;
             if (w <= 0 || h <= 0) return;
 
-            // Capture using Minecraft's Screenshot path first
-            img = tryScreenshotCapture(fb);
-
-            // If Screenshot path is unavailable, try RenderTarget#downloadFromFramebuffer(NativeImage)
-            if (img == null) {
-                img = tryDownloadFromFramebuffer(fb, w, h);
-            }
-            // Fallback to direct GL readback
-            if (img == null) {
-                long now = System.currentTimeMillis();
-                if (now >= glReadPixelsDisabledUntilMs) {
-                    try {
-                        img = captureNativeImage();
-                    } catch (Throwable ignored) {
-                        img = null;
-                    }
-                }
+            // Danger burst: VisionBurst keeps the capture slot until its single upload is handed off.
+            if (req.burstFrames > 1 && VisionBurst.start(req, fb)) {
+                VisionNoveltyProbe.markCaptured();
+                submitted = true;
+                return;
             }
 
             FrameData fd = null;
-            if (img == null) {
-                long now = System.currentTimeMillis();
-                if (now >= glReadPixelsDisabledUntilMs) {
-                    try {
+            VisionStrategies.Strategy used = null;
+
+            // Low-priority ambient captures send a compact descriptor instead of a JPEG: a small read is enough.
+            final boolean descriptor = req.lane == VisionQueue.Lane.AMBIENT && req.prepSession < 0 && VisionDescriptors.wantsDescriptor(reason);
+            // Foveated (chat only: the backend answers chat from the crop, every other reason from the context image):
+            // small full-frame context + a detailed crop around the crosshair / focused entity.
+            final boolean foveated = !descriptor && Config.getVisionFoveated()
+                    && ("chat".equalsIgnoreCase(reason) || req.prepSession >= 0);
+            final VisionAdaptiveController.Setting adapt = VisionAdaptiveController.settingFor(req.lane);
+            final int maxDim = Math.min(req.maxDim, adapt.maxDim);
+            final int ctxDim = descriptor ? Math.min(maxDim, VisionDescriptors.READ_DIM)
+                    : foveated ? Math.min(maxDim, Config.getVisionFoveaContextDim()) : maxDim;
+
+            // Strategies were resolved once at client setup; try them best-first (no reflection here).
+            long readbackStart = System.nanoTime();
+            long now = System.currentTimeMillis();
+            for (VisionStrategies.Strategy s : VisionStrategies.ranked()) {
+                switch (s) {
+                    case GPU_DOWNSCALE:
+                        // Preferred: downscale on the GPU and read back only a visionMaxDim-sized frame.
+                        if (!Config.getVisionGpuDownscale() || !VisionDownscaler.isAvailable()) continue;
+                        fd = VisionDownscaler.readDownscaled(fb, ctxDim);
+                        break;
+                    case SCREENSHOT:
+                        img = VisionStrategies.screenshot(fb);
+                        break;
+                    case FRAMEBUFFER_DOWNLOAD:
+                        img = tryDownloadFromFramebuffer(fb, w, h);
+                        break;
+                    case NATIVE_DOWNLOAD:
+                        if (now < glReadPixelsDisabledUntilMs) continue;
+                        img = captureNativeImage(fb);
+                        break;
+                    case GL_READPIXELS:
+                        if (now < glReadPixelsDisabledUntilMs) continue;
                         fd = tryGlReadPixelsFrame(fb, w, h);
-                    } catch (Throwable ignored) {
-                        fd = null;
-                    }
+                        break;
+                }
+                if (img != null || fd != null) {
+                    VisionStrategies.noteSuccess(s);
+                    used = s;
+                    break;
                 }
+                VisionStrategies.noteFailure(s);
             }
 
-
             if (img == null && fd == null) {
                 // If this was a chat-triggered capture, retry a few times
                 if ("chat".equalsIgnoreCase(reason) && req.attempts < 5) {
                     req.attempts++;
                     req.notBeforeMs = System.currentTimeMillis() + 120L;
                     IN_FLIGHT.set(false);
-                    PENDING.set(req);
+                    QUEUE.requeue(req);
                     return;
                 }
                 return;
             }
 
-
-            try {
-                Method dl = null;
-                try { dl = fb.getClass().getMethod("downloadFromFramebuffer", NativeImage.class); } catch (Throwable ignored) {}
-
-                if (dl == null) {
-                    Class<?> c = fb.getClass();
-                    while (c != null && dl == null) {
-                        for (Method m : c.getDeclaredMethods()) {
-                            Class<?>[] p = m.getParameterTypes();
-                            if (m.getName().equals("downloadFromFramebuffer")
-                                    && p.length == 1
-                                    && p[0] == NativeImage.class
-                                    && m.getReturnType() == void.class) {
-                                dl = m;
-                                break;
-                            }
-                        }
-                        c = c.getSuperclass();
-                    }
-                }
-
-                if (dl != null) {
-                    dl.setAccessible(true);
-                    dl.invoke(fb, img);
-                }
-            } catch (Throwable ignored) {}
-
             if (img != null) {
-                try { img.flipY(); } catch (Throwable ignored) {}
+                VisionStrategies.downloadFramebuffer(fb, img);
             }
-
-            // Dev proof: for reason=chat, save a PNG immediately
-            try {
-                if ("chat".equalsIgnoreCase(reason)) {
-                    if (img != null) {
-                        saveVisionPngToDisk(img, req.createdMs);
-                    } else if (fd != null) {
-                        saveVisionPngToDisk(fd.rgba, fd.w, fd.h, req.createdMs);
-                    }
-                }
-            } catch (Throwable ignored) {}
-
-            final byte[] rgba = (img != null) ? extractRgba(img) : (fd != null ? fd.rgba : null);
+            VisionStats.record(VisionStats.Stage.READBACK, readbackStart, 0L,
+                    img != null ? (long) img.getWidth() * img.getHeight() * 4L : fd.rgba.length);
+            // Motion for a descriptor is the change since the previous capture: read it before the reset.
+            final double motion = VisionNoveltyProbe.novelty();
+            VisionNoveltyProbe.markCaptured();
+            final long capturedMs = System.currentTimeMillis();
+
+            // Fovea from the same frame: second GPU blit of the crop when the context was downscaled on the GPU,
+            // otherwise cropped from the full-resolution pixels on the worker.
+            final VisionFovea.Target fovea = foveated ? VisionFovea.pick(mc, w, h) : null;
+            FrameData foveaGpu = null;
+            if (fovea != null && used == VisionStrategies.Strategy.GPU_DOWNSCALE) {
+                foveaGpu = VisionDownscaler.readRegion(fb, fovea.rect, Config.getVisionFoveaDim());
+            }
+            final FrameData fFoveaGpu = foveaGpu;
+            final boolean fullRes = used != VisionStrategies.Strategy.GPU_DOWNSCALE;
+            final int fbW = w;
+            final int fbH = h;
+
+            // NativeImage: bulk copy from the native buffer, flipping rows on the way (no separate flipY pass)
+            long extractStart = System.nanoTime();
+            final byte[] rgba = (img != null) ? VisionPixels.extractRgba(img, true) : (fd != null ? fd.rgba : null);
+            if (img != null && rgba != null) VisionStats.record(VisionStats.Stage.EXTRACT, extractStart, (long) img.getWidth() * img.getHeight() * 4L, rgba.length);
             final int fW = (img != null) ? img.getWidth() : (fd != null ? fd.w : 0);
             final int fH = (img != null) ? img.getHeight() : (fd != null ? fd.h : 0);
+
             final Request fReq = req;
 
             if (rgba == null || rgba.length == 0) return;
 
             VISION_EXEC.submit(() -> {
+                FrameData foveaFrame = null;
+                VisionUploadStream upload = null;
                 try {
-                    Encoded enc = encodeJpegFromRgba(rgba, fW, fH, fReq.maxDim);
-                    if (enc == null) return;
+                    // Perceptual dedupe: near-identical views (idle_refresh etc.) skip encode + upload. Chat always goes through.
+                    long t0 = System.nanoTime();
+                    long phash = VisionPerceptualHash.dHash(rgba, fW, fH);
+                    VisionStats.record(VisionStats.Stage.DEDUPE, t0, (long) fW * fH * 4L, 8L);
+                    boolean bypassDedupe = "chat".equalsIgnoreCase(reason) || fReq.prepSession >= 0;
+                    if (!bypassDedupe && VisionPerceptualHash.isNearDuplicate(phash, Config.getVisionDedupeMaxDistance())) {
+                        try {
+                            VisionDebug.setStage("dedupe skip");
+                            CraftMate.vLog("Vision frame skipped (near-duplicate phash=" + VisionPerceptualHash.hex(phash) + " reason=" + reason + ")");
+                        } catch (Throwable ignored) {}
+                        return;
+                    }
+
+                    if (descriptor) {
+                        t0 = System.nanoTime();
+                        JsonObject desc = VisionDescriptors.describe(rgba, fW, fH, motion);
+                        VisionStats.record(VisionStats.Stage.DESCRIPTOR, t0, (long) fW * fH * 4L, desc.toString().length());
+                        try {
+                            VisionDebug.setStage("descriptor");
+                            CraftMate.vLog("Vision descriptor sent instead of a frame (reason=" + reason + ")");
+                        } catch (Throwable ignored) {}
+                        HTTP_Hook.postVisionDescriptor(fReq.playerId, fReq.hint, desc);
+                        VisionPerceptualHash.remember(phash);
+                        return;
+                    }
+
+                    // Fovea first (its pooled resample must not outlive the context's): the crop is kept as packed
+                    // pixels and joined to the context below, so the single-image model gets both views.
+                    int[] cropPx = null;
+                    int cropW = 0, cropH = 0;
+                    JsonObject foveaJson = null;
+                    if (fovea != null) {
+                        try {
+                            t0 = System.nanoTime();
+                            foveaFrame = fFoveaGpu != null ? fFoveaGpu
+                                    : (fullRes ? VisionFovea.crop(rgba, fW, fH, VisionFovea.scale(fovea.rect, fbW, fbH, fW, fH)) : null);
+                            BufferedImage crop = foveaFrame != null
+                                    ? resampleForEncode(foveaFrame.rgba, foveaFrame.w, foveaFrame.h, Config.getVisionFoveaDim())
+                                    : null;
+                            if (crop != null) {
+                                cropW = crop.getWidth();
+                                cropH = crop.getHeight();
+                                cropPx = ((java.awt.image.DataBufferInt) crop.getRaster().getDataBuffer()).getData().clone();
+                                VisionStats.record(VisionStats.Stage.FOVEA, t0, (long) foveaFrame.rgba.length, (long) cropW * cropH * 3L);
+                            }
+                        } catch (Throwable t) {
+                            // No crop: the context goes out alone.
+                            cropPx = null;
+                            CraftMate.vLog("Vision fovea crop failed (" + t.getClass().getSimpleName() + "); context only");
+                        }
+                    }
+
+                    t0 = System.nanoTime();
+                    BufferedImage ctx = resampleForEncode(rgba, fW, fH, ctxDim);
+                    if (ctx == null) return;
+                    VisionStats.record(VisionStats.Stage.DOWNSCALE, t0, (long) fW * fH * 4L, (long) ctx.getWidth() * ctx.getHeight() * 3L);
+
+                    if (cropPx != null) {
+                        int ctxW = ctx.getWidth(), ctxH = ctx.getHeight();
+                        ctx = VisionFovea.composite(ctx, cropPx, cropW, cropH);
+                        foveaJson = new JsonObject();
+                        foveaJson.addProperty("kind", fovea.kind);
+                        com.google.gson.JsonArray rect = new com.google.gson.JsonArray();
+                        for (int v : fovea.rect) rect.add(v);
+                        foveaJson.add("rect", rect);
+                        foveaJson.addProperty("frame_w", fbW);
+                        foveaJson.addProperty("frame_h", fbH);
+                        // Where each view sits in image (composite pixels)
+                        JsonObject layout = new JsonObject();
+                        com.google.gson.JsonArray ctxBox = new com.google.gson.JsonArray();
+                        ctxBox.add(0); ctxBox.add(0); ctxBox.add(ctxW); ctxBox.add(ctxH);
+                        com.google.gson.JsonArray cropBox = new com.google.gson.JsonArray();
+                        cropBox.add(ctxW); cropBox.add(0); cropBox.add(cropW); cropBox.add(cropH);
+                        layout.add("context", ctxBox);
+                        layout.add("fovea", cropBox);
+                        foveaJson.add("composite", layout);
+                    }
+
+                    // Tiled deltas: chat/backend captures always go out as keyframes (the model needs the full frame).
+                    // A composite is not in context-image geometry, so it is sent outside the tile sequence.
+                    VisionTiles.Plan tilePlan = null;
+                    JsonObject tilesJson = null;
+                    if (Config.getVisionTiledDeltas() && fReq.prepSession < 0 && foveaJson == null) {
+                        boolean forceKey = fReq.lane == VisionQueue.Lane.CHAT || fReq.lane == VisionQueue.Lane.BACKEND;
+                        tilePlan = VisionTiles.plan(ctx, Config.getVisionTileSize(), Config.getVisionKeyframeEvery(), forceKey);
+                        tilesJson = VisionTiles.toJson(tilePlan, ctx, adapt.quality, Config.getVisionJpegChromaSubsampling());
+                    }
+                    Encoded enc;
+                    if (tilePlan == null || tilePlan.keyframe) {
+                        // Streamed: the request is already on its way while the JPEG is being written into it.
+                        if (Config.getVisionStreamUpload() && fReq.prepSession < 0) {
+                            try { VisionDebug.setStage("jpeg+http"); } catch (Throwable ignored) {}
+                            upload = HTTP_Hook.openVisionStream(fReq.playerId, fReq.hint, tilesJson, "image/jpeg", ctx.getWidth(), ctx.getHeight());
+                        }
+                        enc = null;
+                        if (upload != null) {
+                            try {
+                                enc = encodeJpegStreaming(ctx, adapt.quality, upload);
+                            } catch (Throwable t) {
+                                CraftMate.vLog("Vision streamed encode failed (" + t.getClass().getSimpleName() + "); posting buffered");
+                                upload.abort();
+                                upload = null;
+                            }
+                        }
+                        if (enc == null) enc = encodeJpeg(ctx, adapt.quality, true);
+                    } else {
+                        enc = new Encoded(null, "tiles-" + Long.toHexString(tilePlan.frameId), ctx.getWidth(), ctx.getHeight(), null);
+                    }
                     try { org.loioh.craftmate.vision.VisionDebug.setStage("jpeg"); } catch (Throwable ignored) {}
-                    try { CraftMate.vLog("JPEG encoded bytes=" + enc.jpegBytes.length + " w=" + enc.w + " h=" + enc.h); } catch (Throwable ignored) {}
-                    
+
+                    // Speculative chat frame: held until Enter (or dropped when the chat closes), not uploaded now.
+                    if (fReq.prepSession >= 0) {
+                        VisionChatPrep.offer(new VisionChatPrep.Prepared(fReq.prepSession, capturedMs, enc.jpegBytes, enc.sha256, enc.w, enc.h, foveaJson));
+                        return;
+                    }
                     try {
+                        CraftMate.vLog("JPEG encoded " + (enc.jpegBytes != null ? "bytes=" + enc.jpegBytes.length : "delta tiles=" + tilePlan.changed.size())
+                                + " w=" + enc.w + " h=" + enc.h + (foveaJson != null ? " +fovea" : ""));
+                    } catch (Throwable ignored) {}
+                    
+                    if (enc.jpegBytes != null) try {
                         String reason2 = "";
                         if (fReq.hint != null && fReq.hint.has("reason")) reason2 = fReq.hint.get("reason").getAsString();
+                        // Queued to the disk writer thread; dropped if it is behind.
                         if (Config.getVisionSaveLastAlways()) {
-                            saveDebugLastJpegToDisk(enc.jpegBytes);
+                            VisionDiskWriter.saveLast(enc.jpegBytes);
                         }
                         if ("chat".equalsIgnoreCase(reason2) && Config.getVisionSaveChatAlways()) {
-                            saveVisionJpegToDisk(enc.jpegBytes, fReq.createdMs);
+                            VisionDiskWriter.saveRing(enc.jpegBytes);
                         }
                     } catch (Throwable t) {
                         CraftMate.vFatal("save jpeg failed", t);
@@ -393,18 +648,36 @@ public final class VisionCapture {
                     try { org.loioh.craftmate.vision.VisionDebug.setStage("http"); } catch (Throwable ignored) {}
                     try { CraftMate.vLog("HTTP POST /vision start sha=" + enc.sha256.substring(0, 8)); } catch (Throwable ignored) {}
                     
-                    if (enc.b64 == null || enc.b64.isEmpty()) {
+                    if (upload == null && (enc.b64 == null || enc.b64.isEmpty()) && tilesJson == null) {
                         System.out.println("[CraftMate] vision encode failed (empty b64); skip postVision");
                         return;
                     }
                     
-                    // [FIXED CRITICAL] Pass enc.b64 (String) explicitly, NOT 'enc' object!
-                    HTTP_Hook.postVision(fReq.playerId, fReq.hint, enc.b64, "image/jpeg", enc.w, enc.h, enc.sha256);
+                    // Full frames are kept for answering backend requests without a new capture (before the post,
+                    // so the reply can mark it as known to the server).
+                    if (tilePlan == null || tilePlan.keyframe) {
+                        VisionFrameRing.add(new VisionFrameRing.Entry(capturedMs, enc.sha256, enc.jpegBytes, enc.w, enc.h, foveaJson));
+                        VisionAdaptiveController.noteEncoded(enc.sha256, fReq.lane, capturedMs, enc.w, enc.h, adapt.quality, enc.jpegBytes.length);
+                    }
+
+                    // Register the plan before the body reaches the HTTP client: the async reply may ack it right away.
+                    if (tilePlan != null) VisionTiles.sent(tilePlan);
+                    if (upload != null) {
+                        upload.finish(foveaJson, enc.sha256);
+                    } else {
+                        // [FIXED CRITICAL] Pass enc.b64 (String) explicitly, NOT 'enc' object!
+                        HTTP_Hook.postVision(fReq.playerId, fReq.hint, enc.b64, "image/jpeg", enc.w, enc.h, enc.sha256, foveaJson, tilesJson);
+                    }
+                    VisionPerceptualHash.remember(phash);
                     
                 } catch (Throwable t) {
                     CraftMate.vFatal("vision worker error", t);
                 } finally {
+                    if (upload != null && !upload.isFinished()) upload.abort();
+                    VisionPixels.release(rgba);
+                    if (foveaFrame != null) VisionPixels.release(foveaFrame.rgba);
                     IN_FLIGHT.set(false);
+                    if (!QUEUE.isEmpty()) scheduleRenderConsume();
                 }
             });
 
@@ -416,132 +689,22 @@ public final class VisionCapture {
             try { if (img != null) img.close(); } catch (Throwable ignored) {}
             try { if (fb != null) fb.unbindWrite(); } catch (Throwable ignored) {}
             if (!submitted) IN_FLIGHT.set(false);
+            VisionFrameGovernor.noteCaptureWork(System.nanoTime() - workStartNanos);
         }
     }
 
 
-    private static NativeImage tryScreenshotCapture(RenderTarget fb) {
-        try {
-            for (String name : new String[]{"takeScreenshot", "grab", "takeScreenshotRaw"}) {
-                try {
-                    for (Method m : Screenshot.class.getDeclaredMethods()) {
-                        if (!m.getName().equals(name)) continue;
-                        Class<?>[] p = m.getParameterTypes();
-                        if (p.length == 1 && RenderTarget.class.isAssignableFrom(p[0]) && NativeImage.class.isAssignableFrom(m.getReturnType())) {
-                            m.setAccessible(true);
-                            return (NativeImage) m.invoke(null, fb);
-                        }
-                    }
-                } catch (Throwable ignored) {}
-            }
-        } catch (Throwable ignored) {}
-        return null;
-    }
-
     private static NativeImage tryDownloadFromFramebuffer(RenderTarget fb, int w, int h) {
+        if (!VisionStrategies.hasFramebufferDownload()) return null;
         NativeImage img = null;
         try {
             img = new NativeImage(w, h, false);
-            Method dl = null;
-            Class<?> c = fb.getClass();
-            while (c != null && dl == null) {
-                for (Method m : c.getDeclaredMethods()) {
-                    Class<?>[] p = m.getParameterTypes();
-                    if (m.getName().equals("downloadFromFramebuffer") && p.length == 1 && p[0] == NativeImage.class && m.getReturnType() == void.class) {
-                        dl = m;
-                        break;
-                    }
-                }
-                c = c.getSuperclass();
-            }
-
-            if (dl != null) {
-                dl.setAccessible(true);
-                dl.invoke(fb, img);
-                return img;
-            }
-        } catch (Throwable t) {
-            try { if (img != null) img.close(); } catch (Throwable ignored) {}
-        }
-        return null;
-    }
-
-    private static void saveVisionPngToDisk(NativeImage img, long createdMs) {
-        try {
-            Minecraft mc = Minecraft.getInstance();
-            if (mc == null) return;
-            File base = new File(mc.gameDirectory, "screenshots");
-            File dir = new File(base, "craftmate");
-            if (!dir.exists()) dir.mkdirs();
-            File out = new File(dir, "vision_" + createdMs + ".png");
-
-            try {
-                for (Method m : NativeImage.class.getDeclaredMethods()) {
-                    if (!m.getName().equals("writeToFile")) continue;
-                    Class<?>[] p = m.getParameterTypes();
-                    if (p.length == 1) {
-                        m.setAccessible(true);
-                        if (p[0] == File.class) {
-                            m.invoke(img, out);
-                            lastSavedVisionPath = out.getAbsolutePath();
-                            return;
-                        }
-                        if ("java.nio.file.Path".equals(p[0].getName())) {
-                            m.invoke(img, out.toPath());
-                            lastSavedVisionPath = out.getAbsolutePath();
-                            return;
-                        }
-                    }
-                }
-            } catch (Throwable ignored) {}
-
-            try {
-                BufferedImage bi = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                for (int y = 0; y < img.getHeight(); y++) {
-                    for (int x = 0; x < img.getWidth(); x++) {
-                        int rgba = img.getPixelRGBA(x, y);
-                        bi.setRGB(x, y, rgba);
-                    }
-                }
-                ImageIO.write(bi, "png", out);
-                lastSavedVisionPath = out.getAbsolutePath();
-            } catch (Throwable ignored) {}
-        } catch (Throwable ignored) {}
-    }
-
-
-    private static void saveVisionPngToDisk(byte[] rgba, int w, int h, long createdMs) {
-        try {
-            Minecraft mc = Minecraft.getInstance();
-            if (mc == null) return;
-            File base = new File(mc.gameDirectory, "screenshots");
-            File dir = new File(base, "craftmate");
-            if (!dir.exists()) dir.mkdirs();
-            File out = new File(dir, "vision_" + createdMs + ".png");
-
-            try {
-                BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-                int idx = 0;
-                for (int y = 0; y < h; y++) {
-                    for (int x = 0; x < w; x++) {
-                        int r = rgba[idx++] & 0xFF;
-                        int g = rgba[idx++] & 0xFF;
-                        int b = rgba[idx++] & 0xFF;
-                        int a = rgba[idx++] & 0xFF;
-                        int argb = (a << 24) | (r << 16) | (g << 8) | b;
-                        bi.setRGB(x, y, argb);
-                    }
-                }
-                ImageIO.write(bi, "png", out);
-                lastSavedVisionPath = out.getAbsolutePath();
-            } catch (Throwable ignored) {
-            }
+            if (VisionStrategies.downloadFramebuffer(fb, img)) return img;
         } catch (Throwable ignored) {}
+        try { if (img != null) img.close(); } catch (Throwable ignored) {}
+        return null;
     }
 
-
-
-
     private static FrameData tryGlReadPixelsFrame(RenderTarget fb, int w, int h) {
         try {
             try {
@@ -552,7 +715,7 @@ public final class VisionCapture {
             try { GL11.glFinish(); } catch (Throwable ignored) {}
             try { GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1); } catch (Throwable ignored) {}
 
-            ByteBuffer buf = ByteBuffer.allocateDirect(w * h * 4);
+            ByteBuffer buf = VisionPixels.readbackBuffer(w * h * 4);
             GL11.glReadPixels(0, 0, w, h, GL12.GL_BGRA, GL11.GL_UNSIGNED_BYTE, buf);
 
             int err = 0;
@@ -566,24 +729,9 @@ public final class VisionCapture {
                 return null;
             }
 
-            byte[] rgba = new byte[w * h * 4];
-            int rowStride = w * 4;
-            for (int y = 0; y < h; y++) {
-                int srcRow = y * rowStride;
-                int dstRow = (h - 1 - y) * rowStride;
-                for (int x = 0; x < w; x++) {
-                    int si = srcRow + x * 4;
-                    int di = dstRow + x * 4;
-                    byte b = buf.get(si);
-                    byte g = buf.get(si + 1);
-                    byte r = buf.get(si + 2);
-                    byte a = buf.get(si + 3);
-                    rgba[di] = r;
-                    rgba[di + 1] = g;
-                    rgba[di + 2] = b;
-                    rgba[di + 3] = a;
-                }
-            }
+            // BGRA, bottom-left origin -> RGBA, top-left origin (row-wise int swizzle)
+            byte[] rgba = VisionPixels.acquire(w * h * 4);
+            VisionPixels.swizzleBgraFlipped(buf, rgba, w, h);
 
             return new FrameData(rgba, w, h);
         } catch (Throwable t) {
@@ -598,78 +746,33 @@ public final class VisionCapture {
         }
     }
 
-    private static NativeImage captureNativeImage() throws Exception {
-        Minecraft mc = Minecraft.getInstance();
-        if (mc == null) return null;
-        RenderTarget fb = mc.getMainRenderTarget();
-        if (fb == null) return null;
-
+    private static NativeImage captureNativeImage(RenderTarget fb) {
         try {
             fb.bindRead();
         } catch (Throwable t) {
             fb.bindWrite(true);
         }
         try {
-            org.lwjgl.opengl.GL11.glFinish();
-            try { org.lwjgl.opengl.GL11.glPixelStorei(org.lwjgl.opengl.GL11.GL_PACK_ALIGNMENT, 1); } catch (Throwable ignored2) {}
-
+            GL11.glFinish();
+            try { GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1); } catch (Throwable ignored2) {}
         } catch (Throwable ignored) {}
 
+        NativeImage shot = VisionStrategies.screenshot(fb);
+        if (shot != null) return shot;
 
-        for (String name : new String[]{"takeScreenshot", "grab", "takeScreenshotRaw"}) {
-            try {
-                for (Method m : Screenshot.class.getDeclaredMethods()) {
-                    if (!m.getName().equals(name)) continue;
-                    Class<?>[] p = m.getParameterTypes();
-                    if (p.length == 1 && RenderTarget.class.isAssignableFrom(p[0]) && NativeImage.class.isAssignableFrom(m.getReturnType())) {
-                        m.setAccessible(true);
-                        return (NativeImage) m.invoke(null, fb);
-                    }
-                }
-            } catch (Throwable ignored) {}
-        }
-
+        NativeImage img = null;
         try {
-            NativeImage img = new NativeImage(fb.width, fb.height, false);
-            Method dl = null;
-            for (Method m : NativeImage.class.getDeclaredMethods()) {
-                if (m.getName().equals("downloadFromFramebuffer")) { dl = m; break; }
-            }
-            if (dl != null) {
-                dl.setAccessible(true);
-                Class<?>[] p = dl.getParameterTypes();
-                if (p.length == 3 && p[0] == int.class && p[1] == int.class && p[2] == boolean.class) {
-                    dl.invoke(img, 0, 0, true);
-                    img.flipY();
-                    return img;
-                }
+            img = new NativeImage(fb.width, fb.height, false);
+            if (VisionStrategies.downloadNative(img)) {
+                img.flipY();
+                return img;
             }
-            try { img.close(); } catch (Throwable ignored) {}
         } catch (Throwable ignored) {}
+        try { if (img != null) img.close(); } catch (Throwable ignored) {}
         return null;
     }
 
-    private static byte[] extractRgba(NativeImage img) throws Exception {
-        int w = img.getWidth(), h = img.getHeight();
-        byte[] out = new byte[w * h * 4];
-        int idx = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgba = img.getPixelRGBA(x, y);
-                int r = (rgba      ) & 0xFF;
-                int g = (rgba >> 8 ) & 0xFF;
-                int b = (rgba >> 16) & 0xFF;
-                int a = (rgba >> 24) & 0xFF;
-                out[idx++] = (byte) r;
-                out[idx++] = (byte) g;
-                out[idx++] = (byte) b;
-                out[idx++] = (byte) a;
-            }
-        }
-        return out;
-    }
-
-    private static final class Encoded {
+    static final class Encoded {
         final String b64;
         final String sha256;
         final int w;
@@ -684,7 +787,8 @@ public final class VisionCapture {
         }
     }
 
-    private static Encoded encodeJpegFromRgba(byte[] rgba, int w, int h, int maxDim) throws Exception {
+    /** Area-averaged to maxDim; pooled image, valid until the next resample on this thread. */
+    private static BufferedImage resampleForEncode(byte[] rgba, int w, int h, int maxDim) throws Exception {
         if (rgba == null || rgba.length < w * h * 4) return null;
 
         int maxSide = Math.max(w, h);
@@ -696,84 +800,41 @@ public final class VisionCapture {
             outH = Math.max(1, (int) Math.round(h * scale));
         }
 
-        BufferedImage img = new BufferedImage(outW, outH, BufferedImage.TYPE_INT_RGB);
-
-        for (int y = 0; y < outH; y++) {
-            int srcY = (int) ((long) y * h / outH);
-            for (int x = 0; x < outW; x++) {
-                int srcX = (int) ((long) x * w / outW);
-                int si = (srcY * w + srcX) * 4;
-                int r = rgba[si] & 0xFF;
-                int g = rgba[si + 1] & 0xFF;
-                int b = rgba[si + 2] & 0xFF;
-                int rgb = (r << 16) | (g << 8) | b;
-                img.setRGB(x, y, rgb);
-            }
-        }
+        // Area-averaged into a pooled raster (no nearest-neighbour aliasing, no per-pixel setRGB).
+        return VisionResampler.resample(rgba, w, h, outW, outH);
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(64 * 1024);
-        ImageIO.write(img, "jpg", baos);
-        byte[] jpeg = baos.toByteArray();
+    /** @param stats record the encode + base64 stages (the context image; the fovea is timed as a whole) */
+    private static Encoded encodeJpeg(BufferedImage img, int quality, boolean stats) throws Exception {
+        // Cached per-thread writer/param/buffer; quality from the adaptive controller, chroma subsampling from config.
+        long t0 = System.nanoTime();
+        byte[] jpeg = VisionJpegEncoder.encode(img, quality, Config.getVisionJpegChromaSubsampling());
+        if (stats) VisionStats.record(VisionStats.Stage.ENCODE, t0, (long) img.getWidth() * img.getHeight() * 3L, jpeg.length);
 
         // Ensure we use the standard Base64 encoder and return a String
+        t0 = System.nanoTime();
         String b64 = Base64.getEncoder().encodeToString(jpeg);
         String sha = sha256Hex(jpeg);
-        return new Encoded(b64, sha, outW, outH, jpeg);
+        if (stats) VisionStats.record(VisionStats.Stage.BASE64, t0, jpeg.length, b64.length());
+        return new Encoded(b64, sha, img.getWidth(), img.getHeight(), jpeg);
     }
 
-    private static String sha256Hex(byte[] bytes) throws Exception {
+    /** Encode straight into a streamed upload (base64 inside image.image_b64); b64 stays null. */
+    private static Encoded encodeJpegStreaming(BufferedImage img, int quality, VisionUploadStream upload) throws Exception {
+        byte[] jpeg;
+        long t0 = System.nanoTime();
+        try (java.io.OutputStream out = upload.image()) {
+            jpeg = VisionJpegEncoder.encode(img, quality, Config.getVisionJpegChromaSubsampling(), out);
+        }
+        VisionStats.record(VisionStats.Stage.ENCODE, t0, (long) img.getWidth() * img.getHeight() * 3L, jpeg.length);
+        return new Encoded(null, sha256Hex(jpeg), img.getWidth(), img.getHeight(), jpeg);
+    }
+
+    static String sha256Hex(byte[] bytes) throws Exception {
         MessageDigest md = MessageDigest.getInstance("SHA-256");
         byte[] dig = md.digest(bytes);
         StringBuilder sb = new StringBuilder(dig.length * 2);
         for (byte b : dig) sb.append(String.format("%02x", b));
         return sb.toString();
     }
-
-    private static void saveVisionJpegToDisk(byte[] jpegBytes, long createdMs) {
-        if (jpegBytes == null || jpegBytes.length == 0) return;
-        try {
-            Minecraft mc = Minecraft.getInstance();
-            if (mc == null || mc.gameDirectory == null) return;
-            File root = new File(mc.gameDirectory, "screenshots");
-            File dir = new File(root, "craftmate");
-            if (!dir.exists() && !dir.mkdirs()) {
-            }
-
-            String name = "vision_" + createdMs + ".jpg";
-            File out = new File(dir, name);
-            try (FileOutputStream fos = new FileOutputStream(out)) {
-                fos.write(jpegBytes);
-            }
-
-            lastSavedVisionPath = out.getAbsolutePath();
-            if (Config.debugLog) {
-                try {
-                    CraftMate.getInstance().log("[Vision] saved=" + out.getAbsolutePath());
-                } catch (Throwable ignored) {}
-            }
-        } catch (Throwable ignored) {
-        }
-    }
-
-    @SuppressWarnings("unused")
-    private static void saveVisionJpegToDisk(byte[] jpegBytes, Long createdMs) {
-        saveVisionJpegToDisk(jpegBytes, createdMs == null ? System.currentTimeMillis() : createdMs.longValue());
-    }
-
-    private static void saveDebugLastJpegToDisk(byte[] jpegBytes) {
-        try {
-            if (jpegBytes == null || jpegBytes.length == 0) return;
-            Minecraft mc = Minecraft.getInstance();
-            if (mc == null) return;
-            File base = mc.gameDirectory;
-            if (base == null) return;
-            File dir = new File(new File(base, "screenshots"), "craftmate");
-            if (!dir.exists()) dir.mkdirs();
-            File out = new File(dir, "debug_last.jpg");
-            Files.write(out.toPath(), jpegBytes);
-            VisionDebug.setStage("saved debug_last.jpg");
-        } catch (Throwable t) {
-            VisionDebug.fatal("saveDebugLastJpegToDisk", t);
-        }
-    }
-}
\ No newline at end of file
+}
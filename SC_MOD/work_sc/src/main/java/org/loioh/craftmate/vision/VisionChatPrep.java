@@ -0,0 +1,163 @@
+package org.loioh.craftmate.vision;
+
+import com.google.gson.JsonObject;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.screens.ChatScreen;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ScreenEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.loioh.craftmate.Config;
+import org.loioh.craftmate.CraftMate;
+import org.loioh.craftmate.core.HTTP_Hook;
+import org.loioh.craftmate.utils.Players;
+
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Speculative chat preparation: the slow part of a chat vision request runs while the player is still typing.
+ * - Opening the ChatScreen queues a capture that is encoded but not uploaded, snapshots the player stats and warms
+ *   the backend connection; the frame and stats are refreshed at half of visionChatPrepareMaxAgeMs while it stays open
+ * - On Enter the prepared frame goes out at once with the message (no capture wait), and the chat post skips its
+ *   5-tick delay, using the stats taken with that frame
+ * - Closing the screen discards everything; a capture still in flight for a closed session is dropped
+ */
+@Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class VisionChatPrep {
+
+    private VisionChatPrep() {}
+
+    // Both chat hooks (ClientChatEvent, Enter key) fire for one send; the second one is covered by the first.
+    private static final long SENT_GRACE_MS = 750L;
+    // A speculative request that never came back (shed, GPU path failed) is retried after this long.
+    private static final long REQUEST_TIMEOUT_MS = 2_000L;
+
+    /** Encoded, not yet uploaded chat frame. */
+    static final class Prepared {
+        final int session;
+        final long capturedMs;
+        final byte[] jpeg;
+        final String hash;
+        final int w;
+        final int h;
+        final JsonObject fovea;
+
+        Prepared(int session, long capturedMs, byte[] jpeg, String hash, int w, int h, JsonObject fovea) {
+            this.session = session;
+            this.capturedMs = capturedMs;
+            this.jpeg = jpeg;
+            this.hash = hash;
+            this.w = w;
+            this.h = h;
+            this.fovea = fovea;
+        }
+    }
+
+    // Client thread
+    private static int session = 0;
+    private static long requestedAtMs = 0L;
+    private static Object[] stats = null;
+    private static long statsAtMs = 0L;
+
+    private static volatile int openSession = -1; // -1: chat closed
+    private static volatile Prepared prepared = null;
+    private static volatile long sentAtMs = 0L;
+
+    @SubscribeEvent
+    public static void onScreenOpening(ScreenEvent.Opening e) {
+        if (!(e.getNewScreen() instanceof ChatScreen) || openSession >= 0) return;
+        if (!Config.getVisionEnabled() || !Config.getVisionChatPrepare()) return;
+        openSession = ++session;
+        prepared = null;
+        requestedAtMs = 0L;
+        try { HTTP_Hook.warmUp(); } catch (Throwable ignored) {}
+        refresh();
+    }
+
+    @SubscribeEvent
+    public static void onScreenClosing(ScreenEvent.Closing e) {
+        if (!(e.getScreen() instanceof ChatScreen)) return;
+        openSession = -1;
+        prepared = null;
+        stats = null;
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent e) {
+        if (e.phase != TickEvent.Phase.END || openSession < 0) return;
+        long now = System.currentTimeMillis();
+        Prepared p = prepared;
+        boolean inFlight = requestedAtMs > 0L && now - requestedAtMs < REQUEST_TIMEOUT_MS;
+        boolean stale = p == null || now - p.capturedMs >= Config.getVisionChatPrepareMaxAgeMs() / 2;
+        if (stale && !inFlight) refresh();
+    }
+
+    /** Client thread: stats now + a speculative capture (its frame lands in {@link #offer}). */
+    private static void refresh() {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc == null || mc.player == null) return;
+        try {
+            stats = Players.getStats(mc.player);
+            statsAtMs = System.currentTimeMillis();
+        } catch (Throwable ignored) {}
+        if (VisionCapture.requestChatPrep(mc.player.getUUID(), openSession)) {
+            requestedAtMs = System.currentTimeMillis();
+        }
+    }
+
+    /** Render thread: is the chat session a speculative request belongs to still open? */
+    static boolean isOpen(int s) {
+        return s >= 0 && s == openSession;
+    }
+
+    /** Vision worker: a speculative frame is encoded. */
+    static void offer(Prepared p) {
+        if (!isOpen(p.session)) return;
+        prepared = p;
+        requestedAtMs = 0L;
+    }
+
+    /**
+     * Chat send (client thread): upload the prepared frame with the chat hint, if one is fresh.
+     * Also true right after such an upload, so the second chat hook doesn't queue another capture.
+     */
+    static boolean sendPrepared(UUID playerId, JsonObject hint) {
+        long now = System.currentTimeMillis();
+        Prepared p = prepared;
+        if (p == null || !isOpen(p.session) || now - p.capturedMs > Config.getVisionChatPrepareMaxAgeMs()) {
+            return now - sentAtMs < SENT_GRACE_MS;
+        }
+        prepared = null;
+        sentAtMs = now;
+
+        try { hint.addProperty("prepared_age_ms", now - p.capturedMs); } catch (Throwable ignored) {}
+        try { CraftMate.vLog("Vision chat frame sent from prep (age=" + (now - p.capturedMs) + "ms sha=" + p.hash.substring(0, 8) + ")"); } catch (Throwable ignored) {}
+
+        VisionCapture.submitWork(() -> {
+            try {
+                VisionFrameRing.add(new VisionFrameRing.Entry(p.capturedMs, p.hash, p.jpeg, p.w, p.h, p.fovea));
+                if (Config.getVisionSaveChatAlways()) VisionDiskWriter.saveRing(p.jpeg);
+                HTTP_Hook.postVision(playerId, hint, Base64.getEncoder().encodeToString(p.jpeg), "image/jpeg", p.w, p.h, p.hash, p.fovea);
+            } catch (Throwable t) {
+                CraftMate.vFatal("prepared chat frame post failed", t);
+            }
+        });
+        return true;
+    }
+
+    /** True right after a chat send was answered from a prepared frame (the chat post can go without delay). */
+    public static boolean sentPrepared() {
+        return System.currentTimeMillis() - sentAtMs < SENT_GRACE_MS;
+    }
+
+    /** Stats snapshot taken with the prepared frame, if it belongs to {@code playerId} and is still fresh; else null. */
+    public static Object[] takeStats(UUID playerId) {
+        Object[] s = stats;
+        if (s == null || s.length == 0 || !playerId.equals(s[0])) return null;
+        if (System.currentTimeMillis() - statsAtMs > Config.getVisionChatPrepareMaxAgeMs()) return null;
+        stats = null;
+        return s;
+    }
+}
@@ -14,7 +14,7 @@ import org.loioh.craftmate.CraftMate;
  * Goals:
  *  - No silent failures
  *  - Clear stage / last error / last HTTP
- *  - Optional on-screen overlay
+ *  - Optional on-screen overlay, including per-stage timings (VisionStats; full table to the log with F10)
  */
 @Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public final class VisionDebug {
@@ -111,6 +111,7 @@ public final class VisionDebug {
             String line4 = "Last ok: " + (sinceOk < 0 ? "never" : (sinceOk/1000) + "s ago");
             String line5 = "HTTP: " + (lastHttp.length() > 60 ? lastHttp.substring(0,60) : lastHttp);
             String line6 = "Err: " + (lastError.length() > 60 ? lastError.substring(0,60) : lastError);
+            String[] stages = VisionStats.overlayLines();
 
             int x = 6, y = 6;
             e.getGuiGraphics().drawString(mc.font, Component.literal(line1), x, y, 0xFFFFFF, true); y += 10;
@@ -118,7 +119,9 @@ public final class VisionDebug {
             e.getGuiGraphics().drawString(mc.font, Component.literal(line3), x, y, 0xFFFFFF, true); y += 10;
             e.getGuiGraphics().drawString(mc.font, Component.literal(line4), x, y, 0xFFFFFF, true); y += 10;
             e.getGuiGraphics().drawString(mc.font, Component.literal(line5), x, y, 0xFFFFFF, true); y += 10;
-            e.getGuiGraphics().drawString(mc.font, Component.literal(line6), x, y, 0xFFFFFF, true);
+            e.getGuiGraphics().drawString(mc.font, Component.literal(line6), x, y, 0xFFFFFF, true); y += 10;
+            e.getGuiGraphics().drawString(mc.font, Component.literal(stages[0]), x, y, 0xFFFFFF, true); y += 10;
+            e.getGuiGraphics().drawString(mc.font, Component.literal(stages[1]), x, y, 0xFFFFFF, true);
         } catch (Throwable t) {
             // Never break rendering
         }
@@ -0,0 +1,206 @@
+package org.loioh.craftmate.vision;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.loioh.craftmate.Config;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Compact image descriptor for low-priority ambient captures: a few hundred bytes instead of a JPEG.
+ * - The frame is area-averaged to a WORK_W x WORK_H grid (VisionResampler) and everything is computed from that
+ * - Hue histogram (HUE_BINS chromatic + dark/grey/light bins), luma and Sobel edge-density grids, mean luma, sky
+ *   fraction, dominant colours and a THUMB_W x THUMB_H RGB444 thumbnail; motion is the novelty probe's score
+ * - Values are quantised to small integers (0..255, or percent for fractions) so the JSON stays short
+ */
+final class VisionDescriptors {
+
+    private VisionDescriptors() {}
+
+    static final int VERSION = 1;
+    // Longest side to read back for a descriptor capture; the work grid is far smaller anyway.
+    static final int READ_DIM = 256;
+
+    private static final int WORK_W = 64;
+    private static final int WORK_H = 36;
+    private static final int GRID_W = 8;
+    private static final int GRID_H = 4;
+    private static final int THUMB_W = 12;
+    private static final int THUMB_H = 7;
+    private static final int HUE_BINS = 12;
+    private static final int DOMINANT = 3;
+    // Below this saturation a pixel counts as dark / grey / light instead of a hue.
+    private static final float MIN_SATURATION = 0.2f;
+    // Sobel magnitude (0..255 luma scale) above which a pixel counts as an edge.
+    private static final int EDGE_THRESHOLD = 48;
+
+    /** Is {@code reason} one of visionDescriptorReasons? */
+    static boolean wantsDescriptor(String reason) {
+        if (!Config.getVisionDescriptors() || reason == null || reason.isBlank()) return false;
+        for (String r : Config.getVisionDescriptorReasons().split(",")) {
+            if (r.trim().equalsIgnoreCase(reason)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Vision worker: descriptor of an RGBA frame (top-left origin).
+     * @param motion novelty probe score at capture time (-1 if unknown)
+     */
+    static JsonObject describe(byte[] rgba, int w, int h, double motion) throws Exception {
+        int ww = Math.min(WORK_W, w);
+        int wh = Math.min(WORK_H, h);
+        BufferedImage small = VisionResampler.resample(rgba, w, h, ww, wh);
+        int[] px = ((DataBufferInt) small.getRaster().getDataBuffer()).getData();
+        int n = ww * wh;
+
+        int[] luma = new int[n];
+        int[] hist = new int[HUE_BINS + 3];
+        long lumaSum = 0L;
+        int skyRows = Math.max(1, wh / 3);
+        int sky = 0;
+        float[] hsb = new float[3];
+        for (int i = 0; i < n; i++) {
+            int p = px[i];
+            int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+            int y = (r * 77 + g * 150 + b * 29) >> 8;
+            luma[i] = y;
+            lumaSum += y;
+            int bin = bin(r, g, b, hsb);
+            hist[bin]++;
+            // Sky: bright, bluish pixels in the upper third.
+            if (i < skyRows * ww && b > r + 16 && b >= g && y > 110) sky++;
+        }
+
+        JsonObject d = new JsonObject();
+        d.addProperty("v", VERSION);
+        d.addProperty("w", w);
+        d.addProperty("h", h);
+        d.addProperty("mean_luma", (int) (lumaSum / n));
+        d.addProperty("sky_pct", pct(sky, skyRows * ww));
+
+        JsonArray histJson = new JsonArray();
+        for (int c : hist) histJson.add(pct(c, n));
+        d.add("hue_hist", histJson);
+        d.add("dominant", dominant(hist, n));
+
+        int[] lumaGrid = new int[GRID_W * GRID_H];
+        int[] edgeGrid = new int[GRID_W * GRID_H];
+        int[] cells = new int[GRID_W * GRID_H];
+        int edges = 0;
+        for (int y = 0; y < wh; y++) {
+            int gy = y * GRID_H / wh;
+            for (int x = 0; x < ww; x++) {
+                int c = gy * GRID_W + x * GRID_W / ww;
+                lumaGrid[c] += luma[y * ww + x];
+                cells[c]++;
+                if (x > 0 && y > 0 && x < ww - 1 && y < wh - 1 && sobel(luma, ww, x, y) > EDGE_THRESHOLD) {
+                    edgeGrid[c]++;
+                    edges++;
+                }
+            }
+        }
+        JsonArray lumaJson = new JsonArray();
+        JsonArray edgeJson = new JsonArray();
+        for (int c = 0; c < cells.length; c++) {
+            lumaJson.add(cells[c] > 0 ? lumaGrid[c] / cells[c] : 0);
+            edgeJson.add(pct(edgeGrid[c], cells[c]));
+        }
+        d.addProperty("grid_w", GRID_W);
+        d.addProperty("grid_h", GRID_H);
+        d.add("luma_grid", lumaJson);
+        d.add("edge_grid", edgeJson);
+        d.addProperty("edge_pct", pct(edges, n));
+
+        if (motion >= 0.0) d.addProperty("motion", Math.round(motion * 10.0) / 10.0);
+
+        d.addProperty("thumb_w", THUMB_W);
+        d.addProperty("thumb_h", THUMB_H);
+        d.addProperty("thumb_rgb444_b64", thumbnail(px, ww, wh));
+        return d;
+    }
+
+    /** Histogram bin: a hue bin, or HUE_BINS + 0/1/2 for dark / grey / light low-saturation pixels. */
+    private static int bin(int r, int g, int b, float[] hsb) {
+        java.awt.Color.RGBtoHSB(r, g, b, hsb);
+        if (hsb[1] >= MIN_SATURATION && hsb[2] >= 0.15f) {
+            return Math.min(HUE_BINS - 1, (int) (hsb[0] * HUE_BINS));
+        }
+        if (hsb[2] < 0.25f) return HUE_BINS;
+        return hsb[2] < 0.75f ? HUE_BINS + 1 : HUE_BINS + 2;
+    }
+
+    /** The DOMINANT largest bins as {"bin": name, "pct": share}. */
+    private static JsonArray dominant(int[] hist, int n) {
+        JsonArray out = new JsonArray();
+        boolean[] taken = new boolean[hist.length];
+        for (int k = 0; k < DOMINANT; k++) {
+            int best = -1;
+            for (int i = 0; i < hist.length; i++) {
+                if (!taken[i] && hist[i] > 0 && (best < 0 || hist[i] > hist[best])) best = i;
+            }
+            if (best < 0) break;
+            taken[best] = true;
+            JsonObject o = new JsonObject();
+            o.addProperty("bin", binName(best));
+            o.addProperty("pct", pct(hist[best], n));
+            out.add(o);
+        }
+        return out;
+    }
+
+    private static String binName(int bin) {
+        if (bin == HUE_BINS) return "dark";
+        if (bin == HUE_BINS + 1) return "grey";
+        if (bin == HUE_BINS + 2) return "light";
+        return String.format(Locale.ROOT, "hue%d", bin * (360 / HUE_BINS));
+    }
+
+    private static int sobel(int[] l, int w, int x, int y) {
+        int i = y * w + x;
+        int gx = (l[i - w + 1] + 2 * l[i + 1] + l[i + w + 1]) - (l[i - w - 1] + 2 * l[i - 1] + l[i + w - 1]);
+        int gy = (l[i + w - 1] + 2 * l[i + w] + l[i + w + 1]) - (l[i - w - 1] + 2 * l[i - w] + l[i - w + 1]);
+        return (Math.abs(gx) + Math.abs(gy)) >> 2;
+    }
+
+    /** Box-averaged THUMB_W x THUMB_H thumbnail, 4 bits per channel, two pixels per three bytes. */
+    private static String thumbnail(int[] px, int w, int h) {
+        int n = THUMB_W * THUMB_H;
+        byte[] out = new byte[(n * 3 + 1) / 2];
+        int bit = 0;
+        for (int ty = 0; ty < THUMB_H; ty++) {
+            int y0 = ty * h / THUMB_H, y1 = Math.max(y0 + 1, (ty + 1) * h / THUMB_H);
+            for (int tx = 0; tx < THUMB_W; tx++) {
+                int x0 = tx * w / THUMB_W, x1 = Math.max(x0 + 1, (tx + 1) * w / THUMB_W);
+                int r = 0, g = 0, b = 0, c = 0;
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        int p = px[y * w + x];
+                        r += (p >> 16) & 0xFF;
+                        g += (p >> 8) & 0xFF;
+                        b += p & 0xFF;
+                        c++;
+                    }
+                }
+                bit = nibble(out, bit, (r / c) >> 4);
+                bit = nibble(out, bit, (g / c) >> 4);
+                bit = nibble(out, bit, (b / c) >> 4);
+            }
+        }
+        return Base64.getEncoder().encodeToString(out);
+    }
+
+    private static int nibble(byte[] out, int bit, int v) {
+        int i = bit >> 3;
+        if ((bit & 4) == 0) out[i] = (byte) (v << 4);
+        else out[i] = (byte) (out[i] | v);
+        return bit + 4;
+    }
+
+    private static int pct(int part, int whole) {
+        return whole <= 0 ? 0 : Math.round(part * 100f / whole);
+    }
+}
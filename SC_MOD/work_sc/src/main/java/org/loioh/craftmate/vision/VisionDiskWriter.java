@@ -0,0 +1,158 @@
+package org.loioh.craftmate.vision;
+
+import net.minecraft.client.Minecraft;
+import org.loioh.craftmate.Config;
+import org.loioh.craftmate.CraftMate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background writer for vision debug frames (screenshots/craftmate/).
+ * - Takes already-encoded JPEG bytes; nothing is decoded or re-encoded here
+ * - Small bounded queue on one daemon thread; when it is full the frame is dropped, callers never wait
+ * - debug_last.jpg is replaced atomically (tmp + move); chat frames rotate through vision_ring_NN.jpg
+ *   (visionDebugRingSize slots), so the folder stays bounded
+ */
+final class VisionDiskWriter {
+
+    private VisionDiskWriter() {}
+
+    private static final int QUEUE_MAX = 4;
+
+    private static final class Job {
+        final byte[] bytes;
+        final boolean ring; // false: debug_last.jpg
+
+        Job(byte[] bytes, boolean ring) {
+            this.bytes = bytes;
+            this.ring = ring;
+        }
+    }
+
+    private static final BlockingQueue<Job> QUEUE = new ArrayBlockingQueue<>(QUEUE_MAX);
+    private static final AtomicInteger DROPPED = new AtomicInteger();
+    private static volatile String lastPath = "";
+    private static volatile Thread thread;
+
+    // Writer thread only
+    private static int nextSlot = -1;
+
+    /** Overwrite debug_last.jpg (any thread, never blocks). */
+    static void saveLast(byte[] jpeg) {
+        offer(new Job(jpeg, false));
+    }
+
+    /** Add a frame to the rotating chat ring (any thread, never blocks). */
+    static void saveRing(byte[] jpeg) {
+        offer(new Job(jpeg, true));
+    }
+
+    static String lastPath() {
+        return lastPath;
+    }
+
+    static int dropped() {
+        return DROPPED.get();
+    }
+
+    private static void offer(Job job) {
+        if (job.bytes == null || job.bytes.length == 0) return;
+        ensureThread();
+        if (!QUEUE.offer(job)) DROPPED.incrementAndGet();
+    }
+
+    private static void ensureThread() {
+        if (thread != null) return;
+        synchronized (VisionDiskWriter.class) {
+            if (thread != null) return;
+            Thread t = new Thread(VisionDiskWriter::run, "CraftMate-VisionDisk");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+            thread = t;
+        }
+    }
+
+    private static void run() {
+        while (true) {
+            Job job;
+            try {
+                job = QUEUE.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                write(job);
+            } catch (Throwable t) {
+                try { VisionDebug.setLastError("debug save: " + t.getClass().getSimpleName()); } catch (Throwable ignored) {}
+            }
+        }
+    }
+
+    private static void write(Job job) throws IOException {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc == null || mc.gameDirectory == null) return;
+        Path dir = mc.gameDirectory.toPath().resolve("screenshots").resolve("craftmate");
+        Files.createDirectories(dir);
+
+        if (!job.ring) {
+            Path tmp = dir.resolve("debug_last.jpg.tmp");
+            Path out = dir.resolve("debug_last.jpg");
+            writeFully(tmp, job.bytes);
+            try {
+                Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try { VisionDebug.setStage("saved debug_last.jpg"); } catch (Throwable ignored) {}
+            return;
+        }
+
+        int size = Math.max(1, Config.getVisionDebugRingSize());
+        if (nextSlot < 0 || nextSlot >= size) nextSlot = firstSlot(dir, size);
+        Path out = dir.resolve(String.format("vision_ring_%02d.jpg", nextSlot));
+        nextSlot = (nextSlot + 1) % size;
+        writeFully(out, job.bytes);
+
+        lastPath = out.toAbsolutePath().toString();
+        if (Config.debugLog) {
+            try { CraftMate.getInstance().log("[Vision] saved=" + lastPath); } catch (Throwable ignored) {}
+        }
+    }
+
+    static void writeFully(Path path, byte[] bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+
+    /** Continue after the newest slot left by a previous session (first missing slot if the ring is not full yet). */
+    private static int firstSlot(Path dir, int size) {
+        int newest = -1;
+        FileTime newestTime = null;
+        for (int i = 0; i < size; i++) {
+            Path p = dir.resolve(String.format("vision_ring_%02d.jpg", i));
+            try {
+                if (!Files.exists(p)) return i;
+                FileTime t = Files.getLastModifiedTime(p);
+                if (newestTime == null || t.compareTo(newestTime) > 0) {
+                    newestTime = t;
+                    newest = i;
+                }
+            } catch (IOException ignored) {}
+        }
+        return (newest + 1) % size;
+    }
+}
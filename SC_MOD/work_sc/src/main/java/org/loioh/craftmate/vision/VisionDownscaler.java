@@ -0,0 +1,198 @@
+package org.loioh.craftmate.vision;
+
+import com.mojang.blaze3d.pipeline.RenderTarget;
+import com.mojang.blaze3d.pipeline.TextureTarget;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.Minecraft;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+import org.loioh.craftmate.CraftMate;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GPU-side downscale for vision captures (render thread only).
+ * - Blits the main RenderTarget into small reusable offscreen targets with linear filtering
+ * - Halves step by step while the frame is more than 2x the output size, so the final linear
+ *   blit still touches every source pixel (no nearest-neighbour aliasing)
+ * - Only the last (visionMaxDim-sized) target is read back; the full framebuffer never crosses the bus
+ */
+final class VisionDownscaler {
+
+    private VisionDownscaler() {}
+
+    // One target per halving step, reused across captures (resized only when the window size changes).
+    private static final List<TextureTarget> STEPS = new ArrayList<>();
+    // Separate chains for region (fovea), burst and probe reads so the sizes don't keep resizing each other's targets.
+    private static final List<TextureTarget> REGION_STEPS = new ArrayList<>();
+    private static final List<TextureTarget> BURST_STEPS = new ArrayList<>();
+    private static final List<TextureTarget> PROBE_STEPS = new ArrayList<>();
+
+    private static volatile long disabledUntilMs = 0L;
+    private static final long DISABLE_MS = 60_000L;
+
+    static boolean isAvailable() {
+        return System.currentTimeMillis() >= disabledUntilMs;
+    }
+
+    /** Output size for a source frame: longest side clamped to maxDim, aspect preserved. */
+    static int[] targetSize(int w, int h, int maxDim) {
+        int maxSide = Math.max(w, h);
+        if (maxSide <= maxDim) return new int[]{w, h};
+        double scale = (double) maxDim / (double) maxSide;
+        return new int[]{Math.max(1, (int) Math.round(w * scale)), Math.max(1, (int) Math.round(h * scale))};
+    }
+
+    /**
+     * Downscale {@code src} on the GPU and read back only the small result.
+     * Returns RGBA, top-left origin, or null if the GPU path failed (caller falls back to full readback).
+     */
+    static VisionCapture.FrameData readDownscaled(RenderTarget src, int maxDim) {
+        if (src == null) return null;
+        return read(src, 0, 0, src.width, src.height, maxDim, STEPS);
+    }
+
+    /**
+     * Same as {@link #readDownscaled} for a sub-rectangle (x, y, w, h in top-left-origin pixels) of {@code src}.
+     * Used for the fovea crop so it comes from the same frame as the context image.
+     */
+    static VisionCapture.FrameData readRegion(RenderTarget src, int[] rect, int maxDim) {
+        if (src == null || rect == null) return null;
+        // GL origin is bottom-left.
+        return read(src, rect[0], src.height - (rect[1] + rect[3]), rect[2], rect[3], maxDim, REGION_STEPS);
+    }
+
+    /**
+     * Downscale the whole frame and start an asynchronous (PBO) readback of the result instead of stalling on it.
+     * Returns false if the GPU path or the readback could not be started; the pixels arrive via {@code rb.poll()}.
+     */
+    static boolean readDownscaledAsync(RenderTarget src, int maxDim, VisionAsyncReadback rb) {
+        if (src == null) return false;
+        int[] out = targetSize(src.width, src.height, maxDim);
+        return readAsync(src, out[0], out[1], rb, BURST_STEPS);
+    }
+
+    /** Whole frame squeezed to exactly w x h (aspect not kept), read back asynchronously. Used by the novelty probe. */
+    static boolean readThumbnailAsync(RenderTarget src, int w, int h, VisionAsyncReadback rb) {
+        return readAsync(src, w, h, rb, PROBE_STEPS);
+    }
+
+    private static boolean readAsync(RenderTarget src, int dw, int dh, VisionAsyncReadback rb, List<TextureTarget> steps) {
+        if (src == null || rb == null || !isAvailable()) return false;
+        RenderSystem.assertOnRenderThreadOrInit();
+        if (src.width <= 0 || src.height <= 0) return false;
+        try {
+            for (int i = 0; i < 8 && GL11.glGetError() != GL11.GL_NO_ERROR; i++) {}
+
+            int[] res = blit(src, 0, 0, src.width, src.height, dw, dh, steps);
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, res[0]);
+            boolean started = rb.start(res[1], res[2]);
+
+            int err = GL11.glGetError();
+            if (err != GL11.GL_NO_ERROR) {
+                disable("gpu async downscale err=0x" + Integer.toHexString(err));
+                return false;
+            }
+            return started;
+        } catch (Throwable t) {
+            disable("gpu async downscale fail: " + t.getClass().getSimpleName());
+            return false;
+        } finally {
+            try { src.bindWrite(false); } catch (Throwable ignored) {}
+        }
+    }
+
+    private static VisionCapture.FrameData read(RenderTarget src, int sx, int sy, int sw, int sh, int maxDim, List<TextureTarget> steps) {
+        if (!isAvailable()) return null;
+        RenderSystem.assertOnRenderThreadOrInit();
+
+        if (sw <= 0 || sh <= 0) return null;
+
+        try {
+            // Drop stale errors so we only judge our own GL calls.
+            for (int i = 0; i < 8 && GL11.glGetError() != GL11.GL_NO_ERROR; i++) {}
+
+            int[] out = targetSize(sw, sh, maxDim);
+            int[] res = blit(src, sx, sy, sw, sh, out[0], out[1], steps);
+            int dw = res[1];
+            int dh = res[2];
+
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, res[0]);
+            ByteBuffer buf = VisionPixels.readbackBuffer(dw * dh * 4);
+            GL11.glReadPixels(0, 0, dw, dh, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buf);
+
+            int err = GL11.glGetError();
+            if (err != GL11.GL_NO_ERROR) {
+                disable("gpu downscale err=0x" + Integer.toHexString(err));
+                return null;
+            }
+
+            // GL origin is bottom-left; flip rows while copying out.
+            byte[] rgba = VisionPixels.acquire(dw * dh * 4);
+            VisionPixels.copyRowsFlipped(buf, rgba, dw, dh);
+            return new VisionCapture.FrameData(rgba, dw, dh);
+        } catch (Throwable t) {
+            disable("gpu downscale fail: " + t.getClass().getSimpleName());
+            return null;
+        } finally {
+            // Restore the main target for the rest of the GUI pass.
+            try { src.bindWrite(false); } catch (Throwable ignored) {}
+        }
+    }
+
+    /** Halving blit chain from {@code src} into {@code steps}; returns {fbo, w, h} of the final dw x dh target. */
+    private static int[] blit(RenderTarget src, int sx, int sy, int sw, int sh, int dw, int dh, List<TextureTarget> steps) {
+        int curFbo = src.frameBufferId;
+        int cx = sx;
+        int cy = sy;
+        int cw = sw;
+        int ch = sh;
+        int step = 0;
+        while (true) {
+            int nw = dw;
+            int nh = dh;
+            if (cw > dw * 2 || ch > dh * 2) {
+                nw = Math.max(dw, (cw + 1) / 2);
+                nh = Math.max(dh, (ch + 1) / 2);
+            }
+
+            // NOTE: creating/resizing a target rebinds framebuffers, so do it before binding ours.
+            TextureTarget t = target(steps, step, nw, nh);
+
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, curFbo);
+            GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, t.frameBufferId);
+            GL30.glBlitFramebuffer(cx, cy, cx + cw, cy + ch, 0, 0, nw, nh, GL11.GL_COLOR_BUFFER_BIT, GL11.GL_LINEAR);
+
+            curFbo = t.frameBufferId;
+            cx = 0;
+            cy = 0;
+            cw = nw;
+            ch = nh;
+            step++;
+            if (nw == dw && nh == dh) break;
+        }
+        return new int[]{curFbo, dw, dh};
+    }
+
+    private static TextureTarget target(List<TextureTarget> steps, int step, int w, int h) {
+        while (steps.size() <= step) steps.add(null);
+        TextureTarget t = steps.get(step);
+        if (t == null) {
+            t = new TextureTarget(w, h, false, Minecraft.ON_OSX);
+            steps.set(step, t);
+        } else if (t.width != w || t.height != h) {
+            t.resize(w, h, Minecraft.ON_OSX);
+        }
+        return t;
+    }
+
+    private static void disable(String why) {
+        disabledUntilMs = System.currentTimeMillis() + DISABLE_MS;
+        try {
+            CraftMate.vLog(why + " (gpu downscale disabled for " + (DISABLE_MS / 1000) + "s)");
+            VisionDebug.setLastError(why);
+        } catch (Throwable ignored) {}
+    }
+}
@@ -0,0 +1,148 @@
+package org.loioh.craftmate.vision;
+
+import net.minecraft.client.Camera;
+import net.minecraft.client.Minecraft;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import org.joml.Vector3f;
+import org.loioh.craftmate.scanner.SceneScanner;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Foveated capture: where to take the high-detail crop.
+ * - Focused entity (SceneScanner.focusedEntity): its bounding box projected to screen, with a margin
+ * - Otherwise a square around the crosshair
+ * - The backend model takes one image, so chat frames are a composite: context left, crop right (composite)
+ * Rects are {x, y, w, h} in framebuffer pixels, top-left origin, clamped to the frame.
+ */
+final class VisionFovea {
+
+    private VisionFovea() {}
+
+    // Crosshair crop side as a fraction of the shorter screen side.
+    private static final double CROSSHAIR_FRACTION = 0.33;
+    // Entity boxes get this much margin on each side, and are never smaller than MIN_FRACTION of the short side.
+    private static final double ENTITY_MARGIN = 0.15;
+    private static final double MIN_FRACTION = 0.12;
+
+    static final class Target {
+        final int[] rect;
+        final String kind; // "entity" | "crosshair"
+
+        Target(int[] rect, String kind) {
+            this.rect = rect;
+            this.kind = kind;
+        }
+    }
+
+    /** Render thread: pick the fovea rect for the current frame. */
+    static Target pick(Minecraft mc, int fbW, int fbH) {
+        try {
+            Entity e = SceneScanner.focusedEntity(mc);
+            if (e != null) {
+                int[] r = projectBox(mc, e.getBoundingBox(), fbW, fbH);
+                if (r != null) return new Target(r, "entity");
+            }
+        } catch (Throwable ignored) {}
+
+        int side = (int) Math.round(Math.min(fbW, fbH) * CROSSHAIR_FRACTION);
+        return new Target(clamp(fbW / 2 - side / 2, fbH / 2 - side / 2, side, side, fbW, fbH), "crosshair");
+    }
+
+    /** Project an AABB with the camera basis + FOV; null if it is behind the camera or off-screen. */
+    private static int[] projectBox(Minecraft mc, AABB box, int fbW, int fbH) {
+        Camera cam = mc.gameRenderer.getMainCamera();
+        Vec3 eye = cam.getPosition();
+        Vector3f look = cam.getLookVector();
+        Vector3f up = cam.getUpVector();
+        Vector3f left = cam.getLeftVector();
+
+        // Options FOV only (sprint/potion FOV effects ignored; the margin absorbs the difference).
+        double tanHalf = Math.tan(Math.toRadians(mc.options.fov().get()) / 2.0);
+        double aspect = (double) fbW / (double) fbH;
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < 8; i++) {
+            double px = ((i & 1) == 0 ? box.minX : box.maxX) - eye.x;
+            double py = ((i & 2) == 0 ? box.minY : box.maxY) - eye.y;
+            double pz = ((i & 4) == 0 ? box.minZ : box.maxZ) - eye.z;
+            double z = px * look.x() + py * look.y() + pz * look.z();
+            if (z < 0.05) return null; // a corner behind the near plane: fall back to crosshair crop
+            double x = -(px * left.x() + py * left.y() + pz * left.z()) / (z * tanHalf * aspect);
+            double y = (px * up.x() + py * up.y() + pz * up.z()) / (z * tanHalf);
+            double sx = (x + 1.0) * 0.5 * fbW;
+            double sy = (1.0 - y) * 0.5 * fbH;
+            minX = Math.min(minX, sx);
+            maxX = Math.max(maxX, sx);
+            minY = Math.min(minY, sy);
+            maxY = Math.max(maxY, sy);
+        }
+        if (maxX < 0 || maxY < 0 || minX > fbW || minY > fbH) return null;
+
+        double mw = (maxX - minX) * ENTITY_MARGIN;
+        double mh = (maxY - minY) * ENTITY_MARGIN;
+        minX -= mw;
+        maxX += mw;
+        minY -= mh;
+        maxY += mh;
+
+        double minSide = Math.min(fbW, fbH) * MIN_FRACTION;
+        double cx = (minX + maxX) / 2.0;
+        double cy = (minY + maxY) / 2.0;
+        double w = Math.max(minSide, maxX - minX);
+        double h = Math.max(minSide, maxY - minY);
+        return clamp((int) Math.round(cx - w / 2), (int) Math.round(cy - h / 2), (int) Math.round(w), (int) Math.round(h), fbW, fbH);
+    }
+
+    /** Fit the rect inside the frame (shifted first, shrunk only if larger than the frame). */
+    static int[] clamp(int x, int y, int w, int h, int fbW, int fbH) {
+        w = Math.max(1, Math.min(w, fbW));
+        h = Math.max(1, Math.min(h, fbH));
+        x = Math.max(0, Math.min(x, fbW - w));
+        y = Math.max(0, Math.min(y, fbH - h));
+        return new int[]{x, y, w, h};
+    }
+
+    /** Map a rect from one frame size to another (e.g. framebuffer -> captured image). */
+    static int[] scale(int[] rect, int fromW, int fromH, int toW, int toH) {
+        if (fromW == toW && fromH == toH) return rect;
+        int x = (int) ((long) rect[0] * toW / fromW);
+        int y = (int) ((long) rect[1] * toH / fromH);
+        int w = (int) Math.max(1, (long) rect[2] * toW / fromW);
+        int h = (int) Math.max(1, (long) rect[3] * toH / fromH);
+        return clamp(x, y, w, h, toW, toH);
+    }
+
+    /** CPU crop from a full RGBA frame into a pooled array. */
+    static VisionCapture.FrameData crop(byte[] rgba, int w, int h, int[] rect) {
+        int cw = rect[2];
+        int ch = rect[3];
+        byte[] out = VisionPixels.acquire(cw * ch * 4);
+        int stride = w * 4;
+        int rowBytes = cw * 4;
+        for (int y = 0; y < ch; y++) {
+            System.arraycopy(rgba, (rect[1] + y) * stride + rect[0] * 4, out, y * rowBytes, rowBytes);
+        }
+        return new VisionCapture.FrameData(out, cw, ch);
+    }
+
+    /**
+     * Context image left, crop right, both top-aligned at their own size (black below the shorter one, which costs
+     * next to nothing in the JPEG). Both inputs are TYPE_INT_RGB pixels; the crop is packed row by row.
+     */
+    static BufferedImage composite(BufferedImage ctx, int[] crop, int cropW, int cropH) {
+        int cw = ctx.getWidth();
+        int ch = ctx.getHeight();
+        int outW = cw + cropW;
+        BufferedImage out = new BufferedImage(outW, Math.max(ch, cropH), BufferedImage.TYPE_INT_RGB);
+        int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        int[] src = ((DataBufferInt) ctx.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < ch; y++) System.arraycopy(src, y * cw, dst, y * outW, cw);
+        for (int y = 0; y < cropH; y++) System.arraycopy(crop, y * cropW, dst, y * outW + cw, cropW);
+        return out;
+    }
+}
@@ -0,0 +1,147 @@
+package org.loioh.craftmate.vision;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.loioh.craftmate.Config;
+
+import java.util.Arrays;
+
+/**
+ * Render-thread frame budget for vision capture work (render thread only).
+ * - Frame times come from RenderTickEvent START to START; the median of the last 64 is the "normal" frame
+ * - A capture only runs on a frame with headroom: the previous frame was not a hitch and the current one
+ *   is not already running long
+ * - Render-thread time spent capturing is capped per second (visionCaptureBudgetMsPerSec); the novelty probe's
+ *   per-frame readback is tracked on its own and does not use up that budget
+ * - Chat skips the per-second cap and waits for headroom at most visionChatDeadlineMs; other lanes wait
+ *   at most MAX_DEFER_MS for headroom, but never exceed the cap
+ */
+@Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class VisionFrameGovernor {
+
+    private VisionFrameGovernor() {}
+
+    private static final int WINDOW = 64;
+    // A frame this much slower than the median counts as a hitch.
+    private static final double HITCH_FACTOR = 1.5;
+    // Non-urgent requests go anyway (budget permitting) after waiting this long for a calm frame.
+    private static final long MAX_DEFER_MS = 1_500L;
+
+    private static final long[] FRAMES = new long[WINDOW];
+    private static int frameCount = 0; // valid entries, up to WINDOW
+    private static int frameNext = 0;
+    private static long frameStartNanos = 0L;
+    private static long lastFrameNanos = 0L;
+
+    // Capture work per 100 ms bucket over the last second.
+    private static final int BUCKETS = 10;
+    private static final long BUCKET_NANOS = 100_000_000L;
+    private static final long[] WORK = new long[BUCKETS];
+    private static final long[] PROBE = new long[BUCKETS]; // VisionNoveltyProbe, same buckets
+    private static long workBucket = 0L;
+
+    private static boolean deferredThisFrame = false;
+    private static int deferred = 0;
+
+    @SubscribeEvent
+    public static void onRenderTick(TickEvent.RenderTickEvent e) {
+        long now = System.nanoTime();
+        if (e.phase == TickEvent.Phase.START) {
+            if (frameStartNanos != 0L) {
+                lastFrameNanos = now - frameStartNanos;
+                FRAMES[frameNext] = lastFrameNanos;
+                frameNext = (frameNext + 1) % WINDOW;
+                if (frameCount < WINDOW) frameCount++;
+            }
+            frameStartNanos = now;
+            return;
+        }
+
+        // END: the overlay pass may not have run (hidden GUI); retry a deferred request once per frame.
+        if (deferredThisFrame) {
+            deferredThisFrame = false;
+            VisionCapture.retryDeferred();
+        }
+    }
+
+    /** May a capture for {@code req} run in the current frame? */
+    static boolean admit(VisionCapture.Request req) {
+        long now = System.nanoTime();
+        long waitedMs = System.currentTimeMillis() - req.createdMs;
+        boolean chat = req.lane == VisionQueue.Lane.CHAT;
+
+        if (!chat && workLastSecond(now) >= Config.getVisionCaptureBudgetMsPerSec() * 1_000_000L) {
+            return defer();
+        }
+
+        long deadlineMs = chat ? Config.getVisionChatDeadlineMs() : MAX_DEFER_MS;
+        if (waitedMs >= deadlineMs || hasHeadroom(now)) return true;
+        return defer();
+    }
+
+    /** Render-thread time spent on one capture (readback, GPU downscale, fovea). */
+    static void noteCaptureWork(long nanos) {
+        long now = System.nanoTime();
+        workLastSecond(now);
+        WORK[Math.floorMod(workBucket, BUCKETS)] += nanos;
+    }
+
+    /** Render-thread time spent by the novelty probe (shown in the overlay, not counted against the capture cap). */
+    static void noteProbeWork(long nanos) {
+        long now = System.nanoTime();
+        workLastSecond(now);
+        PROBE[Math.floorMod(workBucket, BUCKETS)] += nanos;
+    }
+
+    /** Short status line for the debug overlay. */
+    static String describe() {
+        long median = medianFrameNanos();
+        long capture = workLastSecond(System.nanoTime());
+        long probe = 0L;
+        for (long p : PROBE) probe += p;
+        return String.format("frame p50=%.1fms last=%.1fms capture=%.1f/%dms/s probe=%.1fms/s deferred=%d",
+                median / 1e6, lastFrameNanos / 1e6, capture / 1e6,
+                Config.getVisionCaptureBudgetMsPerSec(), probe / 1e6, deferred);
+    }
+
+    private static boolean hasHeadroom(long now) {
+        long median = medianFrameNanos();
+        if (median <= 0L) return true; // not enough history yet
+        long limit = (long) (median * HITCH_FACTOR);
+        if (lastFrameNanos > limit) return false;
+        return frameStartNanos == 0L || now - frameStartNanos <= median;
+    }
+
+    private static boolean defer() {
+        if (!deferredThisFrame) deferred++;
+        deferredThisFrame = true;
+        return false;
+    }
+
+    private static long medianFrameNanos() {
+        int n = frameCount;
+        if (n < 8) return 0L;
+        long[] copy = Arrays.copyOf(FRAMES, n);
+        Arrays.sort(copy);
+        return copy[n / 2];
+    }
+
+    /** Advance the bucket rings to {@code now} (clearing skipped buckets) and sum the capture one. */
+    private static long workLastSecond(long now) {
+        long bucket = now / BUCKET_NANOS;
+        if (bucket != workBucket) {
+            long steps = Math.min(BUCKETS, Math.abs(bucket - workBucket));
+            for (long i = 1; i <= steps; i++) {
+                int b = Math.floorMod(workBucket + i, BUCKETS);
+                WORK[b] = 0L;
+                PROBE[b] = 0L;
+            }
+            workBucket = bucket;
+        }
+        long sum = 0L;
+        for (long w : WORK) sum += w;
+        return sum;
+    }
+}
@@ -0,0 +1,78 @@
+package org.loioh.craftmate.vision;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The last few uploaded context frames, kept encoded, so a backend vision request can be answered without a capture.
+ * - Bounded (RING_SIZE, oldest evicted); entries hold the exact JPEG + frame_hash that was uploaded
+ * - An entry is marked as known to the server once its upload came back analysed (ok and not skipped);
+ *   such a frame can be sent as a frame_ref instead of the pixels
+ * - Only full frames are kept (no tile deltas or bursts)
+ */
+public final class VisionFrameRing {
+
+    private VisionFrameRing() {}
+
+    private static final int RING_SIZE = 4;
+
+    static final class Entry {
+        final long capturedMs;
+        final String hash;
+        final byte[] jpeg;
+        final int w;
+        final int h;
+        final JsonObject fovea;
+        volatile boolean serverHas = false;
+
+        Entry(long capturedMs, String hash, byte[] jpeg, int w, int h, JsonObject fovea) {
+            this.capturedMs = capturedMs;
+            this.hash = hash;
+            this.jpeg = jpeg;
+            this.w = w;
+            this.h = h;
+            this.fovea = fovea;
+        }
+    }
+
+    private static final ArrayDeque<Entry> RING = new ArrayDeque<>(RING_SIZE);
+
+    static synchronized void add(Entry e) {
+        if (e == null || e.jpeg == null || e.hash == null) return;
+        RING.addLast(e);
+        while (RING.size() > RING_SIZE) RING.pollFirst();
+    }
+
+    /** Newest frame captured within {@code maxAgeMs}, or null. */
+    static synchronized Entry freshest(long maxAgeMs) {
+        Entry e = RING.peekLast();
+        if (e == null || maxAgeMs <= 0L) return null;
+        return System.currentTimeMillis() - e.capturedMs <= maxAgeMs ? e : null;
+    }
+
+    /** Vision reply for the upload/reference with {@code frameHash} (HTTP thread). */
+    public static void onServerReply(String frameHash, JsonObject reply) {
+        if (frameHash == null || reply == null) return;
+        Entry e = find(frameHash);
+        if (e == null) return;
+        try {
+            if (reply.has("need_frame") && reply.get("need_frame").getAsBoolean()) {
+                e.serverHas = false;
+                return;
+            }
+            boolean ok = reply.has("ok") && reply.get("ok").getAsBoolean();
+            boolean skipped = reply.has("skipped") && reply.get("skipped").getAsBoolean();
+            if (ok && !skipped) e.serverHas = true;
+        } catch (Throwable ignored) {}
+    }
+
+    private static synchronized Entry find(String hash) {
+        for (Iterator<Entry> it = RING.descendingIterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            if (hash.equals(e.hash)) return e;
+        }
+        return null;
+    }
+}
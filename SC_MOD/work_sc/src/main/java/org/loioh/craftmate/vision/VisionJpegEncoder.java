@@ -0,0 +1,193 @@
+package org.loioh.craftmate.vision;
+
+import org.loioh.craftmate.Config;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Reusable JPEG encoder for vision frames (ImageIO path; resampler output goes to VisionParallelJpeg instead).
+ * - One ImageWriter + ImageWriteParam + output buffer per thread, looked up once and reset between frames
+ *   (instead of ImageIO.write doing a service lookup and a fresh writer/stream every capture)
+ * - Quality and chroma subsampling (4:2:0 / 4:4:4) are configurable
+ * - Optionally forwards the bytes to a sink as the writer produces them (streaming upload); the JPEG writer
+ *   only appends, so nothing already forwarded is ever rewritten
+ */
+final class VisionJpegEncoder {
+
+    private static final String JPEG_META = "javax_imageio_jpeg_image_1.0";
+
+    private static final ThreadLocal<VisionJpegEncoder> LOCAL = ThreadLocal.withInitial(VisionJpegEncoder::new);
+
+    private final ImageWriter writer;
+    private final ImageWriteParam param;
+    private final ByteOutput out = new ByteOutput(64 * 1024);
+
+    private int quality = -1;
+    // Metadata only depends on the image type + subsampling, so it is rebuilt only when those change.
+    private IIOMetadata meta = null;
+    private int metaImageType = -1;
+    private boolean metaChroma420 = true;
+
+    private VisionJpegEncoder() {
+        Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!it.hasNext()) throw new IllegalStateException("no JPEG ImageWriter");
+        this.writer = it.next();
+        this.param = writer.getDefaultWriteParam();
+        this.param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    }
+
+    /** Encode with the calling thread's encoder. Returns the exact JPEG bytes. */
+    static byte[] encode(BufferedImage img, int qualityPercent, boolean chroma420) throws IOException {
+        return encode(img, qualityPercent, chroma420, null);
+    }
+
+    /**
+     * Same, and every byte is also written to {@code sink} while encoding is still in progress.
+     * Plain TYPE_INT_RGB images go to the striped in-house encoder (VisionParallelJpeg) when visionParallelJpeg is on.
+     */
+    static byte[] encode(BufferedImage img, int qualityPercent, boolean chroma420, OutputStream sink) throws IOException {
+        if (Config.getVisionParallelJpeg() && VisionParallelJpeg.supports(img)) {
+            try {
+                return VisionParallelJpeg.encode(img, qualityPercent, chroma420, sink);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("parallel JPEG encode failed", e);
+            }
+        }
+        return LOCAL.get().write(img, qualityPercent, chroma420, sink);
+    }
+
+    private byte[] write(BufferedImage img, int qualityPercent, boolean chroma420, OutputStream sink) throws IOException {
+        int q = Math.max(1, Math.min(100, qualityPercent));
+        if (q != quality) {
+            param.setCompressionQuality(q / 100f);
+            quality = q;
+        }
+        if (meta == null || metaImageType != img.getType() || metaChroma420 != chroma420) {
+            meta = buildMetadata(img, chroma420);
+            metaImageType = img.getType();
+            metaChroma420 = chroma420;
+        }
+
+        out.rewind(sink);
+        try {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(img, null, meta), param);
+            out.flush();
+            return out.toByteArray();
+        } finally {
+            writer.reset();
+            out.sink = null;
+        }
+    }
+
+    private IIOMetadata buildMetadata(BufferedImage img, boolean chroma420) {
+        IIOMetadata m = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(img), param);
+        try {
+            IIOMetadataNode root = (IIOMetadataNode) m.getAsTree(JPEG_META);
+            Node sof = root.getElementsByTagName("sof").item(0);
+            if (sof != null) {
+                // Luma (first component) carries the sampling factors; chroma stays 1x1.
+                boolean first = true;
+                for (Node c = sof.getFirstChild(); c != null; c = c.getNextSibling()) {
+                    if (!(c instanceof IIOMetadataNode) || !"componentSpec".equals(c.getNodeName())) continue;
+                    String f = (first && chroma420) ? "2" : "1";
+                    ((IIOMetadataNode) c).setAttribute("HsamplingFactor", f);
+                    ((IIOMetadataNode) c).setAttribute("VsamplingFactor", f);
+                    first = false;
+                }
+                m.setFromTree(JPEG_META, root);
+            }
+        } catch (Throwable ignored) {
+            // Keep the writer's defaults (4:2:0) if the metadata tree isn't what we expect.
+        }
+        return m;
+    }
+
+    /** Growable in-memory ImageOutputStream that is rewound (not reallocated) between frames. */
+    private static final class ByteOutput extends ImageOutputStreamImpl {
+        private byte[] buf;
+        private int count = 0;
+        private OutputStream sink = null;
+
+        ByteOutput(int initial) {
+            this.buf = new byte[initial];
+        }
+
+        void rewind(OutputStream sink) {
+            this.sink = sink;
+            count = 0;
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensure(long end) {
+            if (end > buf.length) buf = Arrays.copyOf(buf, (int) Math.max(end, buf.length * 2L));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            if (sink != null) {
+                if (streamPos < count) throw new IOException("JPEG writer rewrote streamed bytes");
+                sink.write(b);
+            }
+            ensure(streamPos + 1);
+            buf[(int) streamPos++] = (byte) b;
+            if (streamPos > count) count = (int) streamPos;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            if (sink != null) {
+                if (streamPos < count) throw new IOException("JPEG writer rewrote streamed bytes");
+                sink.write(b, off, len);
+            }
+            ensure(streamPos + len);
+            System.arraycopy(b, off, buf, (int) streamPos, len);
+            streamPos += len;
+            if (streamPos > count) count = (int) streamPos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            bitOffset = 0;
+            return streamPos < count ? (buf[(int) streamPos++] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            bitOffset = 0;
+            if (streamPos >= count) return -1;
+            int n = (int) Math.min(len, count - streamPos);
+            System.arraycopy(buf, (int) streamPos, b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.loioh.craftmate.vision;
+
+import com.mojang.blaze3d.pipeline.RenderTarget;
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.loioh.craftmate.Config;
+
+/**
+ * Visual novelty signal for VisionTrigger: how much the screen changed since the last real capture.
+ * - Every PROBE_INTERVAL_MS the frame is blitted on the GPU to a 16x9 thumbnail and read back through a PBO
+ *   (VisionAsyncReadback), so the probe never stalls the render thread
+ * - The thumbnail is reduced to a luma grid; novelty = mean absolute luma difference against the grid current
+ *   at the last capture, 0 (same view) .. 1 (black <-> white everywhere)
+ * - -1 until both a probe and a capture have happened
+ */
+@Mod.EventBusSubscriber(modid = "craftmate", value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class VisionNoveltyProbe {
+
+    private VisionNoveltyProbe() {}
+
+    public static final int GRID_W = 16;
+    public static final int GRID_H = 9;
+    private static final long PROBE_INTERVAL_MS = 250L;
+
+    private static final VisionAsyncReadback READBACK = new VisionAsyncReadback(2);
+
+    // Render thread only
+    private static long nextProbeMs = 0L;
+    private static float[] latest = null;
+    private static float[] reference = null;
+
+    private static volatile double novelty = -1.0;
+
+    /** Latest novelty score (any thread); -1 if unknown. */
+    public static double novelty() {
+        return novelty;
+    }
+
+    /** Render thread: a real capture was taken from the current frame; it becomes the reference. */
+    static void markCaptured() {
+        if (latest == null) return;
+        reference = latest;
+        novelty = 0.0;
+    }
+
+    @SubscribeEvent
+    public static void onRenderTick(TickEvent.RenderTickEvent e) {
+        if (e.phase != TickEvent.Phase.END) return;
+        if (!Config.getVisionEnabled() || !Config.getVisionGpuDownscale()) return;
+
+        long t0 = System.nanoTime();
+        try {
+            VisionAsyncReadback.Frame f = READBACK.poll();
+            if (f != null) {
+                try {
+                    latest = luma(f.data.rgba, f.data.w * f.data.h);
+                } finally {
+                    VisionPixels.release(f.data.rgba);
+                }
+                if (reference != null) novelty = meanAbsDiff(latest, reference);
+            }
+
+            long now = System.currentTimeMillis();
+            if (now < nextProbeMs || READBACK.pending() > 0) return;
+            Minecraft mc = Minecraft.getInstance();
+            if (mc == null || mc.player == null || mc.isPaused()) return;
+            RenderTarget fb = mc.getMainRenderTarget();
+            if (fb != null && VisionDownscaler.readThumbnailAsync(fb, GRID_W, GRID_H, READBACK)) {
+                nextProbeMs = now + PROBE_INTERVAL_MS;
+            } else {
+                nextProbeMs = now + PROBE_INTERVAL_MS * 4; // GPU path unavailable: back off
+            }
+        } catch (Throwable ignored) {
+        } finally {
+            VisionFrameGovernor.noteProbeWork(System.nanoTime() - t0);
+        }
+    }
+
+    /** Rec.601 luma per pixel, 0..1. */
+    static float[] luma(byte[] rgba, int pixels) {
+        float[] out = new float[pixels];
+        for (int i = 0, p = 0; i < pixels; i++, p += 4) {
+            int r = rgba[p] & 0xFF;
+            int g = rgba[p + 1] & 0xFF;
+            int b = rgba[p + 2] & 0xFF;
+            out[i] = (0.299f * r + 0.587f * g + 0.114f * b) / 255f;
+        }
+        return out;
+    }
+
+    static double meanAbsDiff(float[] a, float[] b) {
+        if (a.length != b.length) return 1.0;
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) sum += Math.abs(a[i] - b[i]);
+        return sum / a.length;
+    }
+}
@@ -0,0 +1,442 @@
+package org.loioh.craftmate.vision;
+
+import javax.imageio.plugins.jpeg.JPEGHuffmanTable;
+import javax.imageio.plugins.jpeg.JPEGQTable;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/**
+ * Baseline JPEG encoder that codes horizontal stripes of the frame in parallel.
+ * - Stripes are whole MCU rows separated by restart markers (DRI = MCUs per stripe): every stripe starts with fresh
+ *   DC predictors and a byte-aligned bit stream, so stripes are coded independently and simply concatenated
+ * - Same tables as the ImageIO writer (Annex K quantisers scaled by quality, standard Huffman tables), JFIF,
+ *   4:2:0 or 4:4:4; AAN float DCT with the quantiser folded into the scale factors
+ * - Stripe buffers (blocks, coefficients, output bytes) belong to the per-thread encoder and are reused between
+ *   frames; a stripe is forwarded to the sink as soon as it and all stripes before it are done
+ * - Only for TYPE_INT_RGB images with a plain raster (what the resampler produces); see {@link #supports}
+ */
+final class VisionParallelJpeg {
+
+    // Below this many pixels the image is coded as a single stripe on the calling thread.
+    private static final int PARALLEL_MIN_PIXELS = 256 * 256;
+
+    private static final int PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("CraftMate-VisionJpeg-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }, null, false);
+
+    private static final ThreadLocal<VisionParallelJpeg> LOCAL = ThreadLocal.withInitial(VisionParallelJpeg::new);
+
+    /** Zig-zag position -> natural (row-major) index. */
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private static final float[] AAN = {
+            1.0f, 1.387039845f, 1.306562965f, 1.175875602f, 1.0f, 0.785694958f, 0.541196100f, 0.275899379f
+    };
+
+    private static final Huffman DC_LUMA = new Huffman(JPEGHuffmanTable.StdDCLuminance);
+    private static final Huffman AC_LUMA = new Huffman(JPEGHuffmanTable.StdACLuminance);
+    private static final Huffman DC_CHROMA = new Huffman(JPEGHuffmanTable.StdDCChrominance);
+    private static final Huffman AC_CHROMA = new Huffman(JPEGHuffmanTable.StdACChrominance);
+
+    // Per-thread state (the calling vision thread owns the encoder; stripe i is only touched by its task).
+    private final ByteSink out = new ByteSink(64 * 1024);
+    private Stripe[] stripes = new Stripe[0];
+    private int quality = -1;
+    private final int[] qLuma = new int[64];
+    private final int[] qChroma = new int[64];
+    private final float[] fLuma = new float[64];
+    private final float[] fChroma = new float[64];
+
+    private VisionParallelJpeg() {}
+
+    /** Can this image be encoded here (TYPE_INT_RGB, raster is the whole buffer)? */
+    static boolean supports(BufferedImage img) {
+        if (img == null || img.getType() != BufferedImage.TYPE_INT_RGB) return false;
+        WritableRaster r = img.getRaster();
+        if (!(r.getDataBuffer() instanceof DataBufferInt) || !(r.getSampleModel() instanceof SinglePixelPackedSampleModel)) return false;
+        SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) r.getSampleModel();
+        return r.getSampleModelTranslateX() == 0 && r.getSampleModelTranslateY() == 0
+                && sm.getScanlineStride() == img.getWidth() && r.getDataBuffer().getOffset() == 0;
+    }
+
+    /** Encode with the calling thread's encoder; bytes also go to {@code sink} (may be null) as stripes finish. */
+    static byte[] encode(BufferedImage img, int qualityPercent, boolean chroma420, OutputStream sink) throws Exception {
+        return LOCAL.get().write(img, qualityPercent, chroma420, sink, 0);
+    }
+
+    /** As {@link #encode}, split into (at most) {@code stripeCount} stripes regardless of size and cores (tests). */
+    static byte[] encode(BufferedImage img, int qualityPercent, boolean chroma420, OutputStream sink, int stripeCount) throws Exception {
+        return LOCAL.get().write(img, qualityPercent, chroma420, sink, Math.max(1, stripeCount));
+    }
+
+    private byte[] write(BufferedImage img, int qualityPercent, boolean chroma420, OutputStream sink, int forceStripes) throws Exception {
+        final int w = img.getWidth();
+        final int h = img.getHeight();
+        final int[] px = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        setQuality(Math.max(1, Math.min(100, qualityPercent)));
+
+        final int mcu = chroma420 ? 16 : 8;
+        final int mcuCols = (w + mcu - 1) / mcu;
+        final int mcuRows = (h + mcu - 1) / mcu;
+
+        // Stripe height in MCU rows; the restart interval (16 bits) must hold one stripe.
+        int count = 1;
+        if (forceStripes > 0) count = Math.min(mcuRows, forceStripes);
+        else if (PARALLELISM >= 2 && (long) w * h >= PARALLEL_MIN_PIXELS) count = Math.min(mcuRows, PARALLELISM * 2);
+        int rowsPer = (mcuRows + count - 1) / count;
+        while (rowsPer > 1 && (long) rowsPer * mcuCols > 0xFFFF) rowsPer--;
+        count = (mcuRows + rowsPer - 1) / rowsPer;
+        if (stripes.length < count) {
+            Stripe[] grown = Arrays.copyOf(stripes, count);
+            for (int i = stripes.length; i < count; i++) grown[i] = new Stripe();
+            stripes = grown;
+        }
+
+        out.rewind(sink);
+        writeHeaders(out, w, h, chroma420, count > 1 ? rowsPer * mcuCols : 0);
+
+        if (count == 1) {
+            Stripe s = stripes[0];
+            s.encode(px, w, h, chroma420, 0, mcuRows, mcuCols, fLuma, fChroma);
+            out.write(s.buf, 0, s.len);
+        } else {
+            List<Future<?>> parts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final Stripe s = stripes[i];
+                final int from = i * rowsPer;
+                final int to = Math.min(mcuRows, from + rowsPer);
+                parts.add(POOL.submit(() -> s.encode(px, w, h, chroma420, from, to, mcuCols, fLuma, fChroma)));
+            }
+            try {
+                for (int i = 0; i < count; i++) {
+                    parts.get(i).get();
+                    if (i > 0) {
+                        out.write(0xFF);
+                        out.write(0xD0 + ((i - 1) & 7));
+                    }
+                    Stripe s = stripes[i];
+                    out.write(s.buf, 0, s.len);
+                }
+            } finally {
+                // A failed stripe or sink must not leave tasks writing into buffers the next frame reuses.
+                for (Future<?> f : parts) {
+                    try { f.get(); } catch (Throwable ignored) {}
+                }
+            }
+        }
+        out.write(0xFF);
+        out.write(0xD9);
+        out.sink = null;
+        return out.toByteArray();
+    }
+
+    private void setQuality(int q) {
+        if (q == quality) return;
+        quality = q;
+        // IJG scale (percent), as the ImageIO writer derives it from its quality setting.
+        float scale = (q < 50 ? 5000f / q : 200f - 2f * q) / 100f;
+        int[] l = JPEGQTable.K1Luminance.getScaledInstance(scale, true).getTable();
+        int[] c = JPEGQTable.K2Chrominance.getScaledInstance(scale, true).getTable();
+        System.arraycopy(l, 0, qLuma, 0, 64);
+        System.arraycopy(c, 0, qChroma, 0, 64);
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                int i = row * 8 + col;
+                fLuma[i] = 1f / (qLuma[i] * AAN[row] * AAN[col] * 8f);
+                fChroma[i] = 1f / (qChroma[i] * AAN[row] * AAN[col] * 8f);
+            }
+        }
+    }
+
+    private void writeHeaders(ByteSink o, int w, int h, boolean chroma420, int restartInterval) throws IOException {
+        o.write(0xFF); o.write(0xD8); // SOI
+
+        // APP0 JFIF 1.01, no density, no thumbnail
+        o.write(0xFF); o.write(0xE0); o.write16(16);
+        o.write('J'); o.write('F'); o.write('I'); o.write('F'); o.write(0);
+        o.write(1); o.write(1); o.write(0); o.write16(1); o.write16(1); o.write(0); o.write(0);
+
+        // DQT: both tables, zig-zag order, 8-bit
+        o.write(0xFF); o.write(0xDB); o.write16(2 + 2 * 65);
+        o.write(0);
+        for (int i = 0; i < 64; i++) o.write(qLuma[ZIGZAG[i]]);
+        o.write(1);
+        for (int i = 0; i < 64; i++) o.write(qChroma[ZIGZAG[i]]);
+
+        // SOF0
+        o.write(0xFF); o.write(0xC0); o.write16(17);
+        o.write(8); o.write16(h); o.write16(w); o.write(3);
+        o.write(1); o.write(chroma420 ? 0x22 : 0x11); o.write(0);
+        o.write(2); o.write(0x11); o.write(1);
+        o.write(3); o.write(0x11); o.write(1);
+
+        // DHT: DC/AC luma (0), DC/AC chroma (1)
+        int len = 2 + DC_LUMA.specLength() + AC_LUMA.specLength() + DC_CHROMA.specLength() + AC_CHROMA.specLength();
+        o.write(0xFF); o.write(0xC4); o.write16(len);
+        DC_LUMA.writeSpec(o, 0x00);
+        AC_LUMA.writeSpec(o, 0x10);
+        DC_CHROMA.writeSpec(o, 0x01);
+        AC_CHROMA.writeSpec(o, 0x11);
+
+        if (restartInterval > 0) {
+            o.write(0xFF); o.write(0xDD); o.write16(4); o.write16(restartInterval);
+        }
+
+        // SOS
+        o.write(0xFF); o.write(0xDA); o.write16(12); o.write(3);
+        o.write(1); o.write(0x00);
+        o.write(2); o.write(0x11);
+        o.write(3); o.write(0x11);
+        o.write(0); o.write(63); o.write(0);
+    }
+
+    /** One stripe: its blocks, coefficients and entropy-coded bytes. */
+    private static final class Stripe {
+        final float[] y = new float[4 * 64];
+        final float[] cb = new float[64];
+        final float[] cr = new float[64];
+        final float[] cbFull = new float[4 * 64];
+        final float[] crFull = new float[4 * 64];
+        final int[] coef = new int[64];
+        byte[] buf = new byte[16 * 1024];
+        int len;
+        long bits;
+        int nbits;
+
+        Void encode(int[] px, int w, int h, boolean chroma420, int fromRow, int toRow, int mcuCols,
+                    float[] fLuma, float[] fChroma) {
+            len = 0;
+            bits = 0L;
+            nbits = 0;
+            int dcY = 0, dcCb = 0, dcCr = 0;
+            int mcu = chroma420 ? 16 : 8;
+            for (int my = fromRow; my < toRow; my++) {
+                for (int mx = 0; mx < mcuCols; mx++) {
+                    int x0 = mx * mcu, y0 = my * mcu;
+                    if (chroma420) {
+                        load(px, w, h, x0, y0, 16, y, cbFull, crFull);
+                        for (int b = 0; b < 4; b++) {
+                            dcY = block(y, b * 64, fLuma, dcY, DC_LUMA, AC_LUMA);
+                        }
+                        subsample(cbFull, cb);
+                        subsample(crFull, cr);
+                    } else {
+                        load(px, w, h, x0, y0, 8, y, cb, cr);
+                        dcY = block(y, 0, fLuma, dcY, DC_LUMA, AC_LUMA);
+                    }
+                    dcCb = block(cb, 0, fChroma, dcCb, DC_CHROMA, AC_CHROMA);
+                    dcCr = block(cr, 0, fChroma, dcCr, DC_CHROMA, AC_CHROMA);
+                }
+            }
+            // Pad the last byte with 1 bits.
+            if (nbits > 0) put(0xFF, 8 - nbits);
+            return null;
+        }
+
+        /**
+         * Level-shifted YCbCr of a size x size square (edge pixels repeated past the image), as 8x8 blocks in
+         * raster order (four of them for 16x16).
+         */
+        private static void load(int[] px, int w, int h, int x0, int y0, int size, float[] yOut, float[] cbOut, float[] crOut) {
+            for (int dy = 0; dy < size; dy++) {
+                int sy = Math.min(h - 1, y0 + dy);
+                int row = sy * w;
+                for (int dx = 0; dx < size; dx++) {
+                    int sx = Math.min(w - 1, x0 + dx);
+                    int p = px[row + sx];
+                    float r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+                    int i = ((dy >> 3) * 2 + (dx >> 3)) * 64 + (dy & 7) * 8 + (dx & 7);
+                    if (size == 8) i = dy * 8 + dx;
+                    yOut[i] = 0.299f * r + 0.587f * g + 0.114f * b - 128f;
+                    cbOut[i] = -0.168736f * r - 0.331264f * g + 0.5f * b;
+                    crOut[i] = 0.5f * r - 0.418688f * g - 0.081312f * b;
+                }
+            }
+        }
+
+        /** 16x16 (four raster-order blocks) -> 8x8 by 2x2 averaging. */
+        private static void subsample(float[] full, float[] out) {
+            for (int oy = 0; oy < 8; oy++) {
+                for (int ox = 0; ox < 8; ox++) {
+                    int dy = oy * 2, dx = ox * 2;
+                    int base = ((dy >> 3) * 2 + (dx >> 3)) * 64;
+                    int i = base + (dy & 7) * 8 + (dx & 7);
+                    out[oy * 8 + ox] = (full[i] + full[i + 1] + full[i + 8] + full[i + 9]) * 0.25f;
+                }
+            }
+        }
+
+        /** DCT + quantise + Huffman-code one block; returns its DC (the next predictor). */
+        private int block(float[] d, int off, float[] fq, int prevDc, Huffman dcT, Huffman acT) {
+            fdct(d, off);
+            for (int i = 0; i < 64; i++) coef[i] = Math.round(d[off + i] * fq[i]);
+
+            int dc = coef[0];
+            int diff = dc - prevDc;
+            int s = category(diff);
+            put(dcT.code[s], dcT.size[s]);
+            if (s > 0) put(diff < 0 ? diff - 1 : diff, s);
+
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int v = coef[ZIGZAG[k]];
+                if (v == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    put(acT.code[0xF0], acT.size[0xF0]);
+                    run -= 16;
+                }
+                s = category(v);
+                int sym = (run << 4) | s;
+                put(acT.code[sym], acT.size[sym]);
+                put(v < 0 ? v - 1 : v, s);
+                run = 0;
+            }
+            if (run > 0) put(acT.code[0x00], acT.size[0x00]);
+            return dc;
+        }
+
+        /** AAN float forward DCT in place (output scaled by 8 * AAN[row] * AAN[col]). */
+        private static void fdct(float[] d, int off) {
+            for (int p = off; p < off + 64; p += 8) pass(d, p, 1);
+            for (int p = off; p < off + 8; p++) pass(d, p, 8);
+        }
+
+        private static void pass(float[] d, int p, int s) {
+            float t0 = d[p] + d[p + 7 * s], t7 = d[p] - d[p + 7 * s];
+            float t1 = d[p + s] + d[p + 6 * s], t6 = d[p + s] - d[p + 6 * s];
+            float t2 = d[p + 2 * s] + d[p + 5 * s], t5 = d[p + 2 * s] - d[p + 5 * s];
+            float t3 = d[p + 3 * s] + d[p + 4 * s], t4 = d[p + 3 * s] - d[p + 4 * s];
+
+            float t10 = t0 + t3, t13 = t0 - t3, t11 = t1 + t2, t12 = t1 - t2;
+            d[p] = t10 + t11;
+            d[p + 4 * s] = t10 - t11;
+            float z1 = (t12 + t13) * 0.707106781f;
+            d[p + 2 * s] = t13 + z1;
+            d[p + 6 * s] = t13 - z1;
+
+            t10 = t4 + t5;
+            t11 = t5 + t6;
+            t12 = t6 + t7;
+            float z5 = (t10 - t12) * 0.382683433f;
+            float z2 = 0.541196100f * t10 + z5;
+            float z4 = 1.306562965f * t12 + z5;
+            float z3 = t11 * 0.707106781f;
+            float z11 = t7 + z3, z13 = t7 - z3;
+            d[p + 5 * s] = z13 + z2;
+            d[p + 3 * s] = z13 - z2;
+            d[p + s] = z11 + z4;
+            d[p + 7 * s] = z11 - z4;
+        }
+
+        private static int category(int v) {
+            v = Math.abs(v);
+            return v == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(v);
+        }
+
+        /** Append the low {@code n} bits of {@code value}, MSB first, with 0xFF byte stuffing. */
+        private void put(int value, int n) {
+            bits = (bits << n) | (value & ((1 << n) - 1));
+            nbits += n;
+            while (nbits >= 8) {
+                nbits -= 8;
+                int b = (int) (bits >> nbits) & 0xFF;
+                if (len + 2 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                buf[len++] = (byte) b;
+                if (b == 0xFF) buf[len++] = 0;
+            }
+        }
+    }
+
+    /** Code/size per symbol of a standard Huffman table. */
+    private static final class Huffman {
+        final int[] code = new int[256];
+        final int[] size = new int[256];
+        final short[] lengths;
+        final short[] values;
+
+        Huffman(JPEGHuffmanTable t) {
+            lengths = t.getLengths();
+            values = t.getValues();
+            int c = 0, k = 0;
+            for (int len = 1; len <= 16; len++) {
+                for (int i = 0; i < lengths[len - 1]; i++) {
+                    int sym = values[k++] & 0xFF;
+                    code[sym] = c++;
+                    size[sym] = len;
+                }
+                c <<= 1;
+            }
+        }
+
+        int specLength() {
+            return 1 + 16 + values.length;
+        }
+
+        void writeSpec(ByteSink o, int classAndId) throws IOException {
+            o.write(classAndId);
+            for (short l : lengths) o.write(l);
+            for (short v : values) o.write(v);
+        }
+    }
+
+    /** Growable byte buffer that is rewound (not reallocated) between frames, optionally mirrored to a sink. */
+    private static final class ByteSink {
+        private byte[] buf;
+        private int count = 0;
+        OutputStream sink = null;
+
+        ByteSink(int initial) {
+            this.buf = new byte[initial];
+        }
+
+        void rewind(OutputStream sink) {
+            this.sink = sink;
+            count = 0;
+        }
+
+        void write(int b) throws IOException {
+            if (count == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[count++] = (byte) b;
+            if (sink != null) sink.write(b);
+        }
+
+        void write16(int v) throws IOException {
+            write((v >> 8) & 0xFF);
+            write(v & 0xFF);
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            if (count + len > buf.length) buf = Arrays.copyOf(buf, Math.max(count + len, buf.length * 2));
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+            if (sink != null) sink.write(b, off, len);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+}
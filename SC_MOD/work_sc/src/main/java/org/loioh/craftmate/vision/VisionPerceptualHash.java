@@ -0,0 +1,80 @@
+package org.loioh.craftmate.vision;
+
+/**
+ * Perceptual frame dedupe (dHash).
+ * - 9x8 grayscale thumbnail, one bit per horizontal neighbour comparison -> 64-bit hash
+ * - Robust to pixel noise / tiny camera jitter, unlike the SHA-256 frame_hash
+ * - A frame within maxDistance (Hamming) of any of the last HISTORY sent frames is a near-duplicate
+ */
+final class VisionPerceptualHash {
+
+    private VisionPerceptualHash() {}
+
+    private static final int HISTORY = 8;
+
+    // Cap samples per thumbnail cell so hashing stays cheap on big frames.
+    private static final int MAX_SAMPLES_PER_AXIS = 8;
+
+    private static final long[] SENT = new long[HISTORY];
+    private static int sentCount = 0;
+    private static int sentNext = 0;
+
+    /** dHash of an RGBA frame (top-left origin). */
+    static long dHash(byte[] rgba, int w, int h) {
+        final int tw = 9;
+        final int th = 8;
+        int[] gray = new int[tw * th];
+
+        for (int ty = 0; ty < th; ty++) {
+            int y0 = ty * h / th;
+            int y1 = Math.max(y0 + 1, (ty + 1) * h / th);
+            int ystep = Math.max(1, (y1 - y0) / MAX_SAMPLES_PER_AXIS);
+            for (int tx = 0; tx < tw; tx++) {
+                int x0 = tx * w / tw;
+                int x1 = Math.max(x0 + 1, (tx + 1) * w / tw);
+                int xstep = Math.max(1, (x1 - x0) / MAX_SAMPLES_PER_AXIS);
+                long sum = 0;
+                int n = 0;
+                for (int y = y0; y < y1; y += ystep) {
+                    int row = y * w;
+                    for (int x = x0; x < x1; x += xstep) {
+                        int si = (row + x) * 4;
+                        // Integer Rec.601 luma
+                        sum += (77 * (rgba[si] & 0xFF) + 150 * (rgba[si + 1] & 0xFF) + 29 * (rgba[si + 2] & 0xFF)) >> 8;
+                        n++;
+                    }
+                }
+                gray[ty * tw + tx] = n == 0 ? 0 : (int) (sum / n);
+            }
+        }
+
+        long hash = 0L;
+        for (int ty = 0; ty < th; ty++) {
+            for (int tx = 0; tx < tw - 1; tx++) {
+                hash <<= 1;
+                if (gray[ty * tw + tx] > gray[ty * tw + tx + 1]) hash |= 1L;
+            }
+        }
+        return hash;
+    }
+
+    /** True if {@code hash} is within maxDistance bits of a recently sent frame. maxDistance < 0 disables. */
+    static synchronized boolean isNearDuplicate(long hash, int maxDistance) {
+        if (maxDistance < 0) return false;
+        for (int i = 0; i < sentCount; i++) {
+            if (Long.bitCount(SENT[i] ^ hash) <= maxDistance) return true;
+        }
+        return false;
+    }
+
+    /** Record a frame that was actually sent. */
+    static synchronized void remember(long hash) {
+        SENT[sentNext] = hash;
+        sentNext = (sentNext + 1) % HISTORY;
+        if (sentCount < HISTORY) sentCount++;
+    }
+
+    static String hex(long hash) {
+        return String.format("%016x", hash);
+    }
+}
@@ -0,0 +1,186 @@
+package org.loioh.craftmate.vision;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import org.lwjgl.system.MemoryUtil;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bulk pixel helpers for the vision pipeline.
+ * - NativeImage: copy straight from the native pointer (RGBA bytes already match our layout)
+ * - glReadPixels BGRA: swizzle + flip row-wise with int ops instead of 4x buf.get(i) per pixel
+ * - Reuses the readback direct buffer and a small pool of RGBA frame arrays
+ */
+final class VisionPixels {
+
+    private VisionPixels() {}
+
+    // -------------------------
+    // Pooled RGBA frames (render thread acquires, vision worker releases)
+    // -------------------------
+    private static final int POOL_MAX = 3;
+    private static final ArrayDeque<byte[]> POOL = new ArrayDeque<>();
+
+    static byte[] acquire(int len) {
+        synchronized (POOL) {
+            for (Iterator<byte[]> it = POOL.iterator(); it.hasNext(); ) {
+                byte[] b = it.next();
+                if (b.length == len) {
+                    it.remove();
+                    return b;
+                }
+            }
+        }
+        return new byte[len];
+    }
+
+    static void release(byte[] b) {
+        if (b == null) return;
+        synchronized (POOL) {
+            if (POOL.size() >= POOL_MAX) POOL.pollFirst();
+            POOL.addLast(b);
+        }
+    }
+
+    // -------------------------
+    // Readback direct buffer (render thread only), grown on demand instead of allocateDirect per capture
+    // -------------------------
+    private static ByteBuffer readback = null;
+
+    static ByteBuffer readbackBuffer(int bytes) {
+        ByteBuffer b = readback;
+        if (b == null || b.capacity() < bytes) {
+            b = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            readback = b;
+        }
+        b.clear();
+        b.limit(bytes);
+        return b;
+    }
+
+    /** RGBA bytes -> packed 0xRRGGBB ints (TYPE_INT_RGB raster), {@code n} pixels, alpha dropped. */
+    static void packRgb(byte[] rgba, int[] dst, int n) {
+        for (int i = 0, p = 0; i < n; i++, p += 4) {
+            dst[i] = (rgba[p] & 0xFF) << 16 | (rgba[p + 1] & 0xFF) << 8 | (rgba[p + 2] & 0xFF);
+        }
+    }
+
+    /** RGBA rows, bottom-left origin (GL) -> top-left origin. */
+    static void copyRowsFlipped(ByteBuffer src, byte[] dst, int w, int h) {
+        int stride = w * 4;
+        for (int y = 0; y < h; y++) {
+            src.get((h - 1 - y) * stride, dst, y * stride, stride);
+        }
+    }
+
+    /** BGRA rows, bottom-left origin (GL) -> RGBA, top-left origin. */
+    static void swizzleBgraFlipped(ByteBuffer src, byte[] dst, int w, int h) {
+        ByteBuffer s = src.duplicate();
+        s.position(0);
+        s.limit(w * h * 4);
+        IntBuffer in = s.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        IntBuffer out = ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            in.get((h - 1 - y) * w, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int p = row[x]; // little-endian BGRA = 0xAARRGGBB
+                row[x] = (p & 0xFF00FF00) | ((p >>> 16) & 0xFF) | ((p & 0xFF) << 16);
+            }
+            out.put(y * w, row, 0, w);
+        }
+    }
+
+    /**
+     * Copy a NativeImage into a pooled RGBA array (top-left origin; optionally flipped).
+     * Uses the native pixel pointer when it can be resolved, else falls back to getPixelRGBA.
+     */
+    static byte[] extractRgba(NativeImage img, boolean flipY) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int len = w * h * 4;
+        byte[] out = acquire(len);
+
+        long ptr = nativePointer(img, len);
+        if (ptr != 0L) {
+            ByteBuffer src = MemoryUtil.memByteBuffer(ptr, len);
+            if (flipY) {
+                copyRowsFlipped(src, out, w, h);
+            } else {
+                src.get(0, out, 0, len);
+            }
+            return out;
+        }
+
+        // getPixelRGBA returns 0xAABBGGRR, i.e. RGBA bytes when stored little-endian
+        IntBuffer o = ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        for (int y = 0; y < h; y++) {
+            int base = (flipY ? (h - 1 - y) : y) * w;
+            for (int x = 0; x < w; x++) {
+                o.put(base + x, img.getPixelRGBA(x, y));
+            }
+        }
+        return out;
+    }
+
+    // -------------------------
+    // NativeImage pointer lookup (resolved once; field names differ between dev and obf runtimes)
+    // -------------------------
+    private static volatile List<MethodHandle> longGetters = null;
+
+    private static List<MethodHandle> longGetters() {
+        List<MethodHandle> g = longGetters;
+        if (g != null) return g;
+        g = new ArrayList<>();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (Field f : NativeImage.class.getDeclaredFields()) {
+                if (f.getType() != long.class || Modifier.isStatic(f.getModifiers())) continue;
+                f.setAccessible(true);
+                g.add(lookup.unreflectGetter(f));
+            }
+        } catch (Throwable ignored) {
+            g.clear();
+        }
+        longGetters = g;
+        return g;
+    }
+
+    /**
+     * NativeImage keeps two longs: the pixel pointer and its byte size.
+     * We pick the one that is not the expected size; anything ambiguous returns 0 (use the slow path).
+     */
+    private static long nativePointer(NativeImage img, long expectedSize) {
+        try {
+            if (img.format() != NativeImage.Format.RGBA) return 0L;
+            boolean sawSize = false;
+            long ptr = 0L;
+            int candidates = 0;
+            for (MethodHandle getter : longGetters()) {
+                long v = (long) getter.invoke(img);
+                if (v == expectedSize && !sawSize) {
+                    sawSize = true;
+                    continue;
+                }
+                if (v != 0L) {
+                    ptr = v;
+                    candidates++;
+                }
+            }
+            return (sawSize && candidates == 1) ? ptr : 0L;
+        } catch (Throwable t) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.loioh.craftmate.vision;
+
+import org.loioh.craftmate.CraftMate;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Multi-lane priority queue for pending vision captures (replaces the single PENDING slot).
+ * - Lanes in priority order: chat > backend request > danger > speculative (chat prep) > ambient
+ * - Per-lane depth limits; a request with the same reason as one already queued in its lane replaces it
+ *   in place (coalescing), so a burst collapses into one capture of the latest state
+ * - The chat lane never coalesces and never drops: every chat send is its own capture (the duplicate hook of one
+ *   send is dropped by VisionCapture.forceCapture), and the lane grows past its depth instead of losing one
+ * - When the queue is over its total budget, ambient is shed first; chat is never shed
+ * - Counts offered / coalesced / dropped / taken per lane for the debug overlay
+ */
+final class VisionQueue {
+
+    enum Lane {
+        CHAT(3),
+        BACKEND(3),
+        DANGER(2),
+        SPECULATIVE(1),
+        AMBIENT(1);
+
+        final int depth;
+
+        Lane(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    private static final int TOTAL_MAX = 6;
+
+    private static final Lane[] LANES = Lane.values();
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<VisionCapture.Request>[] lanes = new ArrayDeque[LANES.length];
+
+    private final int[] offered = new int[LANES.length];
+    private final int[] coalesced = new int[LANES.length];
+    private final int[] dropped = new int[LANES.length];
+    private final int[] taken = new int[LANES.length];
+    private int size = 0;
+
+    VisionQueue() {
+        for (int i = 0; i < lanes.length; i++) lanes[i] = new ArrayDeque<>();
+    }
+
+    /** Lane for a request reason ("chat", "chat_prep", "tactical", "danger", "activity", ...). */
+    static Lane laneFor(String reason, boolean forced) {
+        if ("chat".equalsIgnoreCase(reason)) return Lane.CHAT;
+        if ("chat_prep".equalsIgnoreCase(reason)) return Lane.SPECULATIVE;
+        if (forced) return Lane.BACKEND;
+        if ("danger".equalsIgnoreCase(reason)) return Lane.DANGER;
+        return Lane.AMBIENT;
+    }
+
+    /** Enqueue; returns false only if the request itself was shed. */
+    synchronized boolean offer(VisionCapture.Request req) {
+        int li = req.lane.ordinal();
+        offered[li]++;
+        ArrayDeque<VisionCapture.Request> q = lanes[li];
+
+        // Coalesce: same reason already waiting in this lane -> newest request takes its place.
+        if (replaceSameReason(q, req)) {
+            coalesced[li]++;
+            return true;
+        }
+
+        if (q.size() >= req.lane.depth && req.lane != Lane.CHAT) {
+            VisionCapture.Request old = q.pollFirst();
+            size--;
+            noteDrop(old, "lane full");
+        }
+        q.addLast(req);
+        size++;
+
+        // Over budget: shed from the lowest-priority non-empty lane (may be the request we just added); never chat.
+        while (size > TOTAL_MAX) {
+            int i = lanes.length - 1;
+            while (i > Lane.CHAT.ordinal() && lanes[i].isEmpty()) i--;
+            if (i == Lane.CHAT.ordinal()) break; // only chat left: let it exceed the budget
+            VisionCapture.Request shed = lanes[i].pollFirst();
+            size--;
+            noteDrop(shed, "over budget");
+            if (shed == req) return false;
+        }
+        return true;
+    }
+
+    /** Put a request that could not be served yet back at the front of its lane. */
+    synchronized void requeue(VisionCapture.Request req) {
+        lanes[req.lane.ordinal()].addFirst(req);
+        size++;
+    }
+
+    /** Highest-priority request without removing it (null if empty). */
+    synchronized VisionCapture.Request peek() {
+        for (ArrayDeque<VisionCapture.Request> q : lanes) {
+            if (!q.isEmpty()) return q.peekFirst();
+        }
+        return null;
+    }
+
+    /** Remove {@code req} if it is still the head of its lane. */
+    synchronized boolean take(VisionCapture.Request req) {
+        ArrayDeque<VisionCapture.Request> q = lanes[req.lane.ordinal()];
+        if (q.peekFirst() != req) return false;
+        q.pollFirst();
+        size--;
+        taken[req.lane.ordinal()]++;
+        return true;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /** Short status line: lane=queued/taken/dropped(+coalesced). */
+    synchronized String describe() {
+        StringBuilder sb = new StringBuilder("queue");
+        for (Lane l : LANES) {
+            int i = l.ordinal();
+            sb.append(' ').append(l.name().toLowerCase()).append('=')
+                    .append(lanes[i].size()).append('/').append(taken[i]).append('/').append(dropped[i]);
+            if (coalesced[i] > 0) sb.append("(+").append(coalesced[i]).append(')');
+        }
+        return sb.toString();
+    }
+
+    private boolean replaceSameReason(ArrayDeque<VisionCapture.Request> q, VisionCapture.Request req) {
+        if (q.isEmpty() || req.lane == Lane.CHAT) return false;
+        // ArrayDeque has no set(); rebuild in order (lanes hold at most a handful of entries).
+        boolean replaced = false;
+        ArrayDeque<VisionCapture.Request> copy = new ArrayDeque<>(q.size());
+        for (Iterator<VisionCapture.Request> it = q.iterator(); it.hasNext(); ) {
+            VisionCapture.Request r = it.next();
+            if (!replaced && r.reason.equalsIgnoreCase(req.reason)) {
+                copy.addLast(req);
+                replaced = true;
+            } else {
+                copy.addLast(r);
+            }
+        }
+        if (replaced) {
+            q.clear();
+            q.addAll(copy);
+        }
+        return replaced;
+    }
+
+    private void noteDrop(VisionCapture.Request r, String why) {
+        if (r == null) return;
+        dropped[r.lane.ordinal()]++;
+        try {
+            CraftMate.vLog("Vision request dropped lane=" + r.lane + " reason=" + r.reason + " (" + why + ")");
+        } catch (Throwable ignored) {}
+    }
+}
@@ -0,0 +1,140 @@
+package org.loioh.craftmate.vision;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/**
+ * Area-averaging (box) resampler for vision frames.
+ * - Each output pixel is the mean of the source pixels it covers, so small details don't alias away
+ *   like with nearest-neighbour sampling
+ * - Writes packed RGB straight into the DataBufferInt of a pooled TYPE_INT_RGB image (no setRGB)
+ * - Large frames are split into row stripes across a small daemon ForkJoin pool
+ */
+final class VisionResampler {
+
+    private VisionResampler() {}
+
+    // Below this many source pixels the stripe hand-off costs more than it saves.
+    private static final int PARALLEL_MIN_PIXELS = 512 * 512;
+
+    private static final int PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("CraftMate-VisionResample-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }, null, false);
+
+    // Output images per calling thread, reused while the size stays the same.
+    // Two slots so alternating sizes (context + fovea crop) don't reallocate every frame.
+    private static final ThreadLocal<BufferedImage[]> OUT = ThreadLocal.withInitial(() -> new BufferedImage[2]);
+
+    /**
+     * Resample RGBA (top-left origin) to outW x outH RGB (downscale only: outW <= w, outH <= h).
+     * The returned image is pooled: it is only valid until the next calls on the same thread reuse its slot.
+     */
+    static BufferedImage resample(byte[] rgba, int w, int h, int outW, int outH) throws Exception {
+        BufferedImage img = pooled(outW, outH);
+        int[] dst = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+        // Source span [b[i], b[i+1]) per output column/row; every source pixel lands in exactly one box.
+        int[] xs = bounds(w, outW);
+        int[] ys = bounds(h, outH);
+
+        if ((long) w * h < PARALLEL_MIN_PIXELS || PARALLELISM < 2 || outH < PARALLELISM * 2) {
+            resampleRows(rgba, w, dst, outW, xs, ys, 0, outH);
+            return img;
+        }
+
+        int stripes = PARALLELISM * 2;
+        int per = (outH + stripes - 1) / stripes;
+        List<Callable<Void>> tasks = new ArrayList<>(stripes);
+        for (int y0 = 0; y0 < outH; y0 += per) {
+            final int from = y0;
+            final int to = Math.min(outH, y0 + per);
+            tasks.add(() -> {
+                resampleRows(rgba, w, dst, outW, xs, ys, from, to);
+                return null;
+            });
+        }
+        for (Future<Void> f : POOL.invokeAll(tasks)) f.get();
+        return img;
+    }
+
+    private static BufferedImage pooled(int w, int h) {
+        BufferedImage[] slots = OUT.get();
+        for (int i = 0; i < slots.length; i++) {
+            BufferedImage b = slots[i];
+            if (b != null && b.getWidth() == w && b.getHeight() == h) {
+                // Most recently used first.
+                if (i != 0) {
+                    slots[i] = slots[0];
+                    slots[0] = b;
+                }
+                return b;
+            }
+        }
+        BufferedImage b = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        slots[1] = slots[0];
+        slots[0] = b;
+        return b;
+    }
+
+    private static int[] bounds(int src, int out) {
+        int[] b = new int[out + 1];
+        for (int i = 0; i <= out; i++) b[i] = (int) ((long) i * src / out);
+        return b;
+    }
+
+    private static void resampleRows(byte[] rgba, int w, int[] dst, int outW, int[] xs, int[] ys, int fromY, int toY) {
+        int[] sumR = new int[outW];
+        int[] sumG = new int[outW];
+        int[] sumB = new int[outW];
+
+        for (int oy = fromY; oy < toY; oy++) {
+            int sy0 = ys[oy];
+            int sy1 = ys[oy + 1];
+            int rows = sy1 - sy0;
+
+            Arrays.fill(sumR, 0);
+            Arrays.fill(sumG, 0);
+            Arrays.fill(sumB, 0);
+
+            // Accumulate column sums for this output row, one source row at a time (sequential reads).
+            for (int sy = sy0; sy < sy1; sy++) {
+                int row = sy * w * 4;
+                for (int ox = 0; ox < outW; ox++) {
+                    int sx0 = xs[ox];
+                    int sx1 = xs[ox + 1];
+                    int r = 0, g = 0, b = 0;
+                    for (int si = row + sx0 * 4, end = row + sx1 * 4; si < end; si += 4) {
+                        r += rgba[si] & 0xFF;
+                        g += rgba[si + 1] & 0xFF;
+                        b += rgba[si + 2] & 0xFF;
+                    }
+                    sumR[ox] += r;
+                    sumG[ox] += g;
+                    sumB[ox] += b;
+                }
+            }
+
+            int base = oy * outW;
+            for (int ox = 0; ox < outW; ox++) {
+                int n = rows * (xs[ox + 1] - xs[ox]);
+                int half = n >> 1;
+                int r = (sumR[ox] + half) / n;
+                int g = (sumG[ox] + half) / n;
+                int b = (sumB[ox] + half) / n;
+                dst[base + ox] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.loioh.craftmate.vision;
+
+import org.loioh.craftmate.CraftMate;
+
+import java.util.Arrays;
+
+/**
+ * Per-stage timing of the vision pipeline (capture -> reply), for finding what a slow capture spent its time on.
+ * - Each stage keeps the last WINDOW samples (System.nanoTime durations, bytes in, bytes out) in fixed rings
+ * - min / mean / p95 / max and mean bytes are computed from the ring on demand (overlay, log dump)
+ * - Any thread may record; each stage has its own lock
+ */
+public final class VisionStats {
+
+    private VisionStats() {}
+
+    public enum Stage {
+        READBACK("readback"),   // render thread: framebuffer / GPU downscale read into memory
+        EXTRACT("extract"),     // render thread: NativeImage -> RGBA bytes
+        DEDUPE("dedupe"),       // perceptual hash
+        DESCRIPTOR("desc"),     // compact descriptor instead of a JPEG
+        DOWNSCALE("downscale"), // area-averaged context image
+        ENCODE("jpeg"),         // context JPEG (includes the socket write when streamed)
+        BASE64("b64"),          // base64 + sha256 of a buffered JPEG
+        FOVEA("fovea"),         // crop + resample + encode of the detail crop
+        JSON("json"),           // request body built and serialised
+        SIGN("sign"),           // body hash + HMAC
+        HTTP("http");           // request handed to the client -> reply
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final int WINDOW = 128;
+    private static final long OVERLAY_REFRESH_MS = 500L;
+
+    private static final class Ring {
+        final long[] nanos = new long[WINDOW];
+        final long[] in = new long[WINDOW];
+        final long[] out = new long[WINDOW];
+        int count = 0;
+        int next = 0;
+        long total = 0L;
+    }
+
+    private static final Ring[] RINGS = new Ring[Stage.values().length];
+    static {
+        for (int i = 0; i < RINGS.length; i++) RINGS[i] = new Ring();
+    }
+
+    private static volatile String overlay1 = "";
+    private static volatile String overlay2 = "";
+    private static volatile long overlayAtMs = 0L;
+
+    /** Record a stage that started at {@code startNanos} (System.nanoTime) and ends now. */
+    public static void record(Stage stage, long startNanos, long bytesIn, long bytesOut) {
+        recordNanos(stage, System.nanoTime() - startNanos, bytesIn, bytesOut);
+    }
+
+    public static void recordNanos(Stage stage, long nanos, long bytesIn, long bytesOut) {
+        if (stage == null || nanos < 0L) return;
+        Ring r = RINGS[stage.ordinal()];
+        synchronized (r) {
+            r.nanos[r.next] = nanos;
+            r.in[r.next] = Math.max(0L, bytesIn);
+            r.out[r.next] = Math.max(0L, bytesOut);
+            r.next = (r.next + 1) % WINDOW;
+            if (r.count < WINDOW) r.count++;
+            r.total++;
+        }
+    }
+
+    /** Summary of one stage's window; null if it has no samples. */
+    private static final class Summary {
+        long total;
+        double minMs, meanMs, p95Ms, maxMs;
+        long meanIn, meanOut;
+    }
+
+    private static Summary summarize(Stage stage) {
+        Ring r = RINGS[stage.ordinal()];
+        long[] ns;
+        long inSum = 0L, outSum = 0L;
+        Summary s = new Summary();
+        synchronized (r) {
+            if (r.count == 0) return null;
+            ns = Arrays.copyOf(r.nanos, r.count);
+            for (int i = 0; i < r.count; i++) {
+                inSum += r.in[i];
+                outSum += r.out[i];
+            }
+            s.total = r.total;
+        }
+        Arrays.sort(ns);
+        long sum = 0L;
+        for (long v : ns) sum += v;
+        int n = ns.length;
+        s.minMs = ns[0] / 1e6;
+        s.maxMs = ns[n - 1] / 1e6;
+        s.meanMs = sum / (double) n / 1e6;
+        s.p95Ms = ns[Math.min(n - 1, (int) Math.ceil(n * 0.95) - 1)] / 1e6;
+        s.meanIn = inSum / n;
+        s.meanOut = outSum / n;
+        return s;
+    }
+
+    /** Two short lines for the debug overlay (mean/p95 ms per stage), rebuilt at most every OVERLAY_REFRESH_MS. */
+    static String[] overlayLines() {
+        long now = System.currentTimeMillis();
+        if (now - overlayAtMs >= OVERLAY_REFRESH_MS) {
+            overlayAtMs = now;
+            overlay1 = "ms mean/p95: " + line(Stage.READBACK, Stage.EXTRACT, Stage.DEDUPE, Stage.DESCRIPTOR, Stage.DOWNSCALE, Stage.ENCODE);
+            overlay2 = "ms mean/p95: " + line(Stage.BASE64, Stage.FOVEA, Stage.JSON, Stage.SIGN, Stage.HTTP);
+        }
+        return new String[] { overlay1, overlay2 };
+    }
+
+    private static String line(Stage... stages) {
+        StringBuilder sb = new StringBuilder();
+        for (Stage st : stages) {
+            Summary s = summarize(st);
+            if (s == null) continue;
+            if (sb.length() > 0) sb.append(" | ");
+            sb.append(st.label).append(' ').append(String.format("%.1f/%.1f", s.meanMs, s.p95Ms));
+        }
+        return sb.length() == 0 ? "-" : sb.toString();
+    }
+
+    /** Full table to the log (on demand, see the vision stats key). */
+    public static void dump() {
+        StringBuilder sb = new StringBuilder("Vision stage stats (last ").append(WINDOW).append(" samples per stage):");
+        sb.append(String.format("%n  %-10s %6s %8s %8s %8s %8s %10s %10s", "stage", "n", "min", "mean", "p95", "max", "in(B)", "out(B)"));
+        for (Stage st : Stage.values()) {
+            Summary s = summarize(st);
+            if (s == null) {
+                sb.append(String.format("%n  %-10s %6s", st.label, "-"));
+                continue;
+            }
+            sb.append(String.format("%n  %-10s %6d %8.2f %8.2f %8.2f %8.2f %10d %10d",
+                    st.label, s.total, s.minMs, s.meanMs, s.p95Ms, s.maxMs, s.meanIn, s.meanOut));
+        }
+        // Asked for explicitly: logged even when vision debug logging is off.
+        CraftMate.LOGGER.info("[VISION] {}", sb);
+    }
+}
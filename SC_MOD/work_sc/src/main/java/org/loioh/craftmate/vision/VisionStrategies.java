@@ -0,0 +1,291 @@
+package org.loioh.craftmate.vision;
+
+import com.mojang.blaze3d.pipeline.RenderTarget;
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.Screenshot;
+import net.minecraft.client.gui.components.EditBox;
+import net.minecraft.client.gui.screens.ChatScreen;
+import org.loioh.craftmate.CraftMate;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Capture strategy registry, probed once at client setup.
+ * - Resolves the reflective capture hooks (Screenshot, RenderTarget, NativeImage) and the ChatScreen input
+ *   field into MethodHandles/VarHandles, so the per-capture path does no reflection
+ * - Ranks strategies: ones that currently work are tried first, failing ones move to the back
+ * - Strategies that fail repeatedly in a row are benched for a while (DISABLE_MS, doubling per repeat up to
+ *   MAX_DISABLE_MS) and then tried again; the last usable strategy is never benched
+ */
+public final class VisionStrategies {
+
+    private VisionStrategies() {}
+
+    /** Capture paths in their default preference order. */
+    enum Strategy {
+        GPU_DOWNSCALE,
+        SCREENSHOT,
+        FRAMEBUFFER_DOWNLOAD,
+        NATIVE_DOWNLOAD,
+        GL_READPIXELS
+    }
+
+    // After this many consecutive failures a strategy is benched for a while.
+    private static final int MAX_CONSECUTIVE_FAILS = 5;
+    private static final long DISABLE_MS = 60_000L;
+    private static final long MAX_DISABLE_MS = 10 * 60_000L;
+
+    private static final int N = Strategy.values().length;
+    private static final boolean[] AVAILABLE = new boolean[N];        // resolved in this runtime
+    private static final long[] DISABLED_UNTIL_MS = new long[N];      // benched until (0 = usable)
+    private static final int[] TIMES_DISABLED = new int[N];
+    private static final int[] CONSECUTIVE_FAILS = new int[N];
+    private static final int[] TOTAL_FAILS = new int[N];
+    private static final int[] TOTAL_OK = new int[N];
+
+    private static volatile Strategy[] ranked = new Strategy[0];
+    private static volatile long nextReenableMs = Long.MAX_VALUE;
+    private static volatile boolean probed = false;
+
+    // Resolved handles (null = not available in this runtime)
+    private static MethodHandle screenshotGrab;      // static NativeImage (RenderTarget)
+    private static MethodHandle rtDownload;          // void RenderTarget.(NativeImage)
+    private static MethodHandle nativeDownload;      // void NativeImage.(int, int, boolean)
+    private static VarHandle chatInput;              // EditBox ChatScreen.input
+
+    /** Resolve every handle once. Safe to call again; later calls are no-ops. */
+    public static synchronized void probe() {
+        if (probed) return;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        // Screenshot: static (RenderTarget) -> NativeImage; prefer the known names, else any matching signature (obf).
+        try {
+            Method pick = null;
+            List<String> names = Arrays.asList("takeScreenshot", "grab", "takeScreenshotRaw");
+            for (Method m : Screenshot.class.getDeclaredMethods()) {
+                Class<?>[] p = m.getParameterTypes();
+                if (!Modifier.isStatic(m.getModifiers())) continue;
+                if (p.length != 1 || !RenderTarget.class.isAssignableFrom(p[0])) continue;
+                if (!NativeImage.class.isAssignableFrom(m.getReturnType())) continue;
+                if (pick == null || names.contains(m.getName())) pick = m;
+            }
+            if (pick != null) {
+                pick.setAccessible(true);
+                screenshotGrab = lookup.unreflect(pick);
+            }
+        } catch (Throwable ignored) {}
+
+        // RenderTarget#downloadFromFramebuffer(NativeImage)
+        try {
+            Class<?> c = RenderTarget.class;
+            while (c != null && rtDownload == null) {
+                for (Method m : c.getDeclaredMethods()) {
+                    Class<?>[] p = m.getParameterTypes();
+                    if (m.getName().equals("downloadFromFramebuffer")
+                            && p.length == 1
+                            && p[0] == NativeImage.class
+                            && m.getReturnType() == void.class) {
+                        m.setAccessible(true);
+                        rtDownload = lookup.unreflect(m);
+                        break;
+                    }
+                }
+                c = c.getSuperclass();
+            }
+        } catch (Throwable ignored) {}
+
+        // NativeImage#downloadFromFramebuffer(int, int, boolean)
+        try {
+            for (Method m : NativeImage.class.getDeclaredMethods()) {
+                Class<?>[] p = m.getParameterTypes();
+                if (m.getName().equals("downloadFromFramebuffer")
+                        && p.length == 3 && p[0] == int.class && p[1] == int.class && p[2] == boolean.class) {
+                    m.setAccessible(true);
+                    nativeDownload = lookup.unreflect(m);
+                    break;
+                }
+            }
+        } catch (Throwable ignored) {}
+
+        // ChatScreen.input: the only EditBox field (matched by type so it also works with obf names)
+        try {
+            for (Field f : ChatScreen.class.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) || f.getType() != EditBox.class) continue;
+                f.setAccessible(true);
+                chatInput = lookup.unreflectVarHandle(f);
+                break;
+            }
+        } catch (Throwable ignored) {}
+
+        AVAILABLE[Strategy.GPU_DOWNSCALE.ordinal()] = true;
+        AVAILABLE[Strategy.SCREENSHOT.ordinal()] = screenshotGrab != null;
+        AVAILABLE[Strategy.FRAMEBUFFER_DOWNLOAD.ordinal()] = rtDownload != null;
+        AVAILABLE[Strategy.NATIVE_DOWNLOAD.ordinal()] = screenshotGrab != null || nativeDownload != null;
+        AVAILABLE[Strategy.GL_READPIXELS.ordinal()] = true;
+        probed = true;
+        rerank();
+
+        try {
+            CraftMate.vLog("Vision strategies: " + describe() + " chatInput=" + (chatInput != null));
+        } catch (Throwable ignored) {}
+    }
+
+    private static void ensureProbed() {
+        if (!probed) probe();
+    }
+
+    /** Strategies to try this capture, best first. */
+    static Strategy[] ranked() {
+        ensureProbed();
+        if (System.currentTimeMillis() >= nextReenableMs) reenableExpired();
+        return ranked;
+    }
+
+    private static synchronized void reenableExpired() {
+        long now = System.currentTimeMillis();
+        for (Strategy s : Strategy.values()) {
+            int i = s.ordinal();
+            if (DISABLED_UNTIL_MS[i] != 0L && now >= DISABLED_UNTIL_MS[i]) {
+                DISABLED_UNTIL_MS[i] = 0L;
+                // one more failure benches it again
+                CONSECUTIVE_FAILS[i] = MAX_CONSECUTIVE_FAILS - 1;
+                try { CraftMate.vLog("Vision strategy " + s + " re-enabled"); } catch (Throwable ignored) {}
+            }
+        }
+        rerank();
+    }
+
+    static synchronized void noteSuccess(Strategy s) {
+        int i = s.ordinal();
+        TOTAL_OK[i]++;
+        TIMES_DISABLED[i] = 0;
+        if (CONSECUTIVE_FAILS[i] != 0) {
+            CONSECUTIVE_FAILS[i] = 0;
+            rerank();
+        }
+    }
+
+    static synchronized void noteFailure(Strategy s) {
+        int i = s.ordinal();
+        TOTAL_FAILS[i]++;
+        CONSECUTIVE_FAILS[i]++;
+        if (CONSECUTIVE_FAILS[i] >= MAX_CONSECUTIVE_FAILS && usable(i) && usableCount() > 1) {
+            long backoff = Math.min(MAX_DISABLE_MS, DISABLE_MS << Math.min(TIMES_DISABLED[i], 4));
+            TIMES_DISABLED[i]++;
+            DISABLED_UNTIL_MS[i] = System.currentTimeMillis() + backoff;
+            try {
+                CraftMate.vLog("Vision strategy " + s + " disabled for " + (backoff / 1000L) + "s after " + CONSECUTIVE_FAILS[i] + " failures in a row");
+                VisionDebug.setLastError(s + " disabled " + (backoff / 1000L) + "s");
+            } catch (Throwable ignored) {}
+        }
+        rerank();
+    }
+
+    static boolean isAvailable(Strategy s) {
+        ensureProbed();
+        return usable(s.ordinal());
+    }
+
+    private static boolean usable(int i) {
+        return AVAILABLE[i] && DISABLED_UNTIL_MS[i] == 0L;
+    }
+
+    private static int usableCount() {
+        int n = 0;
+        for (int i = 0; i < N; i++) if (usable(i)) n++;
+        return n;
+    }
+
+    private static void rerank() {
+        List<Strategy> ok = new ArrayList<>();
+        List<Strategy> failing = new ArrayList<>();
+        long next = Long.MAX_VALUE;
+        for (Strategy s : Strategy.values()) {
+            int i = s.ordinal();
+            if (DISABLED_UNTIL_MS[i] != 0L) next = Math.min(next, DISABLED_UNTIL_MS[i]);
+            if (!usable(i)) continue;
+            if (CONSECUTIVE_FAILS[i] > 0) failing.add(s); else ok.add(s);
+        }
+        ok.addAll(failing);
+        ranked = ok.toArray(new Strategy[0]);
+        nextReenableMs = next;
+    }
+
+    /** Short status line for logs / debug overlay. */
+    static synchronized String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (Strategy s : ranked) {
+            int i = s.ordinal();
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(s.name().toLowerCase()).append('(').append(TOTAL_OK[i]).append('/').append(TOTAL_FAILS[i]).append(')');
+        }
+        return sb.length() == 0 ? "none" : sb.toString();
+    }
+
+    // -------------------------
+    // Hot-path calls (no reflection)
+    // -------------------------
+
+    static NativeImage screenshot(RenderTarget fb) {
+        ensureProbed();
+        MethodHandle mh = screenshotGrab;
+        if (mh == null || fb == null) return null;
+        try {
+            return (NativeImage) mh.invoke(fb);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    static boolean hasFramebufferDownload() {
+        ensureProbed();
+        return rtDownload != null;
+    }
+
+    /** RenderTarget#downloadFromFramebuffer(img); false if unavailable or it threw. */
+    static boolean downloadFramebuffer(RenderTarget fb, NativeImage img) {
+        ensureProbed();
+        MethodHandle mh = rtDownload;
+        if (mh == null || fb == null || img == null) return false;
+        try {
+            mh.invoke(fb, img);
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /** NativeImage#downloadFromFramebuffer(0, 0, true); false if unavailable or it threw. */
+    static boolean downloadNative(NativeImage img) {
+        ensureProbed();
+        MethodHandle mh = nativeDownload;
+        if (mh == null || img == null) return false;
+        try {
+            mh.invoke(img, 0, 0, true);
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /** Current text in the chat input box, or "" if it can't be read. */
+    public static String chatInputText(ChatScreen screen) {
+        ensureProbed();
+        VarHandle vh = chatInput;
+        if (vh == null || screen == null) return "";
+        try {
+            EditBox box = (EditBox) vh.get(screen);
+            return box == null ? "" : box.getValue();
+        } catch (Throwable t) {
+            return "";
+        }
+    }
+}
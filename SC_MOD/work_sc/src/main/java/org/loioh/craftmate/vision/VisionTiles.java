@@ -0,0 +1,189 @@
+package org.loioh.craftmate.vision;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.loioh.craftmate.CraftMate;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tiled delta uploads for the vision context image (optional, visionTiledDeltas).
+ * - The encoded-size frame is split into fixed tiles, each fingerprinted (64-bit FNV-1a over the RGB ints)
+ * - Only tiles that differ from the last frame the server acknowledged are JPEG-encoded and sent, with coordinates
+ * - A full keyframe is sent periodically, on dimension change, when most tiles changed, or when the server asks
+ *
+ * Wire format (next to/instead of "image" in the /vision body):
+ *   tiles: { frame_id, keyframe:true,  w, h, tile }                                  (image holds the full frame)
+ *   tiles: { frame_id, keyframe:false, base_id, w, h, tile, items:[{x,y,w,h,image_b64}] }
+ * Server replies carry tile_ack:frame_id (frame becomes the new base) or need_keyframe:true.
+ */
+public final class VisionTiles {
+
+    private VisionTiles() {}
+
+    // Above this share of changed tiles a keyframe is cheaper than the delta.
+    private static final double MAX_DELTA_SHARE = 0.6;
+    private static final int MAX_UNACKED = 4;
+
+    static final class Plan {
+        final long frameId;
+        final long baseId;
+        final boolean keyframe;
+        final int w;
+        final int h;
+        final int tile;
+        final long[] prints;
+        final List<int[]> changed; // {x, y, w, h}; empty for keyframes
+
+        Plan(long frameId, long baseId, boolean keyframe, int w, int h, int tile, long[] prints, List<int[]> changed) {
+            this.frameId = frameId;
+            this.baseId = baseId;
+            this.keyframe = keyframe;
+            this.w = w;
+            this.h = h;
+            this.tile = tile;
+            this.prints = prints;
+            this.changed = changed;
+        }
+    }
+
+    private static long nextFrameId = System.currentTimeMillis();
+
+    // Last acknowledged frame (what the server holds)
+    private static Plan base = null;
+    // Sent but not yet acknowledged, oldest first
+    private static final Map<Long, Plan> UNACKED = new LinkedHashMap<>();
+
+    private static int sinceKeyframe = 0;
+    private static boolean keyframeRequested = true;
+
+    /** Decide keyframe vs delta for this (already resampled) frame. */
+    static synchronized Plan plan(BufferedImage img, int tile, int keyframeEvery, boolean forceKeyframe) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        long[] prints = fingerprints(img, tile);
+        long id = nextFrameId++;
+
+        boolean key = forceKeyframe
+                || keyframeRequested
+                || base == null
+                || base.w != w || base.h != h || base.tile != tile
+                || sinceKeyframe >= keyframeEvery;
+
+        List<int[]> changed = new ArrayList<>();
+        if (!key) {
+            int cols = (w + tile - 1) / tile;
+            for (int i = 0; i < prints.length; i++) {
+                if (prints[i] == base.prints[i]) continue;
+                int x = (i % cols) * tile;
+                int y = (i / cols) * tile;
+                changed.add(new int[]{x, y, Math.min(tile, w - x), Math.min(tile, h - y)});
+            }
+            if (changed.size() > prints.length * MAX_DELTA_SHARE) {
+                key = true;
+                changed.clear();
+            }
+        }
+        return new Plan(id, key ? -1L : base.frameId, key, w, h, tile, prints, changed);
+    }
+
+    /** Build the "tiles" JSON; for deltas this encodes each changed tile. */
+    static JsonObject toJson(Plan p, BufferedImage img, int quality, boolean chroma420) throws IOException {
+        JsonObject t = new JsonObject();
+        t.addProperty("frame_id", p.frameId);
+        t.addProperty("keyframe", p.keyframe);
+        t.addProperty("w", p.w);
+        t.addProperty("h", p.h);
+        t.addProperty("tile", p.tile);
+        if (p.keyframe) return t;
+
+        t.addProperty("base_id", p.baseId);
+        JsonArray items = new JsonArray();
+        Base64.Encoder b64 = Base64.getEncoder();
+        for (int[] r : p.changed) {
+            byte[] jpeg = VisionJpegEncoder.encode(img.getSubimage(r[0], r[1], r[2], r[3]), quality, chroma420);
+            JsonObject it = new JsonObject();
+            it.addProperty("x", r[0]);
+            it.addProperty("y", r[1]);
+            it.addProperty("w", r[2]);
+            it.addProperty("h", r[3]);
+            it.addProperty("image_b64", b64.encodeToString(jpeg));
+            items.add(it);
+        }
+        t.add("items", items);
+        return t;
+    }
+
+    /** Call once the frame has been handed to the HTTP client. */
+    static synchronized void sent(Plan p) {
+        UNACKED.put(p.frameId, p);
+        while (UNACKED.size() > MAX_UNACKED) {
+            Iterator<Long> it = UNACKED.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        if (p.keyframe) {
+            sinceKeyframe = 0;
+            keyframeRequested = false;
+        } else {
+            sinceKeyframe++;
+        }
+    }
+
+    /** Vision reply from the server (HTTP thread). */
+    public static synchronized void onServerReply(JsonObject reply) {
+        if (reply == null) return;
+        try {
+            if (reply.has("need_keyframe") && reply.get("need_keyframe").getAsBoolean()) {
+                keyframeRequested = true;
+                CraftMate.vLog("Vision tiles: server requested a keyframe");
+            }
+            if (reply.has("tile_ack") && !reply.get("tile_ack").isJsonNull()) {
+                Plan p = UNACKED.remove(reply.get("tile_ack").getAsLong());
+                if (p != null && (base == null || p.frameId > base.frameId)) base = p;
+            }
+        } catch (Throwable ignored) {}
+    }
+
+    private static long[] fingerprints(BufferedImage img, int tile) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int cols = (w + tile - 1) / tile;
+        int rows = (h + tile - 1) / tile;
+        long[] out = new long[cols * rows];
+        Arrays.fill(out, 0xcbf29ce484222325L); // FNV-1a offset basis
+
+        // VisionResampler output is a plain TYPE_INT_RGB raster: read it directly.
+        boolean direct = img.getType() == BufferedImage.TYPE_INT_RGB && img.getRaster().getDataBuffer() instanceof DataBufferInt;
+        int[] data = direct ? ((DataBufferInt) img.getRaster().getDataBuffer()).getData() : null;
+        int[] row = direct ? null : new int[w];
+
+        for (int y = 0; y < h; y++) {
+            int off;
+            int[] src;
+            if (direct) {
+                src = data;
+                off = y * w;
+            } else {
+                img.getRGB(0, y, w, 1, row, 0, w);
+                src = row;
+                off = 0;
+            }
+            int tileRow = (y / tile) * cols;
+            for (int x = 0; x < w; x++) {
+                int ti = tileRow + x / tile;
+                out[ti] = (out[ti] ^ (src[off + x] & 0xFFFFFF)) * 0x100000001b3L;
+            }
+        }
+        return out;
+    }
+}
@@ -8,6 +8,11 @@ import com.google.gson.JsonObject;
  */
 public class VisionTrigger {
 
+    // scene.visualNovelty (VisionNoveltyProbe, 0..1, -1 unknown): at or above this the view changed enough to capture
+    // sooner than the regular interval; below STILL the screen is static and timed refreshes are skipped.
+    private static final double NOVELTY_CAPTURE = 0.12;
+    private static final double NOVELTY_STILL = 0.02;
+
     public static class State {
         public int lastCaptureTick = -999999;
         public String lastActivityKey = "";
@@ -22,9 +27,16 @@ public class VisionTrigger {
         public final String activityKey;
         public final String poiKey;
         public final String dangerKey;
+        // > 1: capture a short burst of frames instead of one still (danger only)
+        public final int burstFrames;
 
         public Decision(boolean shouldCapture, String reason, String activityKey, String poiKey, String dangerKey) {
+            this(shouldCapture, reason, activityKey, poiKey, dangerKey, 0);
+        }
+
+        public Decision(boolean shouldCapture, String reason, String activityKey, String poiKey, String dangerKey, int burstFrames) {
             this.shouldCapture = shouldCapture;
+            this.burstFrames = burstFrames;
             this.reason = reason == null ? "" : reason;
             this.activityKey = activityKey == null ? "" : activityKey;
             this.poiKey = poiKey == null ? "" : poiKey;
@@ -33,10 +45,16 @@ public class VisionTrigger {
     }
 
     public static Decision shouldCapture(State st, JsonObject scene, int minIntervalTicks, int dangerMinIntervalTicks) {
+        return shouldCapture(st, scene, minIntervalTicks, dangerMinIntervalTicks, 0);
+    }
+
+    /** @param dangerBurstFrames frames per danger capture (> 1 asks for a burst so approach direction is visible) */
+    public static Decision shouldCapture(State st, JsonObject scene, int minIntervalTicks, int dangerMinIntervalTicks, int dangerBurstFrames) {
         int tick = getInt(scene, "tick");
         String activityKey = getStr(scene, "activityKey");
         String poiKey = getStr(scene, "poiKey");
         String dangerKey = getStr(scene, "dangerKey");
+        double novelty = getDouble(scene, "visualNovelty", -1.0);
 
         boolean activityChanged = !activityKey.equals(st.lastActivityKey);
         boolean poiChanged = !poiKey.equals(st.lastPoiKey);
@@ -59,8 +77,11 @@ public class VisionTrigger {
         if (intervalOk && (dangerChanged && isDanger)) { should = true; reason = "danger"; }
         else if (intervalOk && activityChanged) { should = true; reason = "activity"; }
         else if (intervalOk && poiChanged) { should = true; reason = "poi"; }
-        // Also capture occasionally when stable (to refresh context)
-        else if (intervalOk && st.stableTicks >= (minIntervalTicks * 3)) { should = true; reason = "idle_refresh"; }
+        // The view changed a lot although the scene keys did not (turned around, walked into a new area):
+        // allowed at the shorter danger interval.
+        else if (novelty >= NOVELTY_CAPTURE && (tick - st.lastCaptureTick) >= dangerMinIntervalTicks) { should = true; reason = "novelty"; }
+        // Also capture occasionally when stable (to refresh context), unless the screen has not changed at all
+        else if (intervalOk && st.stableTicks >= (minIntervalTicks * 3) && !(novelty >= 0.0 && novelty < NOVELTY_STILL)) { should = true; reason = "idle_refresh"; }
 
         if (should) {
             st.lastCaptureTick = tick;
@@ -70,7 +91,8 @@ public class VisionTrigger {
             st.stableTicks = 0;
         }
 
-        return new Decision(should, reason, activityKey, poiKey, dangerKey);
+        int burst = should && "danger".equals(reason) && dangerBurstFrames > 1 ? dangerBurstFrames : 0;
+        return new Decision(should, reason, activityKey, poiKey, dangerKey, burst);
     }
 
     private static String getStr(JsonObject o, String k) {
@@ -78,6 +100,11 @@ public class VisionTrigger {
         try { return o.get(k).getAsString(); } catch (Exception e) { return ""; }
     }
 
+    private static double getDouble(JsonObject o, String k, double def) {
+        if (o == null || !o.has(k) || o.get(k).isJsonNull()) return def;
+        try { return o.get(k).getAsDouble(); } catch (Exception e) { return def; }
+    }
+
     private static int getInt(JsonObject o, String k) {
         if (o == null || !o.has(k) || o.get(k).isJsonNull()) return 0;
         try { return o.get(k).getAsInt(); } catch (Exception e) { return 0; }
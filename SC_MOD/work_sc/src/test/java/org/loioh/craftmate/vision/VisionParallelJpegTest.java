@@ -0,0 +1,189 @@
+package org.loioh.craftmate.vision;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The striped encoder must produce standard JPEGs that ImageIO decodes, whatever the stripe split.
+ * - Odd sizes (partial MCUs on both edges), 4:2:0 and 4:4:4, several qualities
+ * - Striped and single-stripe output decode to the same pixels
+ * - DRI + RSTn markers are consistent when there are more stripes than the 8 marker codes
+ */
+class VisionParallelJpegTest {
+
+    private static final int[][] SIZES = { {100, 37}, {1917, 1083} };
+    private static final int[] QUALITIES = { 30, 75, 95 };
+
+    @Test
+    void imageIoRoundTrip() throws Exception {
+        for (int[] size : SIZES) {
+            BufferedImage src = frame(size[0], size[1]);
+            for (boolean chroma420 : new boolean[] { true, false }) {
+                for (int q : QUALITIES) {
+                    String what = size[0] + "x" + size[1] + (chroma420 ? " 4:2:0" : " 4:4:4") + " q" + q;
+                    byte[] jpeg = VisionParallelJpeg.encode(src, q, chroma420, null);
+                    BufferedImage back = decode(jpeg);
+                    assertNotNull(back, what + ": ImageIO could not decode");
+                    assertEquals(size[0], back.getWidth(), what);
+                    assertEquals(size[1], back.getHeight(), what);
+                    double psnr = psnr(src, back);
+                    // Loose floors: catches wrong tables / coefficient order / edge padding, not encoder tuning.
+                    double floor = q >= 90 ? 34.0 : q >= 70 ? 30.0 : 26.0;
+                    assertTrue(psnr >= floor, what + ": PSNR " + psnr + " < " + floor);
+                }
+            }
+        }
+    }
+
+    @Test
+    void stripedDecodesLikeSingleStripe() throws Exception {
+        for (int[] size : SIZES) {
+            BufferedImage src = frame(size[0], size[1]);
+            for (boolean chroma420 : new boolean[] { true, false }) {
+                String what = size[0] + "x" + size[1] + (chroma420 ? " 4:2:0" : " 4:4:4");
+                int[] single = pixels(decode(VisionParallelJpeg.encode(src, 75, chroma420, null, 1)));
+                for (int stripes : new int[] { 2, 4, 13 }) {
+                    byte[] jpeg = VisionParallelJpeg.encode(src, 75, chroma420, null, stripes);
+                    assertArrayEquals(single, pixels(decode(jpeg)), what + " stripes=" + stripes);
+                }
+            }
+        }
+    }
+
+    @Test
+    void streamedBytesMatchReturnedBytes() throws Exception {
+        BufferedImage src = frame(1917, 1083);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        byte[] jpeg = VisionParallelJpeg.encode(src, 75, true, sink, 13);
+        assertArrayEquals(jpeg, sink.toByteArray());
+    }
+
+    @Test
+    void restartMarkersBeyondEightStripes() throws Exception {
+        int w = 1917, h = 1083;
+        BufferedImage src = frame(w, h);
+        for (boolean chroma420 : new boolean[] { true, false }) {
+            int mcu = chroma420 ? 16 : 8;
+            int mcuCols = (w + mcu - 1) / mcu;
+            int mcuRows = (h + mcu - 1) / mcu;
+            byte[] jpeg = VisionParallelJpeg.encode(src, 75, chroma420, null, 13);
+
+            int dri = restartInterval(jpeg);
+            assertTrue(dri > 0 && dri % mcuCols == 0, "DRI " + dri + " is not whole MCU rows of " + mcuCols);
+            int rowsPer = dri / mcuCols;
+            int stripes = (mcuRows + rowsPer - 1) / rowsPer;
+            assertTrue(stripes > 8, "want more stripes than RST codes, got " + stripes);
+
+            int[] rst = restartMarkers(jpeg);
+            assertEquals(stripes - 1, rst.length, "one RSTn between consecutive stripes");
+            for (int i = 0; i < rst.length; i++) {
+                assertEquals(0xD0 + (i & 7), rst[i], "RST #" + i);
+            }
+            assertNotNull(decode(jpeg));
+        }
+    }
+
+    // ---- helpers ----
+
+    /** Sky gradient over blocky terrain with noise (same idea as the JMH frames). */
+    private static BufferedImage frame(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] px = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        SplittableRandom rnd = new SplittableRandom(w * 31L + h);
+        int horizon = h * 2 / 5;
+        int block = Math.max(8, w / 64);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r, g, b;
+                if (y < horizon) {
+                    int t = y * 255 / Math.max(1, horizon);
+                    r = 90 + t / 4;
+                    g = 140 + t / 5;
+                    b = 235 - t / 8;
+                } else {
+                    int cell = ((x / block) * 7 + (y / block) * 13) % 5;
+                    r = 70 + cell * 18;
+                    g = 110 + cell * 14;
+                    b = 50 + cell * 9;
+                }
+                int n = rnd.nextInt(12) - 6;
+                px[y * w + x] = clamp(r + n) << 16 | clamp(g + n) << 8 | clamp(b + n);
+            }
+        }
+        return img;
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws Exception {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static int[] pixels(BufferedImage img) {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+
+    private static double psnr(BufferedImage a, BufferedImage b) {
+        int[] pa = pixels(a);
+        int[] pb = pixels(b);
+        double se = 0.0;
+        for (int i = 0; i < pa.length; i++) {
+            for (int sh = 0; sh <= 16; sh += 8) {
+                int d = ((pa[i] >> sh) & 0xFF) - ((pb[i] >> sh) & 0xFF);
+                se += d * d;
+            }
+        }
+        double mse = se / (pa.length * 3.0);
+        return mse == 0.0 ? 99.0 : 10.0 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    /** DRI value, 0 if the file has none. */
+    private static int restartInterval(byte[] jpeg) {
+        int i = 2; // after SOI
+        while (i + 4 <= jpeg.length) {
+            int marker = jpeg[i + 1] & 0xFF;
+            int len = (jpeg[i + 2] & 0xFF) << 8 | (jpeg[i + 3] & 0xFF);
+            if (marker == 0xDD) return (jpeg[i + 4] & 0xFF) << 8 | (jpeg[i + 5] & 0xFF);
+            if (marker == 0xDA) return 0;
+            i += 2 + len;
+        }
+        return 0;
+    }
+
+    /** RSTn marker codes in the entropy-coded data, in order. */
+    private static int[] restartMarkers(byte[] jpeg) {
+        int i = 2;
+        while (i + 4 <= jpeg.length) {
+            int marker = jpeg[i + 1] & 0xFF;
+            int len = (jpeg[i + 2] & 0xFF) << 8 | (jpeg[i + 3] & 0xFF);
+            i += 2 + len;
+            if (marker == 0xDA) break;
+        }
+        int[] out = new int[16];
+        int n = 0;
+        for (; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) != 0xFF) continue;
+            int m = jpeg[i + 1] & 0xFF;
+            if (m == 0x00) continue; // stuffed byte
+            if (m == 0xD9) break;    // EOI
+            if (m >= 0xD0 && m <= 0xD7) {
+                if (n == out.length) out = java.util.Arrays.copyOf(out, n * 2);
+                out[n++] = m;
+            }
+        }
+        return java.util.Arrays.copyOf(out, n);
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : Math.min(255, v);
+    }
+}
@@ -46,6 +46,9 @@ const ALLOWED_SCENE_KEYS = new Set([
   "confidence",
   "world_confidence",
   "last_vision_ts",
+  "vision_tile_base",
+  "last_vision_hash",
+  "vision_descriptor",
 ]);
 
 const ALLOWED_SCENE_PLAYER_KEYS = new Set([
@@ -118,7 +121,7 @@ export function DEFAULT_BRAIN() {
   return {
     meta: { last_seen: null, last_route: null },
     dialogue: [],
-    scene_state: { player: {}, environment: {}, entities: null, spatial_notes: null, danger: null, confidence: null, world_confidence: null, last_vision_ts: null, updated_at: 0 },
+    scene_state: { player: {}, environment: {}, entities: null, spatial_notes: null, danger: null, confidence: null, world_confidence: null, last_vision_ts: null, vision_tile_base: null, last_vision_hash: null, vision_descriptor: null, updated_at: 0 },
     flags: { speaker: "NONE" },
     speech_lock_until: null,
     counters: {
@@ -236,6 +239,44 @@ function normalizeSceneState(ss) {
     out.last_vision_ts = ss.last_vision_ts;
   }
 
+  // frame_id of the last tiled-vision keyframe/delta we acknowledged (client visionTiledDeltas).
+  if ("vision_tile_base" in ss) {
+    if (ss.vision_tile_base !== null && typeof ss.vision_tile_base !== "number") {
+      throw400("scene_state.vision_tile_base must be a number or null");
+    }
+    out.vision_tile_base = ss.vision_tile_base;
+  }
+
+  // frame_hash of the last upload the model analysed (clients may send frame_ref instead of re-uploading it).
+  if ("last_vision_hash" in ss) {
+    if (ss.last_vision_hash !== null && typeof ss.last_vision_hash !== "string") {
+      throw400("scene_state.last_vision_hash must be a string or null");
+    }
+    out.last_vision_hash = ss.last_vision_hash === null ? null : ss.last_vision_hash.slice(0, 128);
+  }
+
+  // Latest compact image descriptor (ambient updates sent without pixels): scalars + dominant colour names only.
+  if ("vision_descriptor" in ss) {
+    const d = ss.vision_descriptor;
+    if (d !== null && (typeof d !== "object" || Array.isArray(d))) {
+      throw400("scene_state.vision_descriptor must be an object or null");
+    }
+    if (d === null) {
+      out.vision_descriptor = null;
+    } else {
+      const num = (v) => (typeof v === "number" && Number.isFinite(v) ? v : null);
+      out.vision_descriptor = {
+        ts: num(d.ts),
+        reason: typeof d.reason === "string" ? d.reason.slice(0, 32) : null,
+        mean_luma: num(d.mean_luma),
+        sky_pct: num(d.sky_pct),
+        edge_pct: num(d.edge_pct),
+        motion: num(d.motion),
+        dominant: Array.isArray(d.dominant) ? d.dominant.filter((x) => typeof x === "string").slice(0, 3).map((x) => x.slice(0, 16)) : [],
+      };
+    }
+  }
+
   if ("confidence" in ss) {
     if (ss.confidence !== null && typeof ss.confidence !== "number") {
       throw400("scene_state.confidence must be a number or null");
@@ -4,6 +4,8 @@
 // - X-CM-Id: client_id
 // - X-CM-Ts: unix seconds
 // - X-CM-Sig: hex(hmac_sha256(secret, canonical))
+//   or "trailer" for streamed bodies (vision uploads only): the body (a JSON object) ends with
+//   ,"_sig":{"body_sha256":"<hex>","sig":"<hex>"}} and the hash covers every byte before ',"_sig":'
 
 export async function verifySignedRequest({ request, env }) {
   const clientId = (request.headers.get("X-CM-Id") || "").trim();
@@ -34,11 +36,24 @@ export async function verifySignedRequest({ request, env }) {
   let canonicalV2;
   let canonicalV1; // backward compatible
 
+  let sigHex = sig;
   if (method === "POST") {
     let bodyHashHex;
     try {
       const rawBody = await request.clone().arrayBuffer();
-      bodyHashHex = await sha256Hex(rawBody);
+      if (sig === "trailer") {
+        // Only the vision upload is streamed; every other route must sign its body up front.
+        if (!isTrailerRoute(path)) return { ok: false, status: 401, error: "Signature trailer not allowed" };
+        const t = splitSigTrailer(new Uint8Array(rawBody));
+        if (!t) return { ok: false, status: 401, error: "Missing signature trailer" };
+        bodyHashHex = await sha256Hex(t.signed);
+        if (!timingSafeEqualHex(bodyHashHex, String(t.trailer.body_sha256 || ""))) {
+          return { ok: false, status: 401, error: "Body hash mismatch" };
+        }
+        sigHex = String(t.trailer.sig || "");
+      } else {
+        bodyHashHex = await sha256Hex(rawBody);
+      }
     } catch {
       // Avoid uncaught exceptions → Cloudflare 1101
       return { ok: false, status: 400, error: "Unable to read request body for signature" };
@@ -71,7 +86,7 @@ export async function verifySignedRequest({ request, env }) {
     } catch {
       return { ok: false, status: 500, error: "HMAC engine error" };
     }
-    if (timingSafeEqualHex(expectedV2, sig)) {
+    if (timingSafeEqualHex(expectedV2, sigHex)) {
       return { ok: true, client_id: clientId, version: "v2" };
     }
 
@@ -82,7 +97,7 @@ export async function verifySignedRequest({ request, env }) {
     } catch {
       return { ok: false, status: 500, error: "HMAC engine error" };
     }
-    if (timingSafeEqualHex(expectedV1, sig)) {
+    if (timingSafeEqualHex(expectedV1, sigHex)) {
       return { ok: true, client_id: clientId, version: "v1" };
     }
   }
@@ -90,6 +105,34 @@ export async function verifySignedRequest({ request, env }) {
   return { ok: false, status: 401, error: "Bad signature" };
 }
 
+// "/vision" or "/craftmate/vision".
+function isTrailerRoute(path) {
+  return path === "/vision" || path.endsWith("/vision");
+}
+
+const SIG_TRAILER_MARK = new TextEncoder().encode(',"_sig":');
+
+// Streamed body: { signed: bytes before the trailer, trailer: {body_sha256, sig} }, or null.
+function splitSigTrailer(bytes) {
+  const m = SIG_TRAILER_MARK;
+  for (let i = bytes.length - m.length; i >= 0; i--) {
+    let hit = true;
+    for (let j = 0; j < m.length; j++) {
+      if (bytes[i + j] !== m[j]) { hit = false; break; }
+    }
+    if (!hit) continue;
+    const rest = new TextDecoder().decode(bytes.subarray(i + m.length)).trim();
+    if (!rest.endsWith("}")) return null;
+    try {
+      const trailer = JSON.parse(rest.slice(0, -1));
+      return { signed: bytes.subarray(0, i), trailer };
+    } catch {
+      return null;
+    }
+  }
+  return null;
+}
+
 function getSecrets(env) {
   const many = String(env.CM_HMAC_SECRETS || "").trim();
   if (many) {
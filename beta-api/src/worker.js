@@ -24,6 +24,49 @@ function decodeBase64ToU8(b64) {
   }
 }
 
+// Client sends image:{mime,w,h,image_b64}. For chat it is a composite (fovea.composite: {context, fovea} boxes in
+// image pixels): the full-frame context on the left, a detailed crop at the crosshair / focused entity on the right,
+// so the single-image model sees both. Older clients sent the crop separately as fovea.image_b64; it is only used
+// when there is no context image at all.
+function pickVisionImage(bodyJson) {
+  const fovea = bodyJson?.fovea || null;
+  const image = bodyJson?.image;
+  const contextB64 =
+    bodyJson?.image_b64 ||
+    bodyJson?.payload?.image_b64 ||
+    (typeof image === "string" ? image : image?.image_b64) ||
+    null;
+
+  if (contextB64) {
+    return { b64: contextB64, kind: fovea?.composite ? `composite:${fovea.kind || "crosshair"}` : "context" };
+  }
+  if (fovea?.image_b64) return { b64: fovea.image_b64, kind: `fovea:${fovea.kind || "crosshair"}` };
+  return { b64: null, kind: "context" };
+}
+
+// Tiled deltas: tiles:{frame_id,keyframe,base_id,w,h,tile,items?}. The Worker cannot decode/recompose JPEG,
+// so it only tracks which frame the client's deltas are relative to (scene_state.vision_tile_base):
+// keyframes reset the base and go to the model, deltas on the current base are acked without a model run,
+// anything else gets need_keyframe so the client resends a full frame.
+async function handleVisionTiles(env, playerId, tiles) {
+  const frameId = tiles?.frame_id;
+  if (typeof frameId !== "number") return { ack: null };
+
+  if (tiles.keyframe !== false) {
+    await brainPatch(env, String(playerId), { scene_state: { vision_tile_base: frameId } }).catch(() => {});
+    return { ack: frameId };
+  }
+
+  const brain = await brainGet(env, String(playerId)).catch(() => ({}));
+  const base = brain?.scene_state?.vision_tile_base;
+  if (typeof base !== "number" || base !== tiles.base_id) {
+    return { response: { ok: true, skipped: true, need_keyframe: true } };
+  }
+  await brainPatch(env, String(playerId), { scene_state: { vision_tile_base: frameId } }).catch(() => {});
+  const changed = Array.isArray(tiles.items) ? tiles.items.length : 0;
+  return { response: { ok: true, skipped: true, reason: "delta", tile_ack: frameId, changed } };
+}
+
 // ----------------------------------------------------------------------
 // [FIXED] AI Vision Logic (Full Arguments)
 // ----------------------------------------------------------------------
@@ -110,6 +153,9 @@ async function handleVision(request, env) {
     return corsJson({ ok: false, error: "invalid_json" }, 400);
   }
 
+  // Streamed uploads end with a signature trailer (see security_hmac.js); it is not part of the payload.
+  if (bodyJson && bodyJson._sig) delete bodyJson._sig;
+
   const playerId = getPlayerIdFrom(bodyJson, request);
   if (!playerId || playerId === "unknown") return corsJson({ ok: false, error: "missing player_id" }, 400);
 
@@ -124,10 +170,68 @@ async function handleVision(request, env) {
 
   vLog(env, `=== [2] Player=${playerId} Force=${forceCapture} ===`);
 
-  const imgB64 = bodyJson?.image_b64 || bodyJson?.payload?.image_b64 || bodyJson?.image || null;
+  // frame_ref: the client points at a frame it already uploaded. If that is the frame the model last analysed,
+  // answer from the stored analysis; otherwise ask for the pixels.
+  if (typeof bodyJson?.frame_ref === "string" && !bodyJson?.image) {
+    const brain = await brainGet(env, String(playerId)).catch(() => ({}));
+    const ss = brain?.scene_state || {};
+    if (!ss.last_vision_hash || ss.last_vision_hash !== bodyJson.frame_ref) {
+      vLog(env, `=== [EXIT] frame_ref unknown, need frame ===`);
+      return corsJson({ ok: true, skipped: true, need_frame: true });
+    }
+    await brainPatch(env, String(playerId), { meta: { last_seen: now, last_route: "vision" } }).catch(() => {});
+    const cached = { entities: ss.entities, spatial_notes: ss.spatial_notes, danger: ss.danger, confidence: ss.confidence };
+    vLog(env, `=== [EXIT] frame_ref answered from stored analysis ===`);
+    return corsJson({
+      ok: true,
+      skipped: false,
+      cached: true,
+      spoken_line: forceCapture ? buildFallbackSpokenLine(cached, reason) : "",
+      _debug: { reason, forceCapture, frame_ref: true },
+    });
+  }
+
+  // descriptor: low-priority ambient update without pixels (colour/luma/edge summary + tiny thumbnail).
+  // Kept as scene context only; the vision model is not run.
+  if (bodyJson?.descriptor && typeof bodyJson.descriptor === "object" && !bodyJson?.image) {
+    const d = bodyJson.descriptor;
+    const num = (v) => (typeof v === "number" && Number.isFinite(v) ? v : null);
+    const vision_descriptor = {
+      ts: now,
+      reason: typeof bodyJson?.hint?.reason === "string" ? bodyJson.hint.reason.slice(0, 32) : null,
+      mean_luma: num(d.mean_luma),
+      sky_pct: num(d.sky_pct),
+      edge_pct: num(d.edge_pct),
+      motion: num(d.motion),
+      dominant: Array.isArray(d.dominant)
+        ? d.dominant.slice(0, 3).map((x) => String(x?.bin ?? "").slice(0, 16)).filter(Boolean)
+        : [],
+    };
+    await brainPatch(env, String(playerId), {
+      meta: { last_seen: now, last_route: "vision" },
+      scene_state: { vision_descriptor },
+    }).catch(() => {});
+    vLog(env, `=== [EXIT] Descriptor stored (no model run) ===`);
+    return corsJson({ ok: true, skipped: false, descriptor: true });
+  }
+
+  let tileAck = null;
+  if (bodyJson?.tiles) {
+    const t = await handleVisionTiles(env, playerId, bodyJson.tiles);
+    if (t.response) {
+      vLog(env, `=== [EXIT] Tiles ${t.response.need_keyframe ? "need keyframe" : "delta ack"} ===`);
+      return corsJson(t.response);
+    }
+    tileAck = t.ack;
+  }
+  // Every later reply acknowledges the keyframe so the client can diff against it.
+  const reply = (obj, status) => corsJson(tileAck !== null ? { ...obj, tile_ack: tileAck } : obj, status);
+
+  const picked = pickVisionImage(bodyJson);
+  const imgB64 = picked.b64;
   if (!imgB64) {
     vLog(env, "=== [EXIT] Missing Image ===");
-    return corsJson({ ok: false, error: "missing image_b64" }, 400);
+    return reply({ ok: false, error: "missing image_b64" }, 400);
   }
 
   let u8;
@@ -135,7 +239,7 @@ async function handleVision(request, env) {
     u8 = decodeBase64ToU8(imgB64); // This now handles clean-up
   } catch (e) {
     vLog(env, `=== [ERROR] Decode Failed: ${e.message} ===`);
-    return corsJson({ ok: false, error: "invalid image_b64" }, 400);
+    return reply({ ok: false, error: "invalid image_b64" }, 400);
   }
 
   // Update Brain (Async)
@@ -153,18 +257,27 @@ async function handleVision(request, env) {
     
     if (lastVision > 0 && (now - lastVision) < cdMs) {
       vLog(env, `=== [EXIT] Cooldown Skip ===`);
-      return corsJson({ ok: true, skipped: true, reason: "cooldown" });
+      return reply({ ok: true, skipped: true, reason: "cooldown" });
     }
   } 
 
   vLog(env, `=== [4] Preparing AI Call ===`);
   
-  const hintText = bodyJson?.hint ? JSON.stringify(bodyJson.hint).slice(0, 200) : "";
+  // Danger bursts: the model takes one image, so it gets the newest frame; the clip length tells it this is motion.
+  const burst = bodyJson?.burst;
+  const burstNote = burst && typeof burst.count === "number" && burst.count > 1
+    ? `[newest of ${burst.count} frames over ${Number(burst.image_t_ms) || 0}ms] `
+    : "";
+  const viewNote = picked.kind.startsWith("composite:")
+    ? `[left: full view; right: zoomed ${picked.kind.slice(10)} crop] `
+    : picked.kind !== "context" ? `[${picked.kind} crop] ` : "";
+  const hintText = burstNote + viewNote +
+    (bodyJson?.hint ? JSON.stringify(bodyJson.hint).slice(0, 200) : "");
   const userMsg = bodyJson?.message || bodyJson?.hint?.message || "";
 
   if (!env.AI || typeof env.AI.run !== 'function') {
      vLog(env, `=== [EXIT] env.AI MISSING or Invalid! ===`);
-     return corsJson({ ok: true, skipped: true, error: "env.AI_missing" });
+     return reply({ ok: true, skipped: true, error: "env.AI_missing" });
   }
 
   vLog(env, `=== [5] Calling AI Model ===`);
@@ -176,13 +289,13 @@ async function handleVision(request, env) {
       inf = await runCloudflareVisionStructured(env, u8.buffer, hintText, reason, userMsg, "image/jpeg", model);
   } catch (err) {
       vLog(env, `=== [ERROR] AI Run Exception: ${err.message} ===`);
-      return corsJson({ ok: true, skipped: true, error: "ai_exception" });
+      return reply({ ok: true, skipped: true, error: "ai_exception" });
   }
 
   vLog(env, `=== [6] AI Finished in ${Date.now() - t0}ms (ok=${inf.ok}) ===`);
 
   if (!inf || !inf.ok) {
-    return corsJson({ ok: true, skipped: true, reason: "vision_failed", details: inf.error });
+    return reply({ ok: true, skipped: true, reason: "vision_failed", details: inf.error });
   }
 
   const v = normalizeVisionResult(inf.result);
@@ -195,6 +308,7 @@ async function handleVision(request, env) {
       danger: v.danger,
       confidence: v.confidence,
       last_vision_ts: now,
+      last_vision_hash: typeof bodyJson?.frame_hash === "string" ? bodyJson.frame_hash : null,
       updated_at: now,
     },
     meta: { last_seen: now, last_route: "vision" },
@@ -216,7 +330,7 @@ async function handleVision(request, env) {
     vLog(env, `>>> SPEAKING: ${spoken_line}`);
   }
 
-  return corsJson({ 
+  return reply({ 
     ok: true, 
     skipped: false, 
     spoken_line: spoken_line,